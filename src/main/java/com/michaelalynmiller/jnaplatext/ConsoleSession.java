@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext;
+
+/* Java imports. */
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * An interactive console session: text is typed into the console and
+ * its output is read back incrementally, so that a caller can run a
+ * request/response loop against a command interpreter.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface ConsoleSession extends Typer, Closeable {
+    /**
+     * Waits for new output and delivers it to the listener.  The exact
+     * form of the output depends on the console: terminal sessions
+     * deliver the bytes written to the terminal, and never deliver the
+     * same bytes twice, whereas screen-buffer sessions deliver the rows
+     * that have changed since the previous read.  Characters appended
+     * to the last row a screen-buffer session delivered are delivered
+     * on their own, but a row that is rewritten in place is delivered
+     * again in full.
+     *
+     * @param listener Receives the output; called on the calling
+     *  thread before this method returns.
+     * @param timeoutMillis Maximum time to wait for output, in
+     *  milliseconds; zero to return immediately.
+     * @return The number of characters delivered, zero if there was no
+     *  new output before the timeout, or -1 if the console has closed.
+     * @throws IOException if the console could not be read.
+     */
+    int read(OutputListener listener, long timeoutMillis)
+        throws IOException;
+
+    /**
+     * Closes the session and releases the console.
+     *
+     * @throws IOException if the console could not be released.
+     */
+    void close() throws IOException;
+
+    /**
+     * Receives console output.
+     */
+    interface OutputListener {
+        /**
+         * Called with new console output.  The array is reused once
+         * this method returns, so it must be copied to be retained.
+         *
+         * @param text Buffer holding the output.
+         * @param offset Offset of the output in the buffer.
+         * @param length Number of characters of output.
+         */
+        void output(char[] text, int offset, int length);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext;
+
+/* Java imports. */
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Notifies listeners when watched processes exit.  Implementations
+ * block in the operating system's wait primitives rather than polling
+ * the process list, so notifications arrive as soon as a process exits
+ * and an idle watcher uses no CPU.  Listeners are called on the
+ * watcher's executor, never on the threads that wait for the
+ * processes.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface ProcessExitWatcher extends Closeable {
+    /** Exit code reported when the exit code cannot be retrieved. */
+    int EXIT_CODE_UNKNOWN = Integer.MIN_VALUE;
+
+    /**
+     * Starts watching a process.  A process may be watched by any
+     * number of listeners; each is called once when it exits.
+     *
+     * @param processId Process id of the process.
+     * @param listener Called when the process exits.
+     * @return true if the process is being watched; false if there is
+     *  no such process (it may already have exited) or it cannot be
+     *  opened.
+     * @throws IOException if the watcher has been closed or the process
+     *  could not be watched.
+     */
+    boolean watch(int processId, Listener listener) throws IOException;
+
+    /**
+     * Stops watching a process.  Its listeners will not be called,
+     * unless a notification was already on its way to the executor.
+     *
+     * @param processId Process id of the process.
+     * @return true if the process was being watched, false otherwise.
+     */
+    boolean unwatch(int processId);
+
+    /**
+     * Returns the number of processes being watched.
+     *
+     * @return The number of watched processes.
+     */
+    int getWatchedCount();
+
+    /**
+     * Stops watching every process and releases the watcher's
+     * resources.  Listeners of processes that are still running are
+     * not called.
+     *
+     * @throws IOException if the watcher's resources could not be
+     *  released.
+     */
+    void close() throws IOException;
+
+    /**
+     * Receives process exit notifications.
+     */
+    interface Listener {
+        /**
+         * Called when a watched process exits.
+         *
+         * @param processId Process id of the process.
+         * @param exitCode The process's exit code; EXIT_CODE_UNKNOWN if
+         *  it is not available.
+         */
+        void processExited(int processId, int exitCode);
+    }
+}
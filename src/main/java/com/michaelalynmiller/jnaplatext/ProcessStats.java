@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext;
+
+/* Java imports. */
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Samples the CPU time, working set and handle count of every process
+ * on the machine and computes each process's CPU usage between
+ * samples.
+ *
+ * <p>Each cycle gathers the counters of all processes with a single
+ * call to a {@link Source}, which reads them in bulk (one system-wide
+ * query on Windows, one pass over /proc on Linux) rather than opening
+ * each process in turn.  Samples are stored in columns that are sized
+ * for the expected number of processes and reused from cycle to cycle,
+ * so a steady-state sample allocates nothing in the sampler itself.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcessStats {
+    /** Default number of processes for which space is reserved. */
+    public static final int DEFAULT_EXPECTED_PROCESSES = 512;
+
+    /** Reads the counters of every process. */
+    private final Source source;
+
+    /** The sample before the most recent one. */
+    private Sample previous;
+
+    /** The most recent sample. */
+    private Sample current;
+
+    /** Open-addressed table of the previous sample's process ids. */
+    private int[] tableKeys;
+
+    /** Index plus one of each process id in tableKeys; zero marks an
+     * empty slot. */
+    private int[] tableValues;
+
+    /**
+     * Constructs a new ProcessStats that reads counters from the given
+     * source.
+     *
+     * @param source Reads the counters of every process.
+     */
+    public ProcessStats(final Source source) {
+        this(source, DEFAULT_EXPECTED_PROCESSES);
+    }
+
+    /**
+     * Constructs a new ProcessStats that reads counters from the given
+     * source and reserves space for the given number of processes.
+     *
+     * @param source Reads the counters of every process.
+     * @param expectedProcesses Number of processes for which space is
+     *  reserved; samples grow beyond this if necessary.
+     */
+    public ProcessStats(final Source source, final int expectedProcesses) {
+        this.source = source;
+        this.previous = new Sample(expectedProcesses);
+        this.current = new Sample(expectedProcesses);
+        allocateTable(expectedProcesses);
+    }
+
+    /**
+     * Takes a sample of every process's counters.  The CPU usage of
+     * processes that were also in the previous sample is computed from
+     * the change in their CPU time; the CPU usage of other processes is
+     * NaN.
+     *
+     * <p>The returned sample belongs to this ProcessStats and is reused
+     * by later calls to sample(); copy any values that need to outlive
+     * the next call.
+     *
+     * @return The new sample.
+     * @throws IOException if the counters could not be read.
+     */
+    public synchronized Sample sample() throws IOException {
+        /* Reuse the older sample's columns for the new sample. */
+        Sample sample = this.previous;
+        this.previous = this.current;
+        this.current = sample;
+
+        sample.clear();
+        sample.timestampNanos = System.nanoTime();
+        try {
+            this.source.read(sample);
+        } catch (IOException e) {
+            /* Keep the last good sample as the baseline. */
+            this.current = this.previous;
+            this.previous = sample;
+            sample.clear();
+            throw e;
+        }
+
+        computeCpuPercent();
+        return sample;
+    }
+
+    /**
+     * Computes the CPU usage of each process in the current sample.
+     */
+    private void computeCpuPercent() {
+        Sample prev = this.previous;
+        Sample cur = this.current;
+        long elapsedNanos = cur.timestampNanos - prev.timestampNanos;
+
+        /* Index the previous sample by process id. */
+        if (prev.size * 2 > this.tableKeys.length) {
+            allocateTable(prev.size);
+        } else {
+            Arrays.fill(this.tableValues, 0);
+        }
+
+        int mask = this.tableKeys.length - 1;
+        for (int i = 0; i < prev.size; i++) {
+            int slot = hash(prev.processIds[i]) & mask;
+            while (this.tableValues[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.tableKeys[slot] = prev.processIds[i];
+            this.tableValues[slot] = i + 1;
+        }
+
+        /* Compute each process's share of a CPU over the interval. */
+        for (int i = 0; i < cur.size; i++) {
+            int prevIndex = -1;
+            int slot = hash(cur.processIds[i]) & mask;
+            while (prev.size > 0 && this.tableValues[slot] != 0) {
+                if (this.tableKeys[slot] == cur.processIds[i]) {
+                    prevIndex = this.tableValues[slot] - 1;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            float percent = Float.NaN;
+            if (prevIndex >= 0
+                    && prev.startTimes[prevIndex] == cur.startTimes[i]
+                    && elapsedNanos > 0) {
+                long cpuNanos
+                    = cur.cpuTimeNanos[i] - prev.cpuTimeNanos[prevIndex];
+                if (cpuNanos >= 0) {
+                    percent = (float) (cpuNanos * 100.0 / elapsedNanos);
+                }
+            }
+            cur.cpuPercent[i] = percent;
+        }
+    }
+
+    /**
+     * Allocates an empty process id table large enough for the given
+     * number of processes.
+     *
+     * @param processes Number of processes.
+     */
+    private void allocateTable(final int processes) {
+        int capacity = Integer.highestOneBit(Math.max(processes, 8) * 2);
+        if (capacity < processes * 2) {
+            capacity *= 2;
+        }
+        this.tableKeys = new int[capacity];
+        this.tableValues = new int[capacity];
+    }
+
+    /**
+     * Scrambles a process id; process ids are mostly small multiples of
+     * four on Windows.
+     *
+     * @param processId The process id.
+     * @return The hash of the process id.
+     */
+    private static int hash(final int processId) {
+        int h = processId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Reads the counters of every process on the machine.
+     */
+    public interface Source {
+        /**
+         * Adds the counters of every process to an empty sample.
+         *
+         * @param sample The sample.
+         * @throws IOException if the counters could not be read.
+         */
+        void read(Sample sample) throws IOException;
+    }
+
+    /**
+     * The counters of every process at a point in time, stored in
+     * parallel columns.
+     */
+    public static final class Sample {
+        /** Number of processes in the sample. */
+        private int size;
+
+        /** Value of System.nanoTime() when the sample was taken. */
+        private long timestampNanos;
+
+        /** Process ids. */
+        private int[] processIds;
+
+        /** Start times, in a source-specific unit. */
+        private long[] startTimes;
+
+        /** Total user and kernel CPU time, in nanoseconds. */
+        private long[] cpuTimeNanos;
+
+        /** Working set (resident set) sizes, in bytes. */
+        private long[] workingSetBytes;
+
+        /** Handle (file descriptor) counts; -1 if unknown. */
+        private int[] handleCounts;
+
+        /** CPU usage since the previous sample. */
+        private float[] cpuPercent;
+
+        /**
+         * Constructs a new, empty Sample.
+         *
+         * @param capacity Number of processes for which space is
+         *  reserved.
+         */
+        public Sample(final int capacity) {
+            int initialCapacity = Math.max(capacity, 1);
+            this.processIds = new int[initialCapacity];
+            this.startTimes = new long[initialCapacity];
+            this.cpuTimeNanos = new long[initialCapacity];
+            this.workingSetBytes = new long[initialCapacity];
+            this.handleCounts = new int[initialCapacity];
+            this.cpuPercent = new float[initialCapacity];
+        }
+
+        /**
+         * Adds a process to the sample.
+         *
+         * @param processId Process id.
+         * @param startTime The process's start time, in a
+         *  source-specific unit; used to detect reused process ids.
+         * @param cpuTimeNanos Total user and kernel CPU time, in
+         *  nanoseconds.
+         * @param workingSetBytes Working set size, in bytes.
+         * @param handleCount Handle count; -1 if unknown.
+         */
+        public void add(
+                final int processId,
+                final long startTime,
+                final long cpuTimeNanos,
+                final long workingSetBytes,
+                final int handleCount) {
+            if (this.size == this.processIds.length) {
+                int capacity = this.size * 2;
+                this.processIds = Arrays.copyOf(this.processIds, capacity);
+                this.startTimes = Arrays.copyOf(this.startTimes, capacity);
+                this.cpuTimeNanos
+                    = Arrays.copyOf(this.cpuTimeNanos, capacity);
+                this.workingSetBytes
+                    = Arrays.copyOf(this.workingSetBytes, capacity);
+                this.handleCounts
+                    = Arrays.copyOf(this.handleCounts, capacity);
+                this.cpuPercent = Arrays.copyOf(this.cpuPercent, capacity);
+            }
+
+            this.processIds[this.size] = processId;
+            this.startTimes[this.size] = startTime;
+            this.cpuTimeNanos[this.size] = cpuTimeNanos;
+            this.workingSetBytes[this.size] = workingSetBytes;
+            this.handleCounts[this.size] = handleCount;
+            this.cpuPercent[this.size] = Float.NaN;
+            this.size++;
+        }
+
+        /**
+         * Removes every process from the sample.
+         */
+        void clear() {
+            this.size = 0;
+        }
+
+        /**
+         * Returns the number of processes in the sample.
+         *
+         * @return The number of processes.
+         */
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Returns the number of processes for which space is reserved.
+         *
+         * @return The sample's capacity.
+         */
+        public int getCapacity() {
+            return this.processIds.length;
+        }
+
+        /**
+         * Returns the time at which the sample was taken.
+         *
+         * @return The value of System.nanoTime() when the sample was
+         *  taken.
+         */
+        public long getTimestampNanos() {
+            return this.timestampNanos;
+        }
+
+        /**
+         * Returns the id of a process.
+         *
+         * @param index Index of the process in the sample.
+         * @return The process id.
+         */
+        public int getProcessId(final int index) {
+            return this.processIds[checkIndex(index)];
+        }
+
+        /**
+         * Returns the start time of a process.
+         *
+         * @param index Index of the process in the sample.
+         * @return The start time, in a source-specific unit.
+         */
+        public long getStartTime(final int index) {
+            return this.startTimes[checkIndex(index)];
+        }
+
+        /**
+         * Returns the total CPU time used by a process.
+         *
+         * @param index Index of the process in the sample.
+         * @return The user and kernel CPU time, in nanoseconds.
+         */
+        public long getCpuTimeNanos(final int index) {
+            return this.cpuTimeNanos[checkIndex(index)];
+        }
+
+        /**
+         * Returns the working set size of a process.
+         *
+         * @param index Index of the process in the sample.
+         * @return The working set size, in bytes.
+         */
+        public long getWorkingSetBytes(final int index) {
+            return this.workingSetBytes[checkIndex(index)];
+        }
+
+        /**
+         * Returns the handle count of a process.
+         *
+         * @param index Index of the process in the sample.
+         * @return The handle count; -1 if unknown.
+         */
+        public int getHandleCount(final int index) {
+            return this.handleCounts[checkIndex(index)];
+        }
+
+        /**
+         * Returns the CPU usage of a process since the previous sample,
+         * as a percentage of one CPU; a process that kept two CPUs busy
+         * reports 200.
+         *
+         * @param index Index of the process in the sample.
+         * @return The CPU usage; NaN if the process was not in the
+         *  previous sample.
+         */
+        public float getCpuPercent(final int index) {
+            return this.cpuPercent[checkIndex(index)];
+        }
+
+        /**
+         * Checks that an index is within the sample.
+         *
+         * @param index The index.
+         * @return The index.
+         */
+        private int checkIndex(final int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", Size: " + this.size);
+            }
+            return index;
+        }
+    }
+}
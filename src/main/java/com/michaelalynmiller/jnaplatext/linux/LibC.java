@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* JNA imports. */
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Provides JNA access to POSIX functions in the C library.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface LibC extends Library {
+    /** Instance of the C library for use in accessing native
+     * functions. */
+    LibC INSTANCE = (LibC) Native.loadLibrary("c", LibC.class);
+
+    /** Open for reading and writing. */
+    int O_RDWR = 0x0002;
+
+    /** Do not make the opened terminal the controlling terminal. */
+    int O_NOCTTY = 0x0100;
+
+    /** Interrupted system call. */
+    int EINTR = 4;
+
+    /** No such process. */
+    int ESRCH = 3;
+
+    /** Input/output error; returned by reads of a pseudo-terminal
+     * master once its slave has been closed. */
+    int EIO = 5;
+
+    /** Function not implemented. */
+    int ENOSYS = 38;
+
+    /** Close the file descriptor on exec. */
+    int O_CLOEXEC = 0x80000;
+
+    /** eventfd: make the file descriptor non-blocking. */
+    int EFD_NONBLOCK = 0x0800;
+
+    /** epoll_ctl: register a file descriptor. */
+    int EPOLL_CTL_ADD = 1;
+
+    /** epoll_ctl: deregister a file descriptor. */
+    int EPOLL_CTL_DEL = 2;
+
+    /** epoll: the file descriptor is readable. */
+    int EPOLLIN = 0x001;
+
+    /** poll: there is data to read. */
+    short POLLIN = 0x001;
+
+    /** System call number of pidfd_open (Linux 5.3 and later); the same
+     * on every architecture. */
+    int SYS_pidfd_open = 434;
+
+    /** sysconf: the number of clock ticks per second. */
+    int _SC_CLK_TCK = 2;
+
+    /** sysconf: the size of a page, in bytes. */
+    int _SC_PAGESIZE = 30;
+
+    /**
+     * Opens an unused pseudo-terminal master device.
+     *
+     * @param flags O_RDWR, optionally combined with O_NOCTTY.
+     * @return The file descriptor of the master device; -1 on error.
+     */
+    int posix_openpt(int flags);
+
+    /**
+     * Changes the mode and owner of the slave pseudo-terminal device
+     * corresponding to the given master.
+     *
+     * @param fd File descriptor of the master device.
+     * @return 0 on success; -1 on error.
+     */
+    int grantpt(int fd);
+
+    /**
+     * Unlocks the slave pseudo-terminal device corresponding to the
+     * given master.
+     *
+     * @param fd File descriptor of the master device.
+     * @return 0 on success; -1 on error.
+     */
+    int unlockpt(int fd);
+
+    /**
+     * Returns the name of the slave pseudo-terminal device
+     * corresponding to the given master.
+     *
+     * @param fd File descriptor of the master device.
+     * @return The name of the slave device; null on error.
+     */
+    String ptsname(int fd);
+
+    /**
+     * Reads up to count bytes from a file descriptor.
+     *
+     * @param fd The file descriptor to read from.
+     * @param buf The buffer that receives the data.
+     * @param count The maximum number of bytes to read.
+     * @return The number of bytes read; 0 at end of file; -1 on error.
+     */
+    NativeLong read(int fd, Pointer buf, NativeLong count);
+
+    /**
+     * Writes up to count bytes to a file descriptor.
+     *
+     * @param fd The file descriptor to write to.
+     * @param buf The data to write.
+     * @param count The number of bytes to write.
+     * @return The number of bytes written; -1 on error.
+     */
+    NativeLong write(int fd, Pointer buf, NativeLong count);
+
+    /**
+     * Waits for one of a set of file descriptors to become ready.
+     *
+     * @param fds An array of struct pollfd.
+     * @param nfds The number of entries in fds.
+     * @param timeout Time-out in milliseconds; -1 to wait indefinitely.
+     * @return The number of ready file descriptors; 0 on time-out; -1
+     *  on error.
+     */
+    int poll(Pointer fds, NativeLong nfds, int timeout);
+
+    /**
+     * Invokes a system call with two integer arguments.
+     *
+     * @param number The system call number.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @return The system call's result; -1 on error.
+     */
+    NativeLong syscall(NativeLong number, int arg1, int arg2);
+
+    /**
+     * Opens an epoll instance.
+     *
+     * @param flags Zero or O_CLOEXEC.
+     * @return The epoll file descriptor; -1 on error.
+     */
+    int epoll_create1(int flags);
+
+    /**
+     * Adds, modifies or removes a file descriptor in an epoll
+     * instance's interest list.
+     *
+     * @param epfd The epoll file descriptor.
+     * @param op EPOLL_CTL_ADD, EPOLL_CTL_MOD or EPOLL_CTL_DEL.
+     * @param fd The target file descriptor.
+     * @param event A struct epoll_event; may be null for EPOLL_CTL_DEL.
+     * @return 0 on success; -1 on error.
+     */
+    int epoll_ctl(int epfd, int op, int fd, Pointer event);
+
+    /**
+     * Waits for events on an epoll instance.
+     *
+     * @param epfd The epoll file descriptor.
+     * @param events Receives up to maxevents struct epoll_event.
+     * @param maxevents The maximum number of events to return.
+     * @param timeout Time-out in milliseconds; -1 to wait indefinitely.
+     * @return The number of ready file descriptors; -1 on error.
+     */
+    int epoll_wait(int epfd, Pointer events, int maxevents, int timeout);
+
+    /**
+     * Creates a file descriptor for event notification.
+     *
+     * @param initval The initial value of the counter.
+     * @param flags O_CLOEXEC and/or EFD_NONBLOCK.
+     * @return The eventfd file descriptor; -1 on error.
+     */
+    int eventfd(int initval, int flags);
+
+    /**
+     * Returns the process id of the calling process.
+     *
+     * @return The process id.
+     */
+    int getpid();
+
+    /**
+     * Returns the value of a configurable system variable.
+     *
+     * @param name The variable, such as _SC_CLK_TCK.
+     * @return The value of the variable; -1 on error.
+     */
+    NativeLong sysconf(int name);
+
+    /**
+     * Closes a file descriptor.
+     *
+     * @param fd The file descriptor to close.
+     * @return 0 on success; -1 on error.
+     */
+    int close(int fd);
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessExitWatcher;
+
+/**
+ * Watches Linux processes for exit with process file descriptors
+ * (pidfd_open, Linux 5.3 and later) and a single epoll instance.  A
+ * pidfd becomes readable when its process exits, so one thread blocked
+ * in epoll_wait covers any number of processes.  An eventfd in the
+ * same epoll set wakes the thread to close unwatched pidfds and to shut
+ * down.
+ *
+ * <p>Only a process's parent can collect its exit status, and doing so
+ * would race with Java's own child reaper, so listeners receive
+ * EXIT_CODE_UNKNOWN.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class PidfdProcessExitWatcher implements ProcessExitWatcher {
+    /** Size of struct epoll_event, which is packed on x86. */
+    private static final int EVENT_SIZE = Platform.isIntel() ? 12 : 16;
+
+    /** Offset of the data member of struct epoll_event. */
+    private static final int EVENT_DATA = Platform.isIntel() ? 4 : 8;
+
+    /** Maximum number of events returned by each epoll_wait call. */
+    private static final int MAX_EVENTS = 64;
+
+    /** Reports listeners that cannot be run. */
+    private static final Logger LOGGER
+        = Logger.getLogger(PidfdProcessExitWatcher.class.getName());
+
+    /** The C library. */
+    private final LibC libc;
+
+    /** Runs listeners. */
+    private final Executor executor;
+
+    /** The epoll file descriptor. */
+    private final int epollFd;
+
+    /** The eventfd that wakes the epoll thread. */
+    private final int wakeFd;
+
+    /** The thread that waits for processes. */
+    private final Thread thread;
+
+    /** Guards the watches and pending closes. */
+    private final Object lock = new Object();
+
+    /** Watched processes by process id. */
+    private final Map<Integer, Watch> watches = new HashMap<Integer, Watch>();
+
+    /** Watched processes by pidfd, including unwatched processes whose
+     * pidfds have not yet been closed. */
+    private final Map<Integer, Watch> watchesByFd
+        = new HashMap<Integer, Watch>();
+
+    /** Unwatched pidfds for the epoll thread to close. */
+    private final List<Integer> pendingCloses = new ArrayList<Integer>();
+
+    /** Buffer for epoll_ctl's event argument. */
+    private final Memory ctlEvent = new Memory(EVENT_SIZE);
+
+    /** Buffer for writing to the eventfd. */
+    private final Memory wakeValue = new Memory(8);
+
+    /** true once the watcher has been closed. */
+    private boolean closed;
+
+    /** true once a rejected listener has been logged. */
+    private final AtomicBoolean rejectionLogged = new AtomicBoolean();
+
+    /**
+     * Constructs a new PidfdProcessExitWatcher.
+     *
+     * @param executor Runs listeners.
+     * @throws IOException if the kernel does not support pidfds or the
+     *  epoll instance could not be created.
+     */
+    public PidfdProcessExitWatcher(final Executor executor)
+            throws IOException {
+        this(LibC.INSTANCE, executor);
+    }
+
+    /**
+     * Constructs a new PidfdProcessExitWatcher that uses the given C
+     * library.
+     *
+     * @param libc The C library.
+     * @param executor Runs listeners.
+     * @throws IOException if the kernel does not support pidfds or the
+     *  epoll instance could not be created.
+     */
+    public PidfdProcessExitWatcher(final LibC libc, final Executor executor)
+            throws IOException {
+        this.libc = libc;
+        this.executor = executor;
+
+        /* Make sure that pidfds are supported by opening one for this
+         * process. */
+        int selfFd = pidfdOpen(libc.getpid());
+        if (selfFd < 0) {
+            throw new IOException("pidfd_open is not supported: errno "
+                    + Native.getLastError());
+        }
+        libc.close(selfFd);
+
+        this.epollFd = libc.epoll_create1(LibC.O_CLOEXEC);
+        if (this.epollFd < 0) {
+            throw new IOException("Couldn't create epoll instance: errno "
+                    + Native.getLastError());
+        }
+
+        this.wakeFd = libc.eventfd(0, LibC.O_CLOEXEC | LibC.EFD_NONBLOCK);
+        if (this.wakeFd < 0 || !addToEpoll(this.wakeFd)) {
+            int errno = Native.getLastError();
+            if (this.wakeFd >= 0) {
+                libc.close(this.wakeFd);
+            }
+            libc.close(this.epollFd);
+            throw new IOException("Couldn't create wake eventfd: errno "
+                    + errno);
+        }
+
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                waitForExits();
+            }
+        }, "jnaplatext-exit-epoll");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** {@inheritDoc} */
+    public boolean watch(final int processId, final Listener listener)
+            throws IOException {
+        synchronized (this.lock) {
+            checkOpen();
+            Watch watch = this.watches.get(processId);
+            if (watch != null) {
+                watch.listeners.add(listener);
+                return true;
+            }
+
+            int pidfd = pidfdOpen(processId);
+            if (pidfd < 0) {
+                int errno = Native.getLastError();
+                if (errno == LibC.ESRCH) {
+                    return false;
+                }
+                throw new IOException("Couldn't open pidfd for "
+                        + processId + ": errno " + errno);
+            }
+
+            /* Register the watch before the pidfd can be reported. */
+            watch = new Watch(processId, pidfd, listener);
+            this.watches.put(processId, watch);
+            this.watchesByFd.put(pidfd, watch);
+            if (!addToEpoll(pidfd)) {
+                int errno = Native.getLastError();
+                this.watches.remove(processId);
+                this.watchesByFd.remove(pidfd);
+                this.libc.close(pidfd);
+                throw new IOException("Couldn't add pidfd for "
+                        + processId + " to epoll: errno " + errno);
+            }
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean unwatch(final int processId) {
+        synchronized (this.lock) {
+            Watch watch = this.watches.remove(processId);
+            if (watch == null) {
+                return false;
+            }
+
+            /* The epoll thread closes the pidfd, so that its number
+             * cannot be reused while an event for it is in flight. */
+            watch.removed = true;
+            this.pendingCloses.add(watch.pidfd);
+            wake();
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int getWatchedCount() {
+        synchronized (this.lock) {
+            return this.watches.size();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void close() {
+        synchronized (this.lock) {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            this.watches.clear();
+            wake();
+        }
+
+        if (this.thread != Thread.currentThread()) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Throws if the watcher has been closed.  Must be called with the
+     * lock held.
+     *
+     * @throws IOException if the watcher has been closed.
+     */
+    private void checkOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Process exit watcher is closed.");
+        }
+    }
+
+    /**
+     * Opens a pidfd.
+     *
+     * @param processId Process id of the process.
+     * @return The pidfd; -1 on error.
+     */
+    private int pidfdOpen(final int processId) {
+        return this.libc.syscall(
+                new NativeLong(LibC.SYS_pidfd_open), processId, 0)
+            .intValue();
+    }
+
+    /**
+     * Adds a file descriptor to the epoll instance.  Must be called
+     * with the lock held, or before the epoll thread has started.
+     *
+     * @param fd The file descriptor; also stored as the event's data.
+     * @return true on success, false on error.
+     */
+    private boolean addToEpoll(final int fd) {
+        this.ctlEvent.setInt(0, LibC.EPOLLIN);
+        this.ctlEvent.setLong(EVENT_DATA, fd);
+        return this.libc.epoll_ctl(
+                this.epollFd, LibC.EPOLL_CTL_ADD, fd, this.ctlEvent) == 0;
+    }
+
+    /**
+     * Wakes the epoll thread.  Must be called with the lock held.
+     */
+    private void wake() {
+        this.wakeValue.setLong(0, 1);
+        this.libc.write(this.wakeFd, this.wakeValue, new NativeLong(8));
+    }
+
+    /**
+     * The body of the epoll thread.
+     */
+    private void waitForExits() {
+        Memory events = new Memory(EVENT_SIZE * MAX_EVENTS);
+        Memory drain = new Memory(8);
+        while (true) {
+            int ready = this.libc.epoll_wait(
+                    this.epollFd, events, MAX_EVENTS, -1);
+            if (ready < 0) {
+                if (Native.getLastError() == LibC.EINTR) {
+                    continue;
+                }
+                break;
+            }
+
+            for (int i = 0; i < ready; i++) {
+                int fd = (int) events.getLong(i * EVENT_SIZE + EVENT_DATA);
+                if (fd == this.wakeFd) {
+                    this.libc.read(this.wakeFd, drain, new NativeLong(8));
+                } else {
+                    exited(fd);
+                }
+            }
+
+            if (!closePendingFds()) {
+                break;
+            }
+        }
+
+        /* Release everything. */
+        synchronized (this.lock) {
+            this.closed = true;
+            for (Integer fd : this.watchesByFd.keySet()) {
+                this.libc.close(fd);
+            }
+            this.watchesByFd.clear();
+            this.watches.clear();
+            this.pendingCloses.clear();
+            this.libc.close(this.wakeFd);
+            this.libc.close(this.epollFd);
+        }
+    }
+
+    /**
+     * Closes the pidfds of unwatched processes.
+     *
+     * @return true to keep waiting, false if the watcher has been
+     *  closed.
+     */
+    private boolean closePendingFds() {
+        synchronized (this.lock) {
+            for (Integer fd : this.pendingCloses) {
+                this.watchesByFd.remove(fd);
+                this.libc.close(fd);
+            }
+            this.pendingCloses.clear();
+            return !this.closed;
+        }
+    }
+
+    /**
+     * Reports the exit of a watched process, unless it has been
+     * unwatched.
+     *
+     * @param pidfd The process's pidfd.
+     */
+    private void exited(final int pidfd) {
+        final Watch watch;
+        List<Listener> listeners;
+        synchronized (this.lock) {
+            watch = this.watchesByFd.get(pidfd);
+            if (watch == null || watch.removed) {
+                return;
+            }
+
+            /* Closing the pidfd also removes it from the epoll set. */
+            watch.removed = true;
+            this.watches.remove(watch.processId);
+            this.watchesByFd.remove(pidfd);
+            this.libc.close(pidfd);
+            listeners = new ArrayList<Listener>(watch.listeners);
+        }
+
+        for (final Listener listener : listeners) {
+            try {
+                this.executor.execute(new Runnable() {
+                    public void run() {
+                        listener.processExited(
+                                watch.processId, EXIT_CODE_UNKNOWN);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                /* Keep going so that the remaining listeners and exits
+                 * are still handled, but only report the first
+                 * rejection. */
+                if (this.rejectionLogged.compareAndSet(false, true)) {
+                    LOGGER.log(Level.WARNING,
+                            "Executor rejected a process exit listener.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A watched process.  The mutable fields are guarded by the
+     * watcher's lock.
+     */
+    private static final class Watch {
+        /** Process id. */
+        private final int processId;
+
+        /** The process's pidfd. */
+        private final int pidfd;
+
+        /** Listeners to call when the process exits. */
+        private final List<Listener> listeners = new ArrayList<Listener>(1);
+
+        /** true once the process has exited or been unwatched. */
+        private boolean removed;
+
+        /**
+         * Constructs a new Watch.
+         *
+         * @param processId Process id.
+         * @param pidfd The process's pidfd.
+         * @param listener The first listener.
+         */
+        Watch(final int processId, final int pidfd,
+                final Listener listener) {
+            this.processId = processId;
+            this.pidfd = pidfd;
+            this.listeners.add(listener);
+        }
+    }
+}
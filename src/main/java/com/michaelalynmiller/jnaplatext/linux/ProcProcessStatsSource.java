@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessStats;
+
+/**
+ * Reads the counters of every Linux process from /proc.  Linux has no
+ * single system-wide query for per-process counters, so each cycle
+ * lists /proc once and reads each process's stat file into a reused
+ * buffer, parsing the fields in place rather than splitting them into
+ * strings.
+ *
+ * <p>The handle count is the number of open file descriptors.  Counting
+ * them means listing each process's fd directory, which is
+ * considerably more expensive than reading its stat file and is only
+ * permitted for the caller's own processes, so it is optional; when it
+ * is disabled, or not permitted, the handle count is -1.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcProcessStatsSource implements ProcessStats.Source {
+    /** Field number of utime in /proc/[pid]/stat. */
+    private static final int UTIME_FIELD = 14;
+
+    /** Field number of stime in /proc/[pid]/stat. */
+    private static final int STIME_FIELD = 15;
+
+    /** Field number of starttime in /proc/[pid]/stat. */
+    private static final int STARTTIME_FIELD = 22;
+
+    /** Field number of rss in /proc/[pid]/stat. */
+    private static final int RSS_FIELD = 24;
+
+    /** The /proc directory. */
+    private final File procRoot;
+
+    /** Length of a clock tick, in nanoseconds. */
+    private final long nanosPerTick;
+
+    /** Size of a page, in bytes. */
+    private final long pageSize;
+
+    /** true to count each process's file descriptors. */
+    private final boolean countHandles;
+
+    /** Receives the contents of stat files. */
+    private byte[] buffer = new byte[1024];
+
+    /** Builds stat file paths. */
+    private final StringBuilder path = new StringBuilder();
+
+    /** The parsed fields of the most recent stat file. */
+    private final long[] fields = new long[RSS_FIELD + 1];
+
+    /**
+     * Constructs a new ProcProcessStatsSource that reads /proc without
+     * counting file descriptors.
+     */
+    public ProcProcessStatsSource() {
+        this(new File("/proc"),
+                LibC.INSTANCE.sysconf(LibC._SC_CLK_TCK).longValue(),
+                LibC.INSTANCE.sysconf(LibC._SC_PAGESIZE).longValue(),
+                false);
+    }
+
+    /**
+     * Constructs a new ProcProcessStatsSource.
+     *
+     * @param procRoot The /proc directory.
+     * @param ticksPerSecond Clock ticks per second, the unit of the CPU
+     *  times in stat files.
+     * @param pageSize Size of a page, in bytes, the unit of the resident
+     *  set size in stat files.
+     * @param countHandles true to count each process's file
+     *  descriptors.
+     */
+    public ProcProcessStatsSource(
+            final File procRoot,
+            final long ticksPerSecond,
+            final long pageSize,
+            final boolean countHandles) {
+        this.procRoot = procRoot;
+        this.nanosPerTick = 1000000000L / ticksPerSecond;
+        this.pageSize = pageSize;
+        this.countHandles = countHandles;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void read(final ProcessStats.Sample sample)
+            throws IOException {
+        String[] names = this.procRoot.list();
+        if (names == null) {
+            throw new IOException("Couldn't list " + this.procRoot);
+        }
+
+        for (String name : names) {
+            int processId = parseProcessId(name);
+            if (processId < 0) {
+                continue;
+            }
+
+            /* Read the process's stat file; skip processes that have
+             * exited since /proc was listed. */
+            this.path.setLength(0);
+            this.path.append(this.procRoot.getPath()).append('/')
+                .append(name).append("/stat");
+            int length = readFile(this.path.toString());
+            if (length < 0 || !parseStat(length)) {
+                continue;
+            }
+
+            int handleCount = -1;
+            if (this.countHandles) {
+                this.path.setLength(this.path.length() - "stat".length());
+                this.path.append("fd");
+                String[] fds = new File(this.path.toString()).list();
+                if (fds != null) {
+                    handleCount = fds.length;
+                }
+            }
+
+            sample.add(
+                processId,
+                this.fields[STARTTIME_FIELD],
+                (this.fields[UTIME_FIELD] + this.fields[STIME_FIELD])
+                    * this.nanosPerTick,
+                this.fields[RSS_FIELD] * this.pageSize,
+                handleCount);
+        }
+    }
+
+    /**
+     * Parses a /proc entry name as a process id.
+     *
+     * @param name The entry name.
+     * @return The process id; -1 if the entry is not a process.
+     */
+    static int parseProcessId(final String name) {
+        if (name.length() == 0 || name.length() > 9) {
+            return -1;
+        }
+
+        int processId = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            processId = processId * 10 + (c - '0');
+        }
+        return processId;
+    }
+
+    /**
+     * Reads a file into the buffer, growing the buffer if necessary.
+     *
+     * @param file Path to the file.
+     * @return The length of the file; -1 if the file does not exist.
+     * @throws IOException if the file could not be read.
+     */
+    private int readFile(final String file) throws IOException {
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return -1;
+        }
+
+        try {
+            int length = 0;
+            while (true) {
+                if (length == this.buffer.length) {
+                    byte[] larger = new byte[this.buffer.length * 2];
+                    System.arraycopy(this.buffer, 0, larger, 0, length);
+                    this.buffer = larger;
+                }
+
+                int count = in.read(
+                        this.buffer, length, this.buffer.length - length);
+                if (count < 0) {
+                    return length;
+                }
+                length += count;
+            }
+        } catch (IOException e) {
+            /* The process exited while its stat file was open. */
+            return -1;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Parses the numeric fields of the stat file in the buffer, up to
+     * and including the resident set size.
+     *
+     * @param length Length of the stat file.
+     * @return true if the file was parsed, false if it was truncated.
+     */
+    private boolean parseStat(final int length) {
+        /* The command name (field 2) is in parentheses and may itself
+         * contain spaces and parentheses, so start after the last
+         * closing parenthesis. */
+        int pos = length - 1;
+        while (pos >= 0 && this.buffer[pos] != ')') {
+            pos--;
+        }
+        if (pos < 0) {
+            return false;
+        }
+        pos++;
+
+        for (int field = 3; field <= RSS_FIELD; field++) {
+            /* Skip the separator. */
+            while (pos < length && this.buffer[pos] == ' ') {
+                pos++;
+            }
+            if (pos == length) {
+                return false;
+            }
+
+            /* Parse the field; non-numeric fields (the state) parse as
+             * zero. */
+            boolean negative = this.buffer[pos] == '-';
+            if (negative) {
+                pos++;
+            }
+
+            long value = 0;
+            while (pos < length && this.buffer[pos] != ' ') {
+                byte b = this.buffer[pos++];
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                }
+            }
+            this.fields[field] = negative ? -value : value;
+        }
+
+        return true;
+    }
+}
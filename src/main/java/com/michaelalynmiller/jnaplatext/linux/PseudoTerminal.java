@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.IOException;
+
+/* JNA imports. */
+import com.sun.jna.Native;
+
+/**
+ * A pseudo-terminal master/slave pair.  Processes are attached to the
+ * slave device and are driven through the master.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class PseudoTerminal {
+    /** File descriptor of the master device. */
+    private int masterFd;
+
+    /** Path to the slave device. */
+    private final String slaveName;
+
+    /**
+     * Constructs a new PseudoTerminal around an open master device.
+     *
+     * @param masterFd File descriptor of the master device.
+     * @param slaveName Path to the slave device.
+     */
+    private PseudoTerminal(final int masterFd, final String slaveName) {
+        this.masterFd = masterFd;
+        this.slaveName = slaveName;
+    }
+
+    /**
+     * Opens a new pseudo-terminal.
+     *
+     * @return The new pseudo-terminal.
+     * @throws IOException if the pseudo-terminal could not be opened.
+     */
+    public static PseudoTerminal open() throws IOException {
+        /* Open the master. */
+        int fd = LibC.INSTANCE.posix_openpt(LibC.O_RDWR | LibC.O_NOCTTY);
+        if (fd < 0) {
+            throw new IOException("Couldn't open pseudo-terminal: errno "
+                    + Native.getLastError());
+        }
+
+        /* Unlock the slave and get its name. */
+        String name = null;
+        if (LibC.INSTANCE.grantpt(fd) == 0
+                && LibC.INSTANCE.unlockpt(fd) == 0) {
+            name = LibC.INSTANCE.ptsname(fd);
+        }
+
+        if (name == null) {
+            int errno = Native.getLastError();
+            LibC.INSTANCE.close(fd);
+            throw new IOException("Couldn't unlock pseudo-terminal: errno "
+                    + errno);
+        }
+
+        /* Return the pseudo-terminal. */
+        return new PseudoTerminal(fd, name);
+    }
+
+    /**
+     * Starts a process with its standard input, output and error
+     * attached to this pseudo-terminal's slave device.
+     *
+     * @param command The command line to execute with /bin/sh.
+     * @return The new process.
+     * @throws IOException if the process could not be started.
+     */
+    public Process start(final String command) throws IOException {
+        return new ProcessBuilder(
+                "/bin/sh", "-c",
+                "exec " + command + " <\"$0\" >\"$0\" 2>&1",
+                slaveName).start();
+    }
+
+    /**
+     * Returns the file descriptor of the master device.
+     *
+     * @return The file descriptor of the master device; -1 if the
+     *  pseudo-terminal has been closed.
+     */
+    public synchronized int getMasterFd() {
+        return masterFd;
+    }
+
+    /**
+     * Returns the path to the slave device.
+     *
+     * @return The path to the slave device.
+     */
+    public String getSlaveName() {
+        return slaveName;
+    }
+
+    /**
+     * Closes the master device.  Processes attached to the slave device
+     * will receive a hangup.
+     */
+    public synchronized void close() {
+        if (masterFd >= 0) {
+            LibC.INSTANCE.close(masterFd);
+            masterFd = -1;
+        }
+    }
+}
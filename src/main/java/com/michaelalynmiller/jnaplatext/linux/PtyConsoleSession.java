@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ConsoleSession;
+
+/**
+ * A console session on a pseudo-terminal.  Text is typed through a
+ * PtyTyper and output is read from the master device, so every read
+ * returns only the bytes written since the previous read; no screen
+ * needs to be scraped or compared.  Output is decoded into a reusable
+ * buffer, and multi-byte characters that are split across reads are
+ * held back until they are complete.
+ *
+ * <p>Writes and reads may be made from different threads, but reads
+ * must not be made concurrently.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public class PtyConsoleSession implements ConsoleSession {
+    /** Size of a struct pollfd, in bytes. */
+    private static final int POLLFD_SIZE = 8;
+
+    /** The pseudo-terminal. */
+    private final PseudoTerminal pty;
+
+    /** Types text into the terminal. */
+    private final PtyTyper typer;
+
+    /** Decodes the terminal's output. */
+    private final CharsetDecoder decoder;
+
+    /** Native buffer that read(2) fills. */
+    private final Memory nativeBuffer;
+
+    /** Bytes that have been read but not yet decoded. */
+    private final ByteBuffer undecoded;
+
+    /** Decoded output. */
+    private final CharBuffer decoded;
+
+    /** The struct pollfd used to wait for output. */
+    private final Memory pollFd = new Memory(POLLFD_SIZE);
+
+    /**
+     * Constructs a new PtyConsoleSession that exchanges UTF-8 text with
+     * the given pseudo-terminal.
+     *
+     * @param pty The pseudo-terminal; closed when the session is
+     *  closed.
+     */
+    public PtyConsoleSession(final PseudoTerminal pty) {
+        this(pty, Charset.forName("UTF-8"), PtyTyper.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new PtyConsoleSession.
+     *
+     * @param pty The pseudo-terminal; closed when the session is
+     *  closed.
+     * @param charset Character set of the terminal.
+     * @param bufferSize Size of the read and write buffers, in bytes.
+     */
+    public PtyConsoleSession(
+            final PseudoTerminal pty,
+            final Charset charset,
+            final int bufferSize) {
+        this.pty = pty;
+        this.typer = new PtyTyper(pty, charset, bufferSize);
+        this.decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.nativeBuffer = new Memory(bufferSize);
+        this.undecoded = ByteBuffer.allocate(bufferSize);
+        this.decoded = CharBuffer.allocate(
+                (int) Math.ceil(bufferSize * decoder.maxCharsPerByte()));
+    }
+
+    /**
+     * Writes text to the terminal.
+     *
+     * @param text The text to write.
+     * @throws IOException if the text could not be written.
+     */
+    public final void write(final String text) throws IOException {
+        this.typer.write(text);
+    }
+
+    /** {@inheritDoc} */
+    public final int read(
+            final OutputListener listener,
+            final long timeoutMillis) throws IOException {
+        int masterFd = this.pty.getMasterFd();
+        if (masterFd < 0) {
+            return -1;
+        }
+
+        /* Wait for output. */
+        if (!awaitReadable(masterFd, timeoutMillis)) {
+            return 0;
+        }
+
+        /* Read as much as fits after any incomplete character left
+         * over from the previous read. */
+        long count;
+        do {
+            count = LibC.INSTANCE.read(masterFd, this.nativeBuffer,
+                    new NativeLong(this.undecoded.remaining())).longValue();
+        } while (count < 0 && Native.getLastError() == LibC.EINTR);
+
+        if (count < 0) {
+            int errno = Native.getLastError();
+            if (errno == LibC.EIO) {
+                return -1;
+            }
+            throw new IOException(
+                    "Couldn't read from pseudo-terminal: errno " + errno);
+        }
+        if (count == 0) {
+            return -1;
+        }
+
+        /* Decode the output and hand it to the listener. */
+        this.nativeBuffer.read(0, this.undecoded.array(),
+                this.undecoded.position(), (int) count);
+        this.undecoded.position(this.undecoded.position() + (int) count);
+        this.undecoded.flip();
+        this.decoder.decode(this.undecoded, this.decoded, false);
+        this.undecoded.compact();
+
+        int length = this.decoded.position();
+        if (length > 0) {
+            listener.output(this.decoded.array(), 0, length);
+        }
+        this.decoded.clear();
+        return length;
+    }
+
+    /**
+     * Closes the pseudo-terminal.  Processes attached to it will
+     * receive a hangup.
+     */
+    public final void close() {
+        this.pty.close();
+    }
+
+    /**
+     * Waits for the terminal to become readable.
+     *
+     * @param fd File descriptor of the pseudo-terminal master.
+     * @param timeoutMillis Maximum time to wait, in milliseconds.
+     * @return true if the terminal is readable or has been hung up,
+     *  false if the time-out elapsed first.
+     * @throws IOException if the terminal could not be polled.
+     */
+    private boolean awaitReadable(final int fd, final long timeoutMillis)
+            throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (;;) {
+            this.pollFd.setInt(0, fd);
+            this.pollFd.setShort(4, LibC.POLLIN);
+            this.pollFd.setShort(6, (short) 0);
+
+            long remaining = Math.max(
+                    0, deadline - System.currentTimeMillis());
+            int ready = LibC.INSTANCE.poll(this.pollFd, new NativeLong(1),
+                    (int) Math.min(remaining, Integer.MAX_VALUE));
+            if (ready > 0) {
+                return true;
+            }
+            if (ready == 0) {
+                return false;
+            }
+
+            int errno = Native.getLastError();
+            if (errno != LibC.EINTR) {
+                throw new IOException(
+                        "Couldn't poll pseudo-terminal: errno " + errno);
+            }
+        }
+    }
+}
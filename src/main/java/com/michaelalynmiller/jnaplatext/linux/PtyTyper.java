@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.Typer;
+
+/**
+ * Sends strings of text to a shell through the master side of its
+ * pseudo-terminal.  Text is encoded into a reusable buffer and written
+ * with as few write(2) calls as possible rather than one call per
+ * character.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public class PtyTyper implements Typer {
+    /** Default size of the write buffer, in bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /** The pseudo-terminal whose master is written.  Its file descriptor
+     * is looked up on every write, because the number may be reused
+     * once the pseudo-terminal has been closed. */
+    private final PseudoTerminal pty;
+
+    /** Encodes text into the terminal's character set. */
+    private final CharsetEncoder encoder;
+
+    /** Buffer that text is encoded into. */
+    private final ByteBuffer encoded;
+
+    /** Native copy of the encoded buffer that is passed to write(2). */
+    private final Memory nativeBuffer;
+
+    /**
+     * Constructs a new PtyTyper that writes UTF-8 text to the given
+     * pseudo-terminal.
+     *
+     * @param pty The pseudo-terminal whose master should be written.
+     */
+    public PtyTyper(final PseudoTerminal pty) {
+        this(pty, Charset.forName("UTF-8"), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new PtyTyper that writes to the given
+     * pseudo-terminal.
+     *
+     * @param pty The pseudo-terminal whose master should be written.
+     * @param charset Character set used to encode the text.
+     * @param bufferSize Size of the write buffer, in bytes.
+     */
+    public PtyTyper(
+            final PseudoTerminal pty,
+            final Charset charset,
+            final int bufferSize) {
+        this.pty = pty;
+        this.encoder = charset.newEncoder();
+        this.encoded = ByteBuffer.allocate(
+                Math.max(bufferSize, (int) Math.ceil(
+                        encoder.maxBytesPerChar() * 2)));
+        this.nativeBuffer = new Memory(encoded.capacity());
+    }
+
+    /**
+     * Writes text to the shell.
+     *
+     * @param text The text to write.
+     * @throws IOException if the text could not be written, or if the
+     *  pseudo-terminal has been closed.
+     */
+    public final synchronized void write(final String text)
+            throws IOException {
+        CharBuffer in = CharBuffer.wrap(text);
+        encoder.reset();
+
+        /* Encode the text a buffer at a time, writing each buffer as
+         * it fills up. */
+        boolean flushed = false;
+        while (!flushed) {
+            CoderResult result = encoder.encode(in, encoded, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(encoded);
+                flushed = result.isUnderflow();
+            }
+
+            if (result.isError()) {
+                result.throwException();
+            }
+
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes the contents of the encoded buffer to the terminal and
+     * clears the buffer.
+     *
+     * @throws IOException if the buffer could not be written.
+     */
+    private void writeBuffer() throws IOException {
+        int masterFd = pty.getMasterFd();
+        if (masterFd < 0) {
+            encoded.clear();
+            throw new IOException("Pseudo-terminal is closed.");
+        }
+
+        int length = encoded.position();
+        nativeBuffer.write(0, encoded.array(), 0, length);
+        encoded.clear();
+
+        /* Keep writing until the terminal has accepted everything. */
+        int offset = 0;
+        while (offset < length) {
+            long written = LibC.INSTANCE.write(
+                    masterFd,
+                    offset == 0 ? nativeBuffer : nativeBuffer.share(offset),
+                    new NativeLong(length - offset)).longValue();
+            if (written < 0) {
+                int errno = Native.getLastError();
+                if (errno == LibC.EINTR) {
+                    continue;
+                }
+
+                throw new IOException(
+                        "Couldn't write to pseudo-terminal: errno " + errno);
+            }
+
+            offset += written;
+        }
+    }
+}
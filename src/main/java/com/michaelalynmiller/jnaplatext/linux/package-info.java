@@ -0,0 +1,6 @@
+/**
+ * Provides JNA methods for interacting with elements of the Linux and
+ * POSIX APIs.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
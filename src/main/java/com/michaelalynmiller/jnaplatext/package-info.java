@@ -0,0 +1,6 @@
+/**
+ * Provides platform-independent interfaces implemented by the
+ * platform-specific packages.
+ */
+
+package com.michaelalynmiller.jnaplatext;
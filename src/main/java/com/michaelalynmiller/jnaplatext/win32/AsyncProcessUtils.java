@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinDef.HWND;
+
+/**
+ * Asynchronous versions of the ProcessUtils operations.  Native work
+ * runs on a dedicated, bounded pool of platform threads so that callers
+ * (including virtual threads) never block inside a native call, and
+ * identical requests that are issued while one is already in flight
+ * share its result instead of repeating the native work.
+ *
+ * <p>Every caller receives its own future, so completing or cancelling
+ * one caller's future does not affect the other callers that share the
+ * request.  The results themselves are shared, so the lists returned by
+ * this class are unmodifiable.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class AsyncProcessUtils {
+    /** Default number of native-call threads. */
+    public static final int DEFAULT_THREADS = 2;
+
+    /** Default number of requests that may be queued for the
+     * native-call threads. */
+    public static final int DEFAULT_MAX_QUEUED = 64;
+
+    /** Key for in-flight process list requests. */
+    private static final Object PROCESS_LIST_KEY = "getProcessList";
+
+    /** KERNEL32 functions used to enumerate processes. */
+    private final Kernel32Process kernel32;
+
+    /** USER32 functions used to enumerate windows. */
+    private final User32Window user32;
+
+    /** Cache of open process handles; may be null. */
+    private final ProcessHandleCache handleCache;
+
+    /** Process id of this process. */
+    private final int currentProcessId;
+
+    /** Executor that runs all of the native calls. */
+    private final ThreadPoolExecutor nativeExecutor;
+
+    /** Requests that are currently being executed, by request key. */
+    private final ConcurrentMap<Object, CompletableFuture<?>> inFlight
+        = new ConcurrentHashMap<Object, CompletableFuture<?>>();
+
+    /**
+     * Constructs a new AsyncProcessUtils with the default number of
+     * native-call threads and queue size.
+     */
+    public AsyncProcessUtils() {
+        this(Kernel32.INSTANCE, User32.INSTANCE, null,
+                DEFAULT_THREADS, DEFAULT_MAX_QUEUED);
+    }
+
+    /**
+     * Constructs a new AsyncProcessUtils.
+     *
+     * @param kernel32 KERNEL32 functions used to enumerate processes.
+     * @param user32 USER32 functions used to enumerate windows.
+     * @param handleCache Cache of open process handles; null to open
+     *  and close each process.
+     * @param threads Number of native-call threads.
+     * @param maxQueued Maximum number of requests that may be waiting
+     *  for a native-call thread; further requests fail with a
+     *  RejectedExecutionException.
+     */
+    public AsyncProcessUtils(
+            final Kernel32Process kernel32,
+            final User32Window user32,
+            final ProcessHandleCache handleCache,
+            final int threads,
+            final int maxQueued) {
+        this.kernel32 = kernel32;
+        this.user32 = user32;
+        this.handleCache = handleCache;
+        this.currentProcessId = kernel32.GetCurrentProcessId();
+        this.nativeExecutor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(maxQueued),
+                new NativeThreadFactory());
+    }
+
+    /**
+     * Gets the list of processes on this machine.
+     *
+     * @return A future that completes with the list of processes on
+     *  this machine.
+     */
+    public CompletableFuture<List<ProcessUtils.ProcessInfo>>
+            getProcessList() {
+        return submit(PROCESS_LIST_KEY,
+            new Callable<List<ProcessUtils.ProcessInfo>>() {
+                public List<ProcessUtils.ProcessInfo> call()
+                        throws Exception {
+                    return Collections.unmodifiableList(
+                            ProcessUtils.getProcessList(
+                                kernel32, handleCache));
+                }
+            });
+    }
+
+    /**
+     * Returns the current process's ancestors in ascending (towards the
+     * root) order.
+     *
+     * @return A future that completes with the list of this process's
+     *  ancestors.
+     */
+    public CompletableFuture<List<ProcessUtils.ProcessInfo>>
+            getProcessAncestors() {
+        return getProcessList().thenApply(
+            new Function<List<ProcessUtils.ProcessInfo>,
+                    List<ProcessUtils.ProcessInfo>>() {
+                public List<ProcessUtils.ProcessInfo> apply(
+                        final List<ProcessUtils.ProcessInfo> processList) {
+                    return Collections.unmodifiableList(
+                            ProcessUtils.getProcessAncestors(
+                                currentProcessId, processList));
+                }
+            });
+    }
+
+    /**
+     * Returns the list of windows owned by the given process.
+     *
+     * @param processId Process id whose windows should be returned.
+     * @return A future that completes with the list of windows owned by
+     *  the given process.
+     */
+    public CompletableFuture<List<HWND>> getProcessWindows(
+            final int processId) {
+        return submit(Arrays.asList("getProcessWindows", processId),
+            new Callable<List<HWND>>() {
+                public List<HWND> call() throws Exception {
+                    return Collections.unmodifiableList(
+                            ProcessUtils.getProcessWindows(
+                                user32, kernel32, processId));
+                }
+            });
+    }
+
+    /**
+     * Stops accepting new requests.  Requests that have already been
+     * submitted are completed.
+     */
+    public void shutdown() {
+        nativeExecutor.shutdown();
+    }
+
+    /**
+     * Runs the given native work on the native-call executor, or joins
+     * the identical request that is already in flight.  The future that
+     * tracks the request is never handed out; each caller gets its own
+     * dependent future instead.
+     *
+     * @param <T> Type of the result.
+     * @param key Key that identifies identical requests.
+     * @param work The native work to perform.
+     * @return A future that completes with the result of the work.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> submit(
+            final Object key, final Callable<T> work) {
+        /* Join the in-flight request if there is one. */
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        CompletableFuture<?> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return ((CompletableFuture<T>) existing).thenApply(
+                    Function.<T>identity());
+        }
+
+        /* Start a new request.  The request is removed from the
+         * in-flight map before it completes so that callers which
+         * arrive after completion always get fresh results. */
+        try {
+            nativeExecutor.execute(new Runnable() {
+                public void run() {
+                    T result;
+                    try {
+                        result = work.call();
+                    } catch (Throwable t) {
+                        inFlight.remove(key, future);
+                        future.completeExceptionally(t);
+                        return;
+                    }
+
+                    inFlight.remove(key, future);
+                    future.complete(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+
+        return future.thenApply(Function.<T>identity());
+    }
+
+    /**
+     * Creates the daemon threads used to make native calls.
+     */
+    private static final class NativeThreadFactory implements ThreadFactory {
+        /** Number of threads created so far. */
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(
+                    r, "jnaplatext-native-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/* JNA imports. */
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.WString;
+import com.sun.jna.platform.win32.BaseTSD.SIZE_T;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.LRESULT;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/**
+ * Delivers large blocks of text to a console window by pasting them
+ * from the clipboard rather than typing them one keystroke at a time.
+ * A paste costs a fixed number of native calls regardless of the length
+ * of the text.
+ *
+ * <p>The text is placed on the clipboard, the console window is sent
+ * its Paste command and the previous clipboard contents are then put
+ * back.  The console reads the clipboard while it processes the
+ * command, and the command is sent (not posted), so the clipboard is
+ * not restored until the console has finished with it.  While the
+ * clipboard is being written it is owned by a message-only window that
+ * the paster creates for the duration of the paste; SetClipboardData
+ * fails on a clipboard that has been emptied without an owner.
+ *
+ * <p>If the console does not process the command within the paste
+ * time-out, the command is left in the console's queue and may still be
+ * processed later, so the pasted text is left on the clipboard rather
+ * than replaced with the previous contents.  Every format
+ * held in a global memory block is restored, which covers text, DIB
+ * images, file lists and registered formats; formats whose data is a
+ * GDI handle (bitmaps, palettes and metafiles) are dropped, although
+ * Windows resynthesizes CF_BITMAP from a restored CF_DIB.  Clipboard
+ * viewers will see two updates per paste.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ClipboardPaster {
+    /** Command id of the console window's Edit, Paste menu item. */
+    static final int ID_CONSOLE_PASTE = 0xFFF1;
+
+    /** Default time allowed for the console to process the Paste
+     * command, in milliseconds. */
+    public static final int DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    /** Window class of the message-only window that owns the clipboard
+     * during a paste. */
+    private static final WString OWNER_CLASS = new WString("STATIC");
+
+    /** Number of attempts made to open the clipboard, which other
+     * applications may hold open briefly. */
+    private static final int OPEN_ATTEMPTS = 10;
+
+    /** Delay between attempts to open the clipboard, in
+     * milliseconds. */
+    private static final long OPEN_RETRY_MILLIS = 10;
+
+    /** USER32 functions used to send the Paste command. */
+    private final User32Input user32;
+
+    /** USER32 functions used to access the clipboard. */
+    private final User32Clipboard clipboard;
+
+    /** KERNEL32 functions used to manage clipboard memory. */
+    private final Kernel32Memory kernel32;
+
+    /** Time allowed for the console to process the Paste command, in
+     * milliseconds. */
+    private volatile int timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    /**
+     * Constructs a new ClipboardPaster that uses the system clipboard.
+     */
+    public ClipboardPaster() {
+        this(User32.INSTANCE, User32.INSTANCE, Kernel32.INSTANCE);
+    }
+
+    /**
+     * Constructs a new ClipboardPaster that uses the given native
+     * functions.
+     *
+     * @param user32 USER32 functions used to send the Paste command.
+     * @param clipboard USER32 functions used to access the clipboard.
+     * @param kernel32 KERNEL32 functions used to manage clipboard
+     *  memory.
+     */
+    public ClipboardPaster(
+            final User32Input user32,
+            final User32Clipboard clipboard,
+            final Kernel32Memory kernel32) {
+        this.user32 = user32;
+        this.clipboard = clipboard;
+        this.kernel32 = kernel32;
+    }
+
+    /**
+     * Sets the time allowed for the console to process the Paste
+     * command.
+     *
+     * @param millis The time-out, in milliseconds.
+     */
+    public void setTimeout(final int millis) {
+        this.timeoutMillis = millis;
+    }
+
+    /**
+     * Pastes text into a console window.
+     *
+     * @param consoleHwnd The console window.
+     * @param text The text to paste.
+     * @return true if the text was pasted; false if the clipboard could
+     *  not be opened or written, in which case the console has not
+     *  received any of the text.
+     * @throws IOException if the console did not process the Paste
+     *  command in time, or if the previous clipboard contents could not
+     *  be restored.
+     */
+    public boolean paste(final HWND consoleHwnd, final String text)
+            throws IOException {
+        HWND owner = this.clipboard.CreateWindowEx(
+                0, OWNER_CLASS, null, 0, 0, 0, 0, 0,
+                WinUser.HWND_MESSAGE, null, null, null);
+        if (owner == null) {
+            return false;
+        }
+
+        try {
+            return paste(owner, consoleHwnd, text);
+        } finally {
+            this.clipboard.DestroyWindow(owner);
+        }
+    }
+
+    /**
+     * Pastes text into a console window using the given clipboard
+     * owner.
+     *
+     * @param owner The window that owns the clipboard.
+     * @param consoleHwnd The console window.
+     * @param text The text to paste.
+     * @return true if the text was pasted, false if the console has not
+     *  received any of the text.
+     * @throws IOException if the paste could not be completed.
+     */
+    private boolean paste(
+            final HWND owner, final HWND consoleHwnd, final String text)
+            throws IOException {
+        /* Replace the clipboard contents with the text, remembering
+         * the previous contents. */
+        if (!openClipboard(owner)) {
+            return false;
+        }
+
+        List<SavedFormat> saved;
+        try {
+            saved = saveClipboard();
+            if (!this.clipboard.EmptyClipboard()
+                    || !setClipboardText(text)) {
+                if (!restoreClipboard(saved)) {
+                    throw new IOException(
+                            "Couldn't restore the clipboard contents.");
+                }
+                return false;
+            }
+        } finally {
+            this.clipboard.CloseClipboard();
+        }
+
+        /* Paste the text.  If the console doesn't respond, it may still
+         * process the command later, so leave the text on the
+         * clipboard. */
+        LRESULT sent = this.user32.SendMessageTimeout(
+            consoleHwnd, WinUser.WM_COMMAND,
+            new WPARAM(ID_CONSOLE_PASTE), new LPARAM(0),
+            WinUser.SMTO_ABORTIFHUNG, this.timeoutMillis, null);
+        if (sent == null || sent.longValue() == 0) {
+            throw new IOException("The console did not respond to the "
+                    + "Paste command; the pasted text is still on the "
+                    + "clipboard.");
+        }
+
+        /* Put the previous contents back. */
+        if (!openClipboard(owner)) {
+            throw new IOException("Pasted the text, but couldn't reopen "
+                    + "the clipboard to restore its contents.");
+        }
+
+        try {
+            if (!this.clipboard.EmptyClipboard()
+                    || !restoreClipboard(saved)) {
+                throw new IOException("Pasted the text, but couldn't "
+                        + "restore the clipboard contents.");
+            }
+        } finally {
+            this.clipboard.CloseClipboard();
+        }
+
+        return true;
+    }
+
+    /**
+     * Opens the clipboard, retrying briefly if another application has
+     * it open.
+     *
+     * @param owner The window that will own the clipboard.
+     * @return true if the clipboard was opened, false otherwise.
+     */
+    private boolean openClipboard(final HWND owner) {
+        for (int attempt = 1; ; attempt++) {
+            if (this.clipboard.OpenClipboard(owner)) {
+                return true;
+            }
+
+            if (attempt == OPEN_ATTEMPTS) {
+                return false;
+            }
+
+            try {
+                Thread.sleep(OPEN_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Copies every restorable format on the (open) clipboard.
+     *
+     * @return The saved formats, in enumeration order.
+     */
+    private List<SavedFormat> saveClipboard() {
+        List<SavedFormat> saved = new ArrayList<SavedFormat>();
+        for (int format = this.clipboard.EnumClipboardFormats(0);
+                format != 0;
+                format = this.clipboard.EnumClipboardFormats(format)) {
+            if (!isGlobalMemoryFormat(format)) {
+                continue;
+            }
+
+            Pointer hMem = this.clipboard.GetClipboardData(format);
+            if (hMem == null) {
+                continue;
+            }
+
+            Pointer data = this.kernel32.GlobalLock(hMem);
+            if (data == null) {
+                continue;
+            }
+
+            try {
+                int size = (int) this.kernel32.GlobalSize(hMem).longValue();
+                saved.add(new SavedFormat(
+                        format, data.getByteArray(0, size)));
+            } finally {
+                this.kernel32.GlobalUnlock(hMem);
+            }
+        }
+
+        return saved;
+    }
+
+    /**
+     * Puts saved formats back on the (open, empty) clipboard.  Formats
+     * that cannot be restored are skipped.
+     *
+     * @param saved The saved formats.
+     * @return true if every format was restored, false otherwise.
+     */
+    private boolean restoreClipboard(final List<SavedFormat> saved) {
+        boolean restored = true;
+        for (SavedFormat format : saved) {
+            Pointer hMem = allocate(format.data.length);
+            if (hMem == null) {
+                restored = false;
+                continue;
+            }
+
+            Pointer data = this.kernel32.GlobalLock(hMem);
+            if (data == null) {
+                this.kernel32.GlobalFree(hMem);
+                restored = false;
+                continue;
+            }
+
+            data.write(0, format.data, 0, format.data.length);
+            this.kernel32.GlobalUnlock(hMem);
+            restored &= setClipboardData(format.format, hMem);
+        }
+
+        return restored;
+    }
+
+    /**
+     * Places text on the (open, empty) clipboard.
+     *
+     * @param text The text.
+     * @return true if the text was placed on the clipboard, false
+     *  otherwise.
+     */
+    private boolean setClipboardText(final String text) {
+        Pointer hMem = allocate((text.length() + 1) * Native.WCHAR_SIZE);
+        if (hMem == null) {
+            return false;
+        }
+
+        Pointer data = this.kernel32.GlobalLock(hMem);
+        if (data == null) {
+            this.kernel32.GlobalFree(hMem);
+            return false;
+        }
+
+        data.setString(0, text, true);
+        this.kernel32.GlobalUnlock(hMem);
+        return setClipboardData(User32Clipboard.CF_UNICODETEXT, hMem);
+    }
+
+    /**
+     * Allocates a global memory block for clipboard data.
+     *
+     * @param size Size of the block, in bytes.
+     * @return The block's handle; null if it could not be allocated.
+     */
+    private Pointer allocate(final int size) {
+        return this.kernel32.GlobalAlloc(
+                Kernel32Memory.GMEM_MOVEABLE, new SIZE_T(size));
+    }
+
+    /**
+     * Hands a global memory block to the clipboard, freeing it if the
+     * clipboard does not take ownership.
+     *
+     * @param format The clipboard format.
+     * @param hMem The memory block.
+     * @return true if the clipboard took the block, false otherwise.
+     */
+    private boolean setClipboardData(final int format, final Pointer hMem) {
+        if (this.clipboard.SetClipboardData(format, hMem) == null) {
+            this.kernel32.GlobalFree(hMem);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns true if a clipboard format's data is held in a global
+     * memory block.
+     *
+     * @param format The clipboard format.
+     * @return true for global memory formats, false for formats whose
+     *  data is a GDI or private handle.
+     */
+    static boolean isGlobalMemoryFormat(final int format) {
+        switch (format) {
+        case 2:         /* CF_BITMAP */
+        case 3:         /* CF_METAFILEPICT */
+        case 9:         /* CF_PALETTE */
+        case 14:        /* CF_ENHMETAFILE */
+        case 0x0080:    /* CF_OWNERDISPLAY */
+        case 0x0082:    /* CF_DSPBITMAP */
+        case 0x0083:    /* CF_DSPMETAFILEPICT */
+        case 0x008E:    /* CF_DSPENHMETAFILE */
+            return false;
+        default:
+            /* CF_PRIVATEFIRST through CF_PRIVATELAST and
+             * CF_GDIOBJFIRST through CF_GDIOBJLAST. */
+            return format < 0x0200 || format > 0x03FF;
+        }
+    }
+
+    /**
+     * A clipboard format saved while its contents are replaced.
+     */
+    private static final class SavedFormat {
+        /** The clipboard format. */
+        private final int format;
+
+        /** The format's data. */
+        private final byte[] data;
+
+        /**
+         * Constructs a new SavedFormat.
+         *
+         * @param format The clipboard format.
+         * @param data The format's data.
+         */
+        SavedFormat(final int format, final byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.platform.win32.WinBase;
+import com.sun.jna.platform.win32.WinNT;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ConsoleSession;
+
+/**
+ * A console session with a cmd.exe process.  Text is typed with a
+ * CmdExeTyper, and output is read by attaching to cmd.exe's console and
+ * reading the visible window of its screen buffer with a single
+ * ReadConsoleOutput call.  Each read is compared with the previous one
+ * by a ConsoleScreenDiff, so only the rows that have changed are copied
+ * and delivered.
+ *
+ * <p>A process can be attached to only one console, so the calling
+ * process is detached from its own console (if any) while the session
+ * is open, and only one session can be open per process; opening a
+ * second session fails until the first is closed.  Closing the session
+ * attaches the calling process to its parent's console if it had a
+ * console before; Windows cannot reattach a console that the process
+ * allocated itself, so such a console is not restored.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public class CmdExeSession implements ConsoleSession {
+    /** Interval, in milliseconds, at which the screen buffer is read
+     * while waiting for output. */
+    public static final long POLL_INTERVAL_MILLIS = 10;
+
+    /** true while a session is attached to a console; a process can be
+     * attached to only one console at a time. */
+    private static final AtomicBoolean ATTACHED = new AtomicBoolean();
+
+    /** Types text into cmd.exe. */
+    private final CmdExeTyper typer;
+
+    /** KERNEL32 functions used to read the console. */
+    private final Kernel32 kernel32;
+
+    /** Compares successive reads of the screen. */
+    private final ConsoleScreenDiff diff = new ConsoleScreenDiff();
+
+    /** Receives the screen buffer information. */
+    private final WinCon.CONSOLE_SCREEN_BUFFER_INFO info
+        = new WinCon.CONSOLE_SCREEN_BUFFER_INFO();
+
+    /** Size of the read buffer, in columns and rows. */
+    private final WinCon.COORD.ByValue bufferSize
+        = new WinCon.COORD.ByValue();
+
+    /** Origin of the read buffer. */
+    private final WinCon.COORD.ByValue bufferOrigin
+        = new WinCon.COORD.ByValue();
+
+    /** The screen buffer rectangle to read. */
+    private final WinCon.SMALL_RECT readRegion = new WinCon.SMALL_RECT();
+
+    /** Handle to the console's active screen buffer; null once the
+     * session has been closed. */
+    private HANDLE conout;
+
+    /** true if the calling process had a console before the session
+     * detached it. */
+    private boolean hadConsole;
+
+    /** Receives the CHAR_INFO cells. */
+    private Memory cellBuffer = new Memory(WinCon.CHAR_INFO_SIZE);
+
+    /** The cells, as alternating characters and attributes. */
+    private char[] cells = new char[0];
+
+    /**
+     * Constructs a new CmdExeSession with the cmd.exe process
+     * identified by the given process id.
+     *
+     * @param processId Process id of the cmd.exe process.
+     * @throws IOException if cmd.exe's window or console could not be
+     *  found, or if another session is already open.
+     */
+    public CmdExeSession(final int processId) throws IOException {
+        this(processId, newTyper(processId));
+    }
+
+    /**
+     * Constructs a new CmdExeSession with the cmd.exe process
+     * identified by the given process id, typing with the given typer.
+     *
+     * @param processId Process id of the cmd.exe process.
+     * @param typer Types text into cmd.exe's window.
+     * @throws IOException if cmd.exe's console could not be attached,
+     *  or if another session is already open.
+     */
+    public CmdExeSession(final int processId, final CmdExeTyper typer)
+            throws IOException {
+        this.typer = typer;
+        this.kernel32 = Kernel32.INSTANCE;
+
+        /* Only one session may hold the process's console. */
+        if (!ATTACHED.compareAndSet(false, true)) {
+            throw new IOException("A console session is already open.");
+        }
+
+        /* Attach to cmd.exe's console. */
+        this.hadConsole = this.kernel32.FreeConsole();
+        if (!this.kernel32.AttachConsole(processId)) {
+            int error = this.kernel32.GetLastError();
+            restoreConsole();
+            throw new IOException("Couldn't attach to the console of "
+                    + processId + ": error " + error);
+        }
+
+        /* Open its active screen buffer. */
+        HANDLE handle = this.kernel32.CreateFile("CONOUT$",
+                WinNT.GENERIC_READ | WinNT.GENERIC_WRITE,
+                WinNT.FILE_SHARE_READ | WinNT.FILE_SHARE_WRITE,
+                null, WinNT.OPEN_EXISTING, 0, null);
+        if (handle == null || WinBase.INVALID_HANDLE_VALUE.equals(handle)) {
+            int error = this.kernel32.GetLastError();
+            restoreConsole();
+            throw new IOException(
+                    "Couldn't open the console screen buffer: error "
+                    + error);
+        }
+        this.conout = handle;
+    }
+
+    /**
+     * Writes text to cmd.exe.
+     *
+     * @param text The text to write to cmd.exe.
+     * @throws IOException if the text could not be delivered.
+     */
+    public final void write(final String text) throws IOException {
+        try {
+            this.typer.write(text);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Waits for rows of cmd.exe's console window to change and delivers
+     * the change as described by ConsoleScreenDiff: new rows, separated
+     * by newlines, and the characters appended to the last row
+     * delivered.  The first read delivers every non-blank row.
+     *
+     * @param listener Receives the changed rows.
+     * @param timeoutMillis Maximum time to wait for a change, in
+     *  milliseconds.
+     * @return The number of characters delivered, zero if nothing
+     *  changed before the timeout, or -1 if the console has closed.
+     * @throws IOException if the session has been closed.
+     */
+    public final synchronized int read(
+            final OutputListener listener,
+            final long timeoutMillis) throws IOException {
+        if (this.conout == null) {
+            throw new IOException("Session is closed.");
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (;;) {
+            int emitted = readScreen(listener);
+            if (emitted != 0) {
+                return emitted;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return 0;
+            }
+
+            try {
+                Thread.sleep(Math.min(remaining, POLL_INTERVAL_MILLIS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Closes the screen buffer, detaches from cmd.exe's console and
+     * reattaches to the parent's console if the calling process had a
+     * console before the session was opened.
+     */
+    public final synchronized void close() {
+        if (this.conout != null) {
+            this.kernel32.CloseHandle(this.conout);
+            this.conout = null;
+            restoreConsole();
+        }
+    }
+
+    /**
+     * Detaches from cmd.exe's console, if attached, reattaches to the
+     * parent's console if the calling process had one, and lets
+     * another session be opened.
+     */
+    private void restoreConsole() {
+        this.kernel32.FreeConsole();
+        if (this.hadConsole) {
+            this.kernel32.AttachConsole(Kernel32Console.ATTACH_PARENT_PROCESS);
+        }
+        ATTACHED.set(false);
+    }
+
+    /**
+     * Reads the console window and delivers the rows that have changed.
+     *
+     * @param listener Receives the changed rows.
+     * @return The number of characters delivered, or -1 if the console
+     *  has closed.
+     */
+    private int readScreen(final OutputListener listener) {
+        if (!this.kernel32.GetConsoleScreenBufferInfo(
+                    this.conout, this.info)) {
+            return -1;
+        }
+
+        /* Size the buffers to the console window, growing them if the
+         * window has grown. */
+        WinCon.SMALL_RECT window = this.info.srWindow;
+        int columns = window.Right - window.Left + 1;
+        int rows = window.Bottom - window.Top + 1;
+        int cellCount = columns * rows;
+        long byteCount = (long) cellCount * WinCon.CHAR_INFO_SIZE;
+        if (this.cellBuffer.size() < byteCount) {
+            this.cellBuffer = new Memory(byteCount);
+            this.cells = new char[cellCount * 2];
+        }
+
+        /* Read the window's cells. */
+        this.bufferSize.X = (short) columns;
+        this.bufferSize.Y = (short) rows;
+        this.readRegion.Left = window.Left;
+        this.readRegion.Top = window.Top;
+        this.readRegion.Right = window.Right;
+        this.readRegion.Bottom = window.Bottom;
+        if (!this.kernel32.ReadConsoleOutput(this.conout, this.cellBuffer,
+                    this.bufferSize, this.bufferOrigin, this.readRegion)) {
+            return -1;
+        }
+
+        /* Each CHAR_INFO is a UTF-16 character followed by its
+         * attributes, so the characters are every other element. */
+        this.cellBuffer.read(0, this.cells, 0, cellCount * 2);
+        return this.diff.update(this.cells, 2, columns, rows, listener);
+    }
+
+    /**
+     * Creates a typer for the given cmd.exe process.
+     *
+     * @param processId Process id of the cmd.exe process.
+     * @return The typer.
+     * @throws IOException if cmd.exe's window could not be found.
+     */
+    private static CmdExeTyper newTyper(final int processId)
+            throws IOException {
+        try {
+            return new CmdExeTyper(processId);
+        } catch (Exception e) {
+            throw new IOException("Couldn't find cmd.exe's window.", e);
+        }
+    }
+}
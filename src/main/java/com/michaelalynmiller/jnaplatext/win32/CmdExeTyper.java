@@ -33,6 +33,8 @@
 package com.michaelalynmiller.jnaplatext.win32;
 
 /* Java imports. */
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /* JNA imports. */
@@ -40,19 +42,53 @@ import com.sun.jna.platform.win32.WinDef.HWND;
 import com.sun.jna.platform.win32.WinDef.LPARAM;
 import com.sun.jna.platform.win32.WinDef.WPARAM;
 
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.Typer;
+
 /**
  * Sends strings of text to the Windows cmd.exe process.
  *
+ * <p>Writes are serialized, and the WPARAM and LPARAM objects passed to
+ * each message are cached by the typer, so typing text allocates
+ * nothing per character beyond whatever the USER32 binding itself
+ * allocates to make the call.
+ *
+ * <p>Large writes are pasted through the clipboard instead of typed only
+ * if the typer was constructed with a ClipboardPaster.
+ *
  * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
  * @version     1.0.0
  */
-public class CmdExeTyper {
+public class CmdExeTyper implements Typer {
+    /** Default length, in characters, at which writes switch from
+     * typing to pasting. */
+    public static final int DEFAULT_PASTE_THRESHOLD = 4096;
+
     /** Window handle for the cmd.exe process. */
     private HWND hwnd;
 
+    /** USER32 functions used to send keystrokes to cmd.exe. */
+    private User32Input user32;
+
+    /** Pastes large writes through the clipboard; null if every write
+     * is typed. */
+    private ClipboardPaster clipboardPaster;
+
+    /** Length, in characters, at which writes are pasted instead of
+     * typed. */
+    private volatile int pasteThreshold = DEFAULT_PASTE_THRESHOLD;
+
+    /** true if keystrokes have been posted that cmd.exe may not yet
+     * have processed; used only while holding this typer's lock. */
+    private boolean inputPending;
+
+    /** Message parameters; used only while holding this typer's
+     * lock. */
+    private final MessageParams params = new MessageParams();
+
     /**
      * Constructs a new CmdExeTyper that targets the cmd.exe process
-     * identified by the given process id.
+     * identified by the given process id.  Every write is typed.
      *
      * @param processId Process id of the target cmd.exe process.
      */
@@ -69,41 +105,226 @@ public class CmdExeTyper {
 
         /* We're now ready to send characters to the window. */
         this.hwnd = cmdExeWindowList.get(0);
+        this.user32 = User32.INSTANCE;
     }
 
     /**
      * Constructs a new CmdExeTyper that targets the given cmd.exe
-     * window.
+     * window.  Every write is typed.
      *
      * @param cmdExeHwnd Window handle for cmd.exe's window.
      */
     public CmdExeTyper(final HWND cmdExeHwnd) {
+        this(cmdExeHwnd, User32.INSTANCE, null);
+    }
+
+    /**
+     * Constructs a new CmdExeTyper that targets the given cmd.exe
+     * window using the given USER32 functions.  Every write is typed.
+     *
+     * @param cmdExeHwnd Window handle for cmd.exe's window.
+     * @param user32 USER32 functions used to send keystrokes.
+     */
+    public CmdExeTyper(final HWND cmdExeHwnd, final User32Input user32) {
+        this(cmdExeHwnd, user32, null);
+    }
+
+    /**
+     * Constructs a new CmdExeTyper that targets the given cmd.exe
+     * window using the given USER32 functions and pastes large writes
+     * with the given ClipboardPaster.
+     *
+     * @param cmdExeHwnd Window handle for cmd.exe's window.
+     * @param user32 USER32 functions used to send keystrokes.
+     * @param clipboardPaster Pastes writes that reach the paste
+     *  threshold; null to type every write.
+     */
+    public CmdExeTyper(
+            final HWND cmdExeHwnd,
+            final User32Input user32,
+            final ClipboardPaster clipboardPaster) {
         this.hwnd = cmdExeHwnd;
+        this.user32 = user32;
+        this.clipboardPaster = clipboardPaster;
+    }
+
+    /**
+     * Sets the length at which writes are pasted through the clipboard
+     * instead of typed.  Typing costs two posted messages per
+     * character, whereas pasting costs a fixed number of clipboard
+     * calls and briefly replaces the clipboard contents.  Writes are
+     * always typed if this typer has no ClipboardPaster, if the
+     * clipboard is unavailable, or if typed keystrokes may still be
+     * waiting in cmd.exe's message queue; see {@link #markInputConsumed}.
+     *
+     * @param threshold Length, in characters, at which writes are
+     *  pasted; Integer.MAX_VALUE to type every write.
+     */
+    public final void setPasteThreshold(final int threshold) {
+        this.pasteThreshold = threshold;
+    }
+
+    /**
+     * Tells this typer that cmd.exe has processed every keystroke typed
+     * so far, for example because the output of the last typed command
+     * has appeared.  The Paste command is sent rather than posted, so
+     * it would overtake keystrokes that are still in cmd.exe's message
+     * queue.  Once text has been typed, writes are therefore typed
+     * rather than pasted until this method is called.
+     */
+    public final synchronized void markInputConsumed() {
+        this.inputPending = false;
     }
 
     /**
      * Writes text to cmd.exe.
      *
      * @param text The text to write to cmd.exe.
+     * @throws UncheckedIOException if a keystroke could not be posted,
+     *  or if the text was pasted but the paste could not be completed.
      */
     public final void write(final String text) {
-        for (char c : text.toCharArray()) {
-            /* Send the character to cmd.exe. */
-            User32.INSTANCE.PostMessage(
+        write(text, 0, text.length());
+    }
+
+    /**
+     * Writes a range of characters to cmd.exe.  Unless the range is
+     * pasted, no copy of the characters is made.
+     *
+     * @param text The characters to write to cmd.exe.
+     * @param offset Index of the first character to write.
+     * @param length Number of characters to write.
+     * @throws UncheckedIOException if a keystroke could not be posted,
+     *  or if the range was pasted but the paste could not be completed.
+     */
+    public final synchronized void write(
+            final CharSequence text, final int offset, final int length) {
+        checkRange(text.length(), offset, length);
+
+        /* Paste large writes if we can. */
+        if (this.clipboardPaster != null
+                && length >= this.pasteThreshold
+                && !this.inputPending
+                && paste(text.subSequence(offset, offset + length)
+                    .toString())) {
+            return;
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            typeChar(text.charAt(i));
+        }
+    }
+
+    /**
+     * Writes a range of characters to cmd.exe.  Unless the range is
+     * pasted, no copy of the characters is made.
+     *
+     * @param text The characters to write to cmd.exe.
+     * @param offset Index of the first character to write.
+     * @param length Number of characters to write.
+     * @throws UncheckedIOException if a keystroke could not be posted,
+     *  or if the range was pasted but the paste could not be completed.
+     */
+    public final synchronized void write(
+            final char[] text, final int offset, final int length) {
+        checkRange(text.length, offset, length);
+
+        /* Paste large writes if we can. */
+        if (this.clipboardPaster != null
+                && length >= this.pasteThreshold
+                && !this.inputPending
+                && paste(new String(text, offset, length))) {
+            return;
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            typeChar(text[i]);
+        }
+    }
+
+    /**
+     * Writes a precompiled KeystrokeProgram to cmd.exe.
+     *
+     * @param program The program to replay against cmd.exe.
+     * @throws UncheckedIOException if a keystroke could not be posted.
+     */
+    public final synchronized void write(final KeystrokeProgram program) {
+        this.inputPending |= program.getMessageCount() > 0;
+        if (!program.replay(this.user32, this.hwnd, this.params)) {
+            throw postFailed();
+        }
+    }
+
+    /**
+     * Pastes text into cmd.exe.
+     *
+     * @param text The text to paste.
+     * @return true if the text was pasted, false if it should be typed
+     *  instead.
+     * @throws UncheckedIOException if the paste could not be completed.
+     */
+    private boolean paste(final String text) {
+        try {
+            return this.clipboardPaster.paste(this.hwnd, text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Posts the messages that type a single character.
+     *
+     * @param c The character to type.
+     * @throws UncheckedIOException if a message could not be posted.
+     */
+    private void typeChar(final char c) {
+        this.inputPending = true;
+
+        /* Send the character to cmd.exe. */
+        if (!this.user32.PostMessageW(
                 this.hwnd, WinUser.WM_CHAR,
-                new WPARAM(c), new LPARAM(0));
-
-            /* Normally cmd.exe won't need a WM_KEYUP, but if this is a
-             * repeated series of characters (33, aaa, etc.) then
-             * cmd.exe will ignore every character other than the first
-             * one unless it gets a WM_KEYUP after each WM_CHAR. */
-            short vkey = User32.INSTANCE.VkKeyScan(c);
-            int oemScan = User32.INSTANCE.MapVirtualKey(
-                vkey & 0xff, 0); /* MAPVK_VK_TO_VSC */
-            User32.INSTANCE.PostMessage(
+                this.params.wParam(c), this.params.lParam(0))) {
+            throw postFailed();
+        }
+
+        /* Normally cmd.exe won't need a WM_KEYUP, but if this is a
+         * repeated series of characters (33, aaa, etc.) then cmd.exe
+         * will ignore every character other than the first one unless
+         * it gets a WM_KEYUP after each WM_CHAR. */
+        short vkey = this.user32.VkKeyScan(c);
+        if (!this.user32.PostMessageW(
                 this.hwnd, WinUser.WM_KEYUP,
-                new WPARAM(vkey & 0xff),
-                new LPARAM(0 | (oemScan << 16) | (3 << 31)));
+                this.params.wParam(vkey & 0xff),
+                this.params.lParam(
+                    KeystrokeProgram.keyUpLParam(this.user32, vkey)))) {
+            throw postFailed();
+        }
+    }
+
+    /**
+     * Returns the exception thrown when a keystroke could not be posted,
+     * usually because cmd.exe's message queue is full.  Keystrokes
+     * posted before the failure are not withdrawn.
+     *
+     * @return The exception.
+     */
+    private static UncheckedIOException postFailed() {
+        return new UncheckedIOException(new IOException(
+                "Couldn't post a keystroke to cmd.exe's window."));
+    }
+
+    /**
+     * Checks that a range lies within a sequence of characters.
+     *
+     * @param size Number of characters in the sequence.
+     * @param offset Index of the first character in the range.
+     * @param length Number of characters in the range.
+     */
+    private static void checkRange(
+            final int size, final int offset, final int length) {
+        if (offset < 0 || length < 0 || offset > size - length) {
+            throw new IndexOutOfBoundsException("Range [" + offset + ", "
+                    + offset + " + " + length + ") of " + size);
         }
     }
 }
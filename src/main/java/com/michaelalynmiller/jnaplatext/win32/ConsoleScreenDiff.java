@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Arrays;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ConsoleSession;
+
+/**
+ * Compares successive reads of a console window against each other and
+ * emits only the rows that have changed.  The previous screen is kept
+ * along with a hash of each row; a new screen is hashed row by row, and
+ * only rows whose contents differ are copied and emitted.  When the
+ * console scrolls, the rows that moved up are recognized by their
+ * hashes and are not emitted again.
+ *
+ * <p>The emitted text reads as a transcript.  Each changed row is
+ * emitted as its text with trailing blanks removed, and rows are
+ * separated by newlines; the newline that ends a row is emitted only
+ * once a later row is emitted, because the last row emitted (usually
+ * the row holding the cursor) may still be growing.  Characters that
+ * are appended to that row, such as a command being typed at the
+ * prompt, are emitted on their own, so text that has already been
+ * emitted is not emitted again.  Rows that are blank after the change
+ * (as when the screen is cleared) are not emitted, and a row that is
+ * rewritten rather than extended is emitted again in full.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ConsoleScreenDiff {
+    /** Number of columns in the previous screen. */
+    private int columns;
+
+    /** Number of rows in the previous screen. */
+    private int rows;
+
+    /** The previous screen, row by row. */
+    private char[] previous = new char[0];
+
+    /** Hash of each row of the previous screen. */
+    private int[] previousHashes = new int[0];
+
+    /** Hash of a blank row. */
+    private int blankRowHash;
+
+    /** Hash of each row of the new screen. */
+    private int[] hashes = new int[0];
+
+    /** Buffer that an emitted row is assembled in. */
+    private char[] line = new char[1];
+
+    /** true if the last row emitted has not yet been followed by a
+     * newline. */
+    private boolean lineOpen;
+
+    /** Row of the screen holding the last row emitted; -1 if that row
+     * has since scrolled off or changed. */
+    private int openRow = -1;
+
+    /** Number of characters of the open row that have been emitted. */
+    private int openLength;
+
+    /**
+     * Compares a new screen against the previous one and emits the
+     * rows that have changed.  The first screen, and any screen whose
+     * size differs from the previous one, is compared against a blank
+     * screen.
+     *
+     * @param cells The new screen, row by row; the character in
+     *  column c of row r is at index (r * columns + c) * stride.
+     * @param stride Number of array elements per cell; 2 for a CHAR_INFO
+     *  array read as characters, in which every other element is the
+     *  cell's attributes.
+     * @param newColumns Number of columns in the new screen.
+     * @param newRows Number of rows in the new screen.
+     * @param listener Receives the changed rows.
+     * @return The number of characters emitted.
+     */
+    public int update(
+            final char[] cells,
+            final int stride,
+            final int newColumns,
+            final int newRows,
+            final ConsoleSession.OutputListener listener) {
+        if (newColumns != this.columns || newRows != this.rows) {
+            resize(newColumns, newRows);
+        }
+        if (newRows == 0) {
+            return 0;
+        }
+
+        /* Hash the new screen. */
+        for (int row = 0; row < newRows; row++) {
+            this.hashes[row] = hashRow(cells, stride, row);
+        }
+
+        /* Find out whether the screen has scrolled, and then move the
+         * previous screen up to match. */
+        int scroll = findScroll();
+        if (scroll > 0) {
+            int kept = (newRows - scroll) * newColumns;
+            System.arraycopy(this.previous, scroll * newColumns,
+                    this.previous, 0, kept);
+            Arrays.fill(this.previous, kept, this.previous.length, ' ');
+            System.arraycopy(this.previousHashes, scroll,
+                    this.previousHashes, 0, newRows - scroll);
+            Arrays.fill(this.previousHashes, newRows - scroll, newRows,
+                    this.blankRowHash);
+            this.openRow = Math.max(this.openRow - scroll, -1);
+        }
+
+        /* Copy and emit the rows that have changed. */
+        int emitted = 0;
+        for (int row = 0; row < newRows; row++) {
+            if (this.hashes[row] == this.previousHashes[row]
+                    && rowEquals(cells, stride, row, row)) {
+                continue;
+            }
+
+            /* Find out whether the open row has only been extended
+             * before the previous copy of the row is overwritten. */
+            boolean extended = row == this.openRow
+                && prefixEquals(cells, stride, row, this.openLength);
+
+            int base = row * newColumns;
+            int length = 0;
+            for (int column = 0; column < newColumns; column++) {
+                char c = cells[(base + column) * stride];
+                this.previous[base + column] = c;
+                if (c != ' ') {
+                    length = column + 1;
+                }
+            }
+            this.previousHashes[row] = this.hashes[row];
+
+            if (extended && length > this.openLength) {
+                /* Emit just the appended characters. */
+                emitted += emit(cells, stride, base, this.openLength,
+                        length, false, listener);
+                this.openLength = length;
+            } else if (length > 0) {
+                /* End the open row and emit this one in full. */
+                emitted += emit(cells, stride, base, 0, length,
+                        this.lineOpen, listener);
+                this.lineOpen = true;
+                this.openRow = row;
+                this.openLength = length;
+            } else if (row == this.openRow) {
+                this.openRow = -1;
+            }
+        }
+
+        return emitted;
+    }
+
+    /**
+     * Emits part of a row of the new screen.
+     *
+     * @param cells The new screen.
+     * @param stride Number of array elements per cell.
+     * @param base Index of the row's first cell.
+     * @param start First column to emit.
+     * @param end Column after the last column to emit.
+     * @param newline true to emit a newline before the row.
+     * @param listener Receives the text.
+     * @return The number of characters emitted.
+     */
+    private int emit(final char[] cells, final int stride, final int base,
+            final int start, final int end, final boolean newline,
+            final ConsoleSession.OutputListener listener) {
+        int length = 0;
+        if (newline) {
+            this.line[length++] = '\n';
+        }
+        for (int column = start; column < end; column++) {
+            this.line[length++] = cells[(base + column) * stride];
+        }
+
+        listener.output(this.line, 0, length);
+        return length;
+    }
+
+    /**
+     * Forgets the previous screen and starts again from a blank screen
+     * of the given size.
+     *
+     * @param newColumns Number of columns.
+     * @param newRows Number of rows.
+     */
+    private void resize(final int newColumns, final int newRows) {
+        this.columns = newColumns;
+        this.rows = newRows;
+        this.previous = new char[newColumns * newRows];
+        Arrays.fill(this.previous, ' ');
+        this.previousHashes = new int[newRows];
+        this.blankRowHash = blankHash(newColumns);
+        Arrays.fill(this.previousHashes, this.blankRowHash);
+        this.hashes = new int[newRows];
+        this.line = new char[newColumns + 1];
+        this.openRow = -1;
+    }
+
+    /**
+     * Finds the number of rows by which the screen has scrolled up: the
+     * shift that lines up the most non-blank rows of the previous
+     * screen with the new screen.  Rows that do not line up, such as
+     * the row that held the cursor, are simply emitted as changed rows.
+     *
+     * @return The number of rows scrolled; zero if the screen has not
+     *  scrolled.
+     */
+    private int findScroll() {
+        /* Scrolling always changes the top row. */
+        if (this.hashes[0] == this.previousHashes[0]) {
+            return 0;
+        }
+
+        int bestShift = 0;
+        int bestMatches = 0;
+        for (int shift = 0; shift < this.rows; shift++) {
+            /* No larger shift can line up more rows than this. */
+            if (bestMatches >= this.rows - shift) {
+                break;
+            }
+
+            int matches = 0;
+            for (int row = 0; row + shift < this.rows; row++) {
+                int previousHash = this.previousHashes[row + shift];
+                if (previousHash == this.hashes[row]
+                        && previousHash != this.blankRowHash) {
+                    matches++;
+                }
+            }
+            if (matches > bestMatches) {
+                bestShift = shift;
+                bestMatches = matches;
+            }
+        }
+
+        return bestShift;
+    }
+
+    /**
+     * Compares a row of the new screen with a row of the previous
+     * screen.
+     *
+     * @param cells The new screen.
+     * @param stride Number of array elements per cell.
+     * @param row Row of the new screen.
+     * @param previousRow Row of the previous screen.
+     * @return true if the rows are identical, false otherwise.
+     */
+    private boolean rowEquals(final char[] cells, final int stride,
+            final int row, final int previousRow) {
+        int base = row * this.columns;
+        int previousBase = previousRow * this.columns;
+        for (int column = 0; column < this.columns; column++) {
+            if (cells[(base + column) * stride]
+                    != this.previous[previousBase + column]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the start of a row of the new screen with the same row
+     * of the previous screen.
+     *
+     * @param cells The new screen.
+     * @param stride Number of array elements per cell.
+     * @param row The row.
+     * @param length Number of columns to compare.
+     * @return true if the first length columns are identical, false
+     *  otherwise.
+     */
+    private boolean prefixEquals(final char[] cells, final int stride,
+            final int row, final int length) {
+        int base = row * this.columns;
+        for (int column = 0; column < length; column++) {
+            if (cells[(base + column) * stride]
+                    != this.previous[base + column]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a row of the new screen.
+     *
+     * @param cells The new screen.
+     * @param stride Number of array elements per cell.
+     * @param row The row.
+     * @return The row's hash.
+     */
+    private int hashRow(final char[] cells, final int stride,
+            final int row) {
+        int base = row * this.columns;
+        int hash = 1;
+        for (int column = 0; column < this.columns; column++) {
+            hash = 31 * hash + cells[(base + column) * stride];
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the hash of a blank row.
+     *
+     * @param rowColumns Number of columns in the row.
+     * @return The hash of a row of rowColumns spaces.
+     */
+    private static int blankHash(final int rowColumns) {
+        int hash = 1;
+        for (int column = 0; column < rowColumns; column++) {
+            hash = 31 * hash + ' ';
+        }
+        return hash;
+    }
+}
@@ -47,7 +47,11 @@ import com.sun.jna.win32.W32APIOptions;
  */
 public interface Kernel32
     extends StdCallLibrary,
-            com.sun.jna.platform.win32.Kernel32 {
+            com.sun.jna.platform.win32.Kernel32,
+            Kernel32Console,
+            Kernel32Memory,
+            Kernel32Process,
+            Kernel32Wait {
 
     /** Instance of KERNEL32.DLL for use in accessing native functions. */
     Kernel32 INSTANCE = (Kernel32) Native.loadLibrary(
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.WinBase.SECURITY_ATTRIBUTES;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+
+/**
+ * The subset of KERNEL32.DLL used to attach to another process's
+ * console and read its screen buffer.  Kernel32 extends this
+ * interface, so Kernel32.INSTANCE can be used anywhere a
+ * Kernel32Console is expected.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface Kernel32Console {
+    /** AttachConsole process id that selects the parent process's
+     * console. */
+    int ATTACH_PARENT_PROCESS = -1;
+
+    /**
+     * Attaches the calling process to the console of the specified
+     * process.  A process can be attached to at most one console.
+     *
+     * @param dwProcessId The process whose console should be used.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean AttachConsole(int dwProcessId);
+
+    /**
+     * Detaches the calling process from its console.
+     *
+     * @return true if the function succeeds, false otherwise, which
+     *  includes the calling process not having a console.
+     */
+    boolean FreeConsole();
+
+    /**
+     * Creates or opens a file or I/O device; used here to open the
+     * CONOUT$ screen buffer of the attached console.
+     *
+     * @param lpFileName The name of the file or device.
+     * @param dwDesiredAccess The requested access.
+     * @param dwShareMode The requested sharing mode.
+     * @param lpSecurityAttributes Security attributes; may be null.
+     * @param dwCreationDisposition The action to take if the file
+     *  does or does not exist.
+     * @param dwFlagsAndAttributes File attributes and flags.
+     * @param hTemplateFile A template file; may be null.
+     * @return A handle to the file or device; INVALID_HANDLE_VALUE if
+     *  the function fails.
+     */
+    HANDLE CreateFile(String lpFileName, int dwDesiredAccess,
+            int dwShareMode, SECURITY_ATTRIBUTES lpSecurityAttributes,
+            int dwCreationDisposition, int dwFlagsAndAttributes,
+            HANDLE hTemplateFile);
+
+    /**
+     * Retrieves information about the specified console screen buffer.
+     *
+     * @param hConsoleOutput A handle to the console screen buffer.
+     * @param lpConsoleScreenBufferInfo Receives the information.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean GetConsoleScreenBufferInfo(HANDLE hConsoleOutput,
+            WinCon.CONSOLE_SCREEN_BUFFER_INFO lpConsoleScreenBufferInfo);
+
+    /**
+     * Reads a rectangular block of character cells from a console
+     * screen buffer.
+     *
+     * @param hConsoleOutput A handle to the console screen buffer.
+     * @param lpBuffer Receives the cells, as an array of CHAR_INFO
+     *  structures.
+     * @param dwBufferSize The size of lpBuffer, in columns and rows.
+     * @param dwBufferCoord The cell in lpBuffer that receives the first
+     *  cell that is read.
+     * @param lpReadRegion On input, the screen buffer rectangle to
+     *  read; on output, the rectangle that was actually read.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean ReadConsoleOutput(HANDLE hConsoleOutput, Pointer lpBuffer,
+            WinCon.COORD.ByValue dwBufferSize,
+            WinCon.COORD.ByValue dwBufferCoord,
+            WinCon.SMALL_RECT lpReadRegion);
+}
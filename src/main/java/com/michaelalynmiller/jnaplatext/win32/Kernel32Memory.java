@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.BaseTSD.SIZE_T;
+
+/**
+ * The subset of KERNEL32.DLL used to manage the global memory blocks
+ * that carry clipboard data.  Kernel32 extends this interface, so
+ * Kernel32.INSTANCE can be used anywhere a Kernel32Memory is expected.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface Kernel32Memory {
+    /** Allocates movable memory; required for clipboard data. */
+    int GMEM_MOVEABLE = 0x0002;
+
+    /**
+     * Allocates the specified number of bytes from the heap.
+     *
+     * @param uFlags The memory allocation attributes.
+     * @param dwBytes The number of bytes to allocate.
+     * @return A handle to the newly allocated memory object; null if
+     *  the function fails.
+     */
+    Pointer GlobalAlloc(int uFlags, SIZE_T dwBytes);
+
+    /**
+     * Locks a global memory object and returns a pointer to the first
+     * byte of the object's memory block.
+     *
+     * @param hMem A handle to the global memory object.
+     * @return A pointer to the first byte of the memory block; null if
+     *  the function fails.
+     */
+    Pointer GlobalLock(Pointer hMem);
+
+    /**
+     * Decrements the lock count associated with a memory object.
+     *
+     * @param hMem A handle to the global memory object.
+     * @return true if the object is still locked, false otherwise.
+     */
+    boolean GlobalUnlock(Pointer hMem);
+
+    /**
+     * Retrieves the current size of the specified global memory
+     * object, in bytes.
+     *
+     * @param hMem A handle to the global memory object.
+     * @return The size of the memory object; zero if the handle is
+     *  invalid.
+     */
+    SIZE_T GlobalSize(Pointer hMem);
+
+    /**
+     * Frees the specified global memory object.
+     *
+     * @param hMem A handle to the global memory object.
+     * @return null if the function succeeds; the handle otherwise.
+     */
+    Pointer GlobalFree(Pointer hMem);
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.Tlhelp32;
+import com.sun.jna.platform.win32.WinBase.FILETIME;
+import com.sun.jna.platform.win32.WinDef.DWORD;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * The subset of KERNEL32.DLL used to enumerate and query processes.
+ * Kernel32 extends this interface, so Kernel32.INSTANCE can be used
+ * anywhere a Kernel32Process is expected; other implementations make
+ * it possible to drive the process utilities without loading
+ * KERNEL32.DLL.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface Kernel32Process {
+    /**
+     * Takes a snapshot of the specified processes, as well as the
+     * heaps, modules, and threads used by these processes.
+     *
+     * @param dwFlags The portions of the system to be included in the
+     *  snapshot.
+     * @param th32ProcessID The process identifier of the process to be
+     *  included in the snapshot, or zero for the current process.
+     * @return An open handle to the snapshot on success;
+     *  INVALID_HANDLE_VALUE otherwise.
+     */
+    HANDLE CreateToolhelp32Snapshot(DWORD dwFlags, DWORD th32ProcessID);
+
+    /**
+     * Retrieves information about the first process encountered in a
+     * system snapshot.
+     *
+     * @param hSnapshot A handle to the snapshot.
+     * @param lppe On output, information about the first process.
+     * @return true if the first entry was copied to the buffer, false
+     *  otherwise.
+     */
+    boolean Process32First(
+            HANDLE hSnapshot, Tlhelp32.PROCESSENTRY32.ByReference lppe);
+
+    /**
+     * Retrieves information about the next process recorded in a
+     * system snapshot.
+     *
+     * @param hSnapshot A handle to the snapshot.
+     * @param lppe On output, information about the next process.
+     * @return true if the next entry was copied to the buffer, false
+     *  otherwise.
+     */
+    boolean Process32Next(
+            HANDLE hSnapshot, Tlhelp32.PROCESSENTRY32.ByReference lppe);
+
+    /**
+     * Opens an existing local process object.
+     *
+     * @param fdwAccess The access to the process object.
+     * @param fInherit If true, processes created by this process will
+     *  inherit the handle.
+     * @param IDProcess The identifier of the local process to be
+     *  opened.
+     * @return An open handle to the process on success; null
+     *  otherwise.
+     */
+    HANDLE OpenProcess(int fdwAccess, boolean fInherit, int IDProcess);
+
+    /**
+     * Retrieves the full name of the executable image for the specified
+     * process.
+     *
+     * @param hProcess Handle to the process.
+     * @param dwFlags Type of path format to return.
+     * @param lpExeName On output, the path to the executable image.
+     * @param lpdwSize On input, the size of lpExeName.  On success, the
+     *  number of characters written to the buffer.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean QueryFullProcessImageName(
+            HANDLE hProcess, DWORD dwFlags,
+            char[] lpExeName, IntByReference lpdwSize);
+
+    /**
+     * Retrieves timing information for the specified process.
+     *
+     * @param hProcess Handle to the process.
+     * @param lpCreationTime On output, the creation time of the
+     *  process.
+     * @param lpExitTime On output, the exit time of the process, if it
+     *  has exited.
+     * @param lpKernelTime On output, the time the process has executed
+     *  in kernel mode.
+     * @param lpUserTime On output, the time the process has executed in
+     *  user mode.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean GetProcessTimes(
+            HANDLE hProcess, FILETIME lpCreationTime, FILETIME lpExitTime,
+            FILETIME lpKernelTime, FILETIME lpUserTime);
+
+    /**
+     * Retrieves the termination status of the specified process.
+     *
+     * @param hProcess Handle to the process.
+     * @param lpExitCode On output, the process termination status, or
+     *  STILL_ACTIVE if the process has not terminated.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean GetExitCodeProcess(HANDLE hProcess, IntByReference lpExitCode);
+
+    /**
+     * Closes an open object handle.
+     *
+     * @param hObject A valid handle to an open object.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean CloseHandle(HANDLE hObject);
+
+    /**
+     * Retrieves the process identifier of the calling process.
+     *
+     * @return The process identifier of the calling process.
+     */
+    int GetCurrentProcessId();
+
+    /**
+     * Retrieves the calling thread's last-error code value.
+     *
+     * @return The calling thread's last-error code.
+     */
+    int GetLastError();
+}
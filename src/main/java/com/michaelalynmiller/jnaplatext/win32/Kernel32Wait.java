@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinBase.SECURITY_ATTRIBUTES;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+
+/**
+ * The subset of KERNEL32.DLL used to wait for kernel objects.
+ * Kernel32 extends this interface, so Kernel32.INSTANCE can be used
+ * anywhere a Kernel32Wait is expected.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface Kernel32Wait {
+    /** The maximum number of objects that WaitForMultipleObjects can
+     * wait for. */
+    int MAXIMUM_WAIT_OBJECTS = 64;
+
+    /**
+     * Creates or opens a named or unnamed event object.
+     *
+     * @param lpEventAttributes Security attributes; may be null.
+     * @param bManualReset true for a manual-reset event, false for an
+     *  auto-reset event.
+     * @param bInitialState true if the event is initially signaled.
+     * @param lpName The name of the event; may be null.
+     * @return A handle to the event; null if the function fails.
+     */
+    HANDLE CreateEvent(SECURITY_ATTRIBUTES lpEventAttributes,
+            boolean bManualReset, boolean bInitialState, String lpName);
+
+    /**
+     * Sets the specified event object to the signaled state.
+     *
+     * @param hEvent A handle to the event object.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean SetEvent(HANDLE hEvent);
+
+    /**
+     * Waits until the specified object is in the signaled state or the
+     * time-out interval elapses.
+     *
+     * @param hHandle A handle to the object.
+     * @param dwMilliseconds The time-out interval, in milliseconds.
+     * @return WAIT_OBJECT_0, WAIT_TIMEOUT or WAIT_FAILED.
+     */
+    int WaitForSingleObject(HANDLE hHandle, int dwMilliseconds);
+
+    /**
+     * Waits until one or all of the specified objects are in the
+     * signaled state or the time-out interval elapses.
+     *
+     * @param nCount The number of object handles in the array; at most
+     *  MAXIMUM_WAIT_OBJECTS.
+     * @param hHandle An array of object handles.
+     * @param bWaitAll true to wait for all of the objects, false to
+     *  wait for any one of them.
+     * @param dwMilliseconds The time-out interval, in milliseconds.
+     * @return WAIT_OBJECT_0 plus the index of the signaled object,
+     *  WAIT_TIMEOUT or WAIT_FAILED.
+     */
+    int WaitForMultipleObjects(int nCount, HANDLE[] hHandle,
+            boolean bWaitAll, int dwMilliseconds);
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.platform.win32.WinDef.HWND;
+
+/**
+ * An immutable, precompiled sequence of keyboard messages that types a
+ * string of text into a console window.  The (message, wParam, lParam)
+ * triples are translated once, packed into native memory, and can then
+ * be replayed against any number of windows without repeating the
+ * per-character keyboard lookups.
+ *
+ * <p>Programs are compiled against the keyboard layout that is active at
+ * the time of compilation.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class KeystrokeProgram {
+    /** Number of bytes used to store each (message, wParam, lParam)
+     * triple. */
+    private static final int MESSAGE_SIZE = 12;
+
+    /** Number of messages generated for each character. */
+    private static final int MESSAGES_PER_CHAR = 2;
+
+    /** The text that was compiled into this program. */
+    private final String text;
+
+    /** Number of messages in the program. */
+    private final int messageCount;
+
+    /** Packed message triples; null if the program is empty. */
+    private final Memory messages;
+
+    /**
+     * Constructs a new KeystrokeProgram from already-packed messages.
+     *
+     * @param text The text that was compiled into this program.
+     * @param messageCount Number of messages in the program.
+     * @param messages Packed message triples.
+     */
+    private KeystrokeProgram(
+            final String text,
+            final int messageCount,
+            final Memory messages) {
+        this.text = text;
+        this.messageCount = messageCount;
+        this.messages = messages;
+    }
+
+    /**
+     * Compiles the given text into a KeystrokeProgram using the
+     * current keyboard layout.
+     *
+     * @param text The text to compile.
+     * @return The compiled program.
+     */
+    public static KeystrokeProgram compile(final String text) {
+        return compile(User32.INSTANCE, text);
+    }
+
+    /**
+     * Compiles the given text into a KeystrokeProgram, using the given
+     * USER32 functions to translate characters into keystrokes.
+     *
+     * @param user32 USER32 functions used to look up virtual-key and
+     *  scan codes.
+     * @param text The text to compile.
+     * @return The compiled program.
+     */
+    public static KeystrokeProgram compile(
+            final User32Input user32, final String text) {
+        /* Empty programs do not need any native memory. */
+        int messageCount = text.length() * MESSAGES_PER_CHAR;
+        if (messageCount == 0) {
+            return new KeystrokeProgram(text, 0, null);
+        }
+
+        /* Translate each character into its WM_CHAR/WM_KEYUP pair. */
+        Memory messages = new Memory((long) messageCount * MESSAGE_SIZE);
+        long offset = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            messages.setInt(offset, WinUser.WM_CHAR);
+            messages.setInt(offset + 4, c);
+            messages.setInt(offset + 8, 0);
+            offset += MESSAGE_SIZE;
+
+            short vkey = user32.VkKeyScan(c);
+            messages.setInt(offset, WinUser.WM_KEYUP);
+            messages.setInt(offset + 4, vkey & 0xff);
+            messages.setInt(offset + 8, keyUpLParam(user32, vkey));
+            offset += MESSAGE_SIZE;
+        }
+
+        /* Return the program. */
+        return new KeystrokeProgram(text, messageCount, messages);
+    }
+
+    /**
+     * Returns the lParam for the WM_KEYUP message that follows the
+     * WM_CHAR for the given virtual key: a repeat count of zero, the
+     * key's OEM scan code, and the previous-state and transition-state
+     * bits.
+     *
+     * @param user32 USER32 functions used to look up the scan code.
+     * @param vkey Virtual-key code and shift state, as returned by
+     *  VkKeyScan.
+     * @return The WM_KEYUP lParam.
+     */
+    static int keyUpLParam(final User32Input user32, final short vkey) {
+        int oemScan = user32.MapVirtualKey(
+            vkey & 0xff, 0); /* MAPVK_VK_TO_VSC */
+        return 0 | (oemScan << 16) | (3 << 31);
+    }
+
+    /**
+     * Returns the text that was compiled into this program.
+     *
+     * @return The text that was compiled into this program.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the number of messages that this program will post.
+     *
+     * @return The number of messages in this program.
+     */
+    public int getMessageCount() {
+        return messageCount;
+    }
+
+    /**
+     * Returns the message id of the given message.
+     *
+     * @param index Index of the message.
+     * @return The message id.
+     */
+    public int getMessage(final int index) {
+        return messages.getInt(offsetOf(index));
+    }
+
+    /**
+     * Returns the wParam of the given message.
+     *
+     * @param index Index of the message.
+     * @return The message's wParam.
+     */
+    public int getWParam(final int index) {
+        return messages.getInt(offsetOf(index) + 4);
+    }
+
+    /**
+     * Returns the lParam of the given message.
+     *
+     * @param index Index of the message.
+     * @return The message's lParam.
+     */
+    public int getLParam(final int index) {
+        return messages.getInt(offsetOf(index) + 8);
+    }
+
+    /**
+     * Posts this program's messages to the given window.
+     *
+     * @param hwnd The window that should receive the messages.
+     * @return true if every message was posted; false if a message
+     *  could not be posted, in which case the rest were not posted.
+     */
+    public boolean replay(final HWND hwnd) {
+        return replay(User32.INSTANCE, hwnd);
+    }
+
+    /**
+     * Posts this program's messages to the given window using the given
+     * USER32 functions.
+     *
+     * @param user32 USER32 functions used to post the messages.
+     * @param hwnd The window that should receive the messages.
+     * @return true if every message was posted; false if a message
+     *  could not be posted, in which case the rest were not posted.
+     */
+    public boolean replay(final User32Input user32, final HWND hwnd) {
+        return replay(user32, hwnd, new MessageParams());
+    }
+
+    /**
+     * Posts this program's messages to the given window, taking the
+     * message parameters from the given cache.
+     *
+     * @param user32 USER32 functions used to post the messages.
+     * @param hwnd The window that should receive the messages.
+     * @param params Cache of message parameters; must not be in use by
+     *  any other thread.
+     * @return true if every message was posted; false if a message
+     *  could not be posted, in which case the rest were not posted.
+     */
+    boolean replay(final User32Input user32, final HWND hwnd,
+            final MessageParams params) {
+        long end = (long) messageCount * MESSAGE_SIZE;
+        for (long offset = 0; offset < end; offset += MESSAGE_SIZE) {
+            if (!user32.PostMessageW(
+                    hwnd, messages.getInt(offset),
+                    params.wParam(messages.getInt(offset + 4)),
+                    params.lParam(messages.getInt(offset + 8)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the byte offset of the given message.
+     *
+     * @param index Index of the message.
+     * @return Byte offset of the message in the packed message array.
+     */
+    private long offsetOf(final int index) {
+        if (index < 0 || index >= messageCount) {
+            throw new IndexOutOfBoundsException(
+                    "Message " + index + " of " + messageCount);
+        }
+        return (long) index * MESSAGE_SIZE;
+    }
+}
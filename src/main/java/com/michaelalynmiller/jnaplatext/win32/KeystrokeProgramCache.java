@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of compiled KeystrokePrograms,
+ * keyed by the text that was compiled.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class KeystrokeProgramCache {
+    /** Default number of programs retained by the cache. */
+    public static final int DEFAULT_MAX_PROGRAMS = 256;
+
+    /** USER32 functions used to compile programs. */
+    private final User32Input user32;
+
+    /** Cached programs, in least- to most-recently used order. */
+    private final Map<String, KeystrokeProgram> programs;
+
+    /**
+     * Constructs a new KeystrokeProgramCache that compiles programs
+     * against the current keyboard layout and retains up to
+     * DEFAULT_MAX_PROGRAMS programs.
+     */
+    public KeystrokeProgramCache() {
+        this(User32.INSTANCE, DEFAULT_MAX_PROGRAMS);
+    }
+
+    /**
+     * Constructs a new KeystrokeProgramCache.
+     *
+     * @param user32 USER32 functions used to compile programs.
+     * @param maxPrograms Maximum number of programs to retain.
+     */
+    public KeystrokeProgramCache(
+            final User32Input user32, final int maxPrograms) {
+        if (maxPrograms < 1) {
+            throw new IllegalArgumentException(
+                    "maxPrograms must be positive: " + maxPrograms);
+        }
+
+        this.user32 = user32;
+        this.programs = new LinkedHashMap<String, KeystrokeProgram>(
+                16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, KeystrokeProgram> eldest) {
+                return size() > maxPrograms;
+            }
+        };
+    }
+
+    /**
+     * Returns the compiled program for the given text, compiling and
+     * caching it if necessary.
+     *
+     * @param text The text to compile.
+     * @return The compiled program.
+     */
+    public KeystrokeProgram get(final String text) {
+        /* Return the cached program if we have one. */
+        synchronized (programs) {
+            KeystrokeProgram program = programs.get(text);
+            if (program != null) {
+                return program;
+            }
+        }
+
+        /* Compile the program outside of the lock, then add it to the
+         * cache unless another thread beat us to it. */
+        KeystrokeProgram program = KeystrokeProgram.compile(user32, text);
+        synchronized (programs) {
+            KeystrokeProgram existing = programs.get(text);
+            if (existing != null) {
+                return existing;
+            }
+
+            programs.put(text, program);
+            return program;
+        }
+    }
+
+    /**
+     * Returns the number of programs currently in the cache.
+     *
+     * @return The number of cached programs.
+     */
+    public int size() {
+        synchronized (programs) {
+            return programs.size();
+        }
+    }
+
+    /**
+     * Removes all of the programs from the cache.
+     */
+    public void clear() {
+        synchronized (programs) {
+            programs.clear();
+        }
+    }
+}
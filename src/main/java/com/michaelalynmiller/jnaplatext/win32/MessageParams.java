@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/**
+ * A direct-mapped cache of WPARAM and LPARAM objects, so that code that
+ * posts a stream of messages does not allocate a pair of parameter
+ * objects for every message.  Setting the value of a WinDef integer
+ * type allocates a boxed copy of the value, so the cached objects are
+ * never modified; a slot whose object holds a different value is simply
+ * replaced.  Typing text only ever uses a few dozen distinct values,
+ * so in the steady state every lookup hits.
+ *
+ * <p>Instances are not thread-safe.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+final class MessageParams {
+    /** Base-2 logarithm of the number of slots in each cache. */
+    private static final int SLOT_BITS = 10;
+
+    /** Number of slots in each cache. */
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    /** Cached WPARAMs. */
+    private final WPARAM[] wParams = new WPARAM[SLOTS];
+
+    /** Cached LPARAMs. */
+    private final LPARAM[] lParams = new LPARAM[SLOTS];
+
+    /**
+     * Returns a WPARAM holding the given value.
+     *
+     * @param value The value.
+     * @return A WPARAM that must not be modified.
+     */
+    WPARAM wParam(final int value) {
+        int slot = slotOf(value);
+        WPARAM param = this.wParams[slot];
+        if (param == null || param.intValue() != value) {
+            param = new WPARAM(value);
+            this.wParams[slot] = param;
+        }
+        return param;
+    }
+
+    /**
+     * Returns an LPARAM holding the given value.
+     *
+     * @param value The value.
+     * @return An LPARAM that must not be modified.
+     */
+    LPARAM lParam(final int value) {
+        int slot = slotOf(value);
+        LPARAM param = this.lParams[slot];
+        if (param == null || param.intValue() != value) {
+            param = new LPARAM(value);
+            this.lParams[slot] = param;
+        }
+        return param;
+    }
+
+    /**
+     * Returns the cache slot for a value.  Characters and virtual-key
+     * codes differ in their low bits but WM_KEYUP lParams differ only
+     * in their high half, so the value is hashed multiplicatively to
+     * spread both across the slots.
+     *
+     * @param value The value.
+     * @return The slot index.
+     */
+    private static int slotOf(final int value) {
+        return (value * 0x9E3779B9) >>> (Integer.SIZE - SLOT_BITS);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * The subset of NTDLL.DLL used to query system-wide process
+ * information.  NtDll extends this interface, so NtDll.INSTANCE can be
+ * used anywhere an NtDllSystemInformation is expected.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface NtDllSystemInformation {
+    /** Returns a SYSTEM_PROCESS_INFORMATION structure for each process
+     * running in the system. */
+    int SystemProcessInformation = 5;
+
+    /** The operation completed successfully. */
+    int STATUS_SUCCESS = 0;
+
+    /** The specified information record length does not match the
+     * length that is required for the specified information class. */
+    int STATUS_INFO_LENGTH_MISMATCH = 0xC0000004;
+
+    /**
+     * Retrieves the specified system information.
+     *
+     * @param SystemInformationClass The kind of system information to
+     *  be retrieved.
+     * @param SystemInformation A buffer that receives the requested
+     *  information.
+     * @param SystemInformationLength The size of the buffer, in bytes.
+     * @param ReturnLength On output, the size of the requested
+     *  information; may be null.
+     * @return An NTSTATUS success or error code.
+     */
+    int NtQuerySystemInformation(
+            int SystemInformationClass, Pointer SystemInformation,
+            int SystemInformationLength, IntByReference ReturnLength);
+}
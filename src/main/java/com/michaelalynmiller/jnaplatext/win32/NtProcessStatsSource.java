@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessStats;
+
+/**
+ * Reads the counters of every Windows process with a single
+ * NtQuerySystemInformation(SystemProcessInformation) call, which
+ * returns the CPU times, working set and handle count of all processes
+ * without opening any of them.  This is the same query that Task
+ * Manager uses.
+ *
+ * <p>The query's buffer is kept between calls.  When it is too small
+ * it is replaced with one a quarter larger than the size that Windows
+ * reports, so that a slowly growing process list does not force a
+ * reallocation on every cycle.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class NtProcessStatsSource implements ProcessStats.Source {
+    /** Default initial size of the query buffer, in bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 512 * 1024;
+
+    /** Maximum number of times the query is retried with a larger
+     * buffer. */
+    private static final int MAX_ATTEMPTS = 8;
+
+    /* SYSTEM_PROCESS_INFORMATION field offsets.  The layout is the same
+     * on 32-bit and 64-bit Windows up to the image name; after that,
+     * pointer-sized fields are pointer-aligned. */
+
+    /** Offset of NextEntryOffset. */
+    static final int NEXT_ENTRY_OFFSET = 0x00;
+
+    /** Offset of CreateTime. */
+    static final int CREATE_TIME = 0x20;
+
+    /** Offset of UserTime. */
+    static final int USER_TIME = 0x28;
+
+    /** Offset of KernelTime. */
+    static final int KERNEL_TIME = 0x30;
+
+    /** Offset of UniqueProcessId. */
+    static final int UNIQUE_PROCESS_ID = Pointer.SIZE == 8 ? 0x50 : 0x44;
+
+    /** Offset of HandleCount. */
+    static final int HANDLE_COUNT = UNIQUE_PROCESS_ID + 2 * Pointer.SIZE;
+
+    /** Offset of WorkingSetSize. */
+    static final int WORKING_SET_SIZE = Pointer.SIZE == 8 ? 0x90 : 0x68;
+
+    /** NTDLL functions used to query process information. */
+    private final NtDllSystemInformation ntdll;
+
+    /** Receives the size of the process information. */
+    private final IntByReference returnLength = new IntByReference();
+
+    /** The query buffer. */
+    private Memory buffer;
+
+    /**
+     * Constructs a new NtProcessStatsSource.
+     */
+    public NtProcessStatsSource() {
+        this(NtDll.INSTANCE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a new NtProcessStatsSource that uses the given NTDLL
+     * functions.
+     *
+     * @param ntdll NTDLL functions used to query process information.
+     * @param initialBufferSize Initial size of the query buffer, in
+     *  bytes.
+     */
+    public NtProcessStatsSource(
+            final NtDllSystemInformation ntdll,
+            final int initialBufferSize) {
+        this.ntdll = ntdll;
+        this.buffer = new Memory(Math.max(initialBufferSize, 1));
+    }
+
+    /**
+     * Returns the current size of the query buffer.
+     *
+     * @return The size of the query buffer, in bytes.
+     */
+    public synchronized int getBufferSize() {
+        return (int) this.buffer.size();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void read(final ProcessStats.Sample sample)
+            throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            int status = this.ntdll.NtQuerySystemInformation(
+                    NtDllSystemInformation.SystemProcessInformation,
+                    this.buffer, (int) this.buffer.size(),
+                    this.returnLength);
+            if (status == NtDllSystemInformation.STATUS_SUCCESS) {
+                break;
+            }
+
+            if (status != NtDllSystemInformation.STATUS_INFO_LENGTH_MISMATCH
+                    || attempt == MAX_ATTEMPTS) {
+                throw new IOException(
+                        "NtQuerySystemInformation failed: 0x"
+                        + Integer.toHexString(status));
+            }
+
+            /* Grow the buffer, leaving room for new processes. */
+            long required = Math.max(
+                    this.returnLength.getValue(), this.buffer.size() * 2);
+            this.buffer = new Memory(required + required / 4);
+        }
+
+        parse(this.buffer, sample);
+    }
+
+    /**
+     * Adds every process in a SystemProcessInformation buffer to a
+     * sample.
+     *
+     * @param info The buffer.
+     * @param sample The sample.
+     */
+    static void parse(final Pointer info, final ProcessStats.Sample sample) {
+        long offset = 0;
+        while (true) {
+            long cpuTime100ns = info.getLong(offset + USER_TIME)
+                + info.getLong(offset + KERNEL_TIME);
+            sample.add(
+                (int) getPointerSized(info, offset + UNIQUE_PROCESS_ID),
+                info.getLong(offset + CREATE_TIME),
+                cpuTime100ns * 100,
+                getPointerSized(info, offset + WORKING_SET_SIZE),
+                info.getInt(offset + HANDLE_COUNT));
+
+            int next = info.getInt(offset + NEXT_ENTRY_OFFSET);
+            if (next == 0) {
+                break;
+            }
+            offset += next;
+        }
+    }
+
+    /**
+     * Reads a pointer-sized unsigned value.
+     *
+     * @param info The buffer.
+     * @param offset Offset of the value.
+     * @return The value.
+     */
+    private static long getPointerSized(
+            final Pointer info, final long offset) {
+        return Pointer.SIZE == 8
+            ? info.getLong(offset)
+            : info.getInt(offset) & 0xffffffffL;
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinBase;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * A bounded, least-recently-used cache of open
+ * PROCESS_QUERY_LIMITED_INFORMATION process handles keyed by process
+ * id, so that processes which are queried repeatedly do not need to be
+ * opened and closed on every query.
+ *
+ * <p>The cache is keyed by process id alone.  Windows does not reuse a
+ * process id while a handle to the process is open, so a cached handle
+ * always refers to the process that had the id when the handle was
+ * opened; the handle only becomes stale once that process exits.  Stale
+ * handles are detected either by sweeping the cache against a fresh
+ * process snapshot with {@link #retainAll}, or individually with
+ * {@link #isStale}.
+ *
+ * <p>Handles are evicted either because the cache is full or because
+ * the process has exited.  Every handle returned by {@link #acquire} is
+ * pinned until it is passed to {@link #release}, so that another thread
+ * cannot close it while it is in use; an evicted handle is closed as
+ * soon as it is no longer pinned.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcessHandleCache {
+    /** Default number of handles retained by the cache. */
+    public static final int DEFAULT_MAX_HANDLES = 1024;
+
+    /** Access right used when opening processes. */
+    static final int PROCESS_QUERY_LIMITED_INFORMATION = 0x1000;
+
+    /** KERNEL32 functions used to open, query and close processes. */
+    private final Kernel32Process kernel32;
+
+    /** Cached handles, in least- to most-recently used order. */
+    private final LinkedHashMap<Integer, Entry> handles;
+
+    /** Entries whose handles are pinned, including evicted entries. */
+    private final Map<HANDLE, Entry> pinned = new HashMap<HANDLE, Entry>();
+
+    /**
+     * Constructs a new ProcessHandleCache that retains up to
+     * DEFAULT_MAX_HANDLES handles.
+     */
+    public ProcessHandleCache() {
+        this(Kernel32.INSTANCE, DEFAULT_MAX_HANDLES);
+    }
+
+    /**
+     * Constructs a new ProcessHandleCache.
+     *
+     * @param kernel32 KERNEL32 functions used to open, query and close
+     *  processes.
+     * @param maxHandles Maximum number of handles to retain.
+     */
+    public ProcessHandleCache(
+            final Kernel32Process kernel32, final int maxHandles) {
+        if (maxHandles < 1) {
+            throw new IllegalArgumentException(
+                    "maxHandles must be positive: " + maxHandles);
+        }
+
+        this.kernel32 = kernel32;
+        this.handles = new LinkedHashMap<Integer, Entry>(
+                16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Integer, Entry> eldest) {
+                if (size() <= maxHandles) {
+                    return false;
+                }
+
+                discard(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the KERNEL32 functions used by this cache.
+     *
+     * @return The KERNEL32 functions used by this cache.
+     */
+    public Kernel32Process getKernel32() {
+        return kernel32;
+    }
+
+    /**
+     * Returns an open handle to the given process, opening the process
+     * if its handle is not already cached.  The handle is owned by the
+     * cache and must not be closed by the caller; instead, the caller
+     * must pass it to {@link #release} once it is done with it.
+     *
+     * @param processId Process id of the process.
+     * @return An open, pinned handle to the process; null if the
+     *  process could not be opened.
+     */
+    public synchronized HANDLE acquire(final int processId) {
+        /* Use the cached handle if we have one. */
+        Entry entry = handles.get(processId);
+        if (entry == null) {
+            /* Open the process. */
+            HANDLE hProcess = kernel32.OpenProcess(
+                    PROCESS_QUERY_LIMITED_INFORMATION, false, processId);
+            if (hProcess == null) {
+                return null;
+            }
+
+            entry = new Entry(hProcess);
+            handles.put(processId, entry);
+        }
+
+        /* Pin and return the handle. */
+        if (entry.pins++ == 0) {
+            pinned.put(entry.handle, entry);
+        }
+        return entry.handle;
+    }
+
+    /**
+     * Unpins a handle returned by {@link #acquire}, closing it if it was
+     * evicted while it was pinned.
+     *
+     * @param hProcess The handle.
+     * @throws IllegalStateException if the handle is not pinned.
+     */
+    public synchronized void release(final HANDLE hProcess) {
+        Entry entry = pinned.get(hProcess);
+        if (entry == null) {
+            throw new IllegalStateException("Handle is not pinned.");
+        }
+
+        if (--entry.pins == 0) {
+            pinned.remove(hProcess);
+            if (entry.evicted) {
+                close(entry.handle);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the process whose handle is cached for the given
+     * process id has exited.  Stale handles are evicted from the
+     * cache.
+     *
+     * @param processId Process id of the process.
+     * @return true if the process has exited or is not cached, false
+     *  if its cached handle is still valid.
+     */
+    public synchronized boolean isStale(final int processId) {
+        Entry cached = handles.get(processId);
+        if (cached == null) {
+            return true;
+        }
+
+        IntByReference exitCode = new IntByReference();
+        if (kernel32.GetExitCodeProcess(cached.handle, exitCode)
+                && exitCode.getValue() == WinBase.STILL_ACTIVE) {
+            return false;
+        }
+
+        evict(processId);
+        return true;
+    }
+
+    /**
+     * Evicts the handles of every process that is not in the given
+     * collection of live process ids, usually the process ids from a
+     * fresh process snapshot.
+     *
+     * @param liveProcessIds Process ids of the processes that are still
+     *  running.
+     * @return The number of handles that were evicted.
+     */
+    public synchronized int retainAll(
+            final Collection<Integer> liveProcessIds) {
+        Set<Integer> live = liveProcessIds instanceof Set
+            ? (Set<Integer>) liveProcessIds
+            : new HashSet<Integer>(liveProcessIds);
+
+        List<Integer> stale = new ArrayList<Integer>();
+        for (Integer processId : handles.keySet()) {
+            if (!live.contains(processId)) {
+                stale.add(processId);
+            }
+        }
+
+        for (Integer processId : stale) {
+            evict(processId);
+        }
+
+        return stale.size();
+    }
+
+    /**
+     * Removes the cached handle for the given process id, closing it
+     * unless it is pinned.
+     *
+     * @param processId Process id of the process.
+     */
+    public synchronized void evict(final int processId) {
+        Entry cached = handles.remove(processId);
+        if (cached != null) {
+            discard(cached);
+        }
+    }
+
+    /**
+     * Returns the number of handles currently in the cache.
+     *
+     * @return The number of cached handles.
+     */
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    /**
+     * Removes every handle from the cache.  Handles that are not pinned
+     * are closed immediately, and the rest are closed as they are
+     * released.
+     */
+    public synchronized void close() {
+        for (Entry cached : handles.values()) {
+            discard(cached);
+        }
+        handles.clear();
+    }
+
+    /**
+     * Marks an entry that has been removed from the cache as evicted,
+     * closing its handle unless it is pinned.
+     *
+     * @param entry The entry.
+     */
+    private void discard(final Entry entry) {
+        entry.evicted = true;
+        if (entry.pins == 0) {
+            close(entry.handle);
+        }
+    }
+
+    /**
+     * Closes a cached handle.
+     *
+     * @param cached The handle to close.
+     */
+    private void close(final HANDLE cached) {
+        kernel32.CloseHandle(cached);
+    }
+
+    /**
+     * A cached handle.  The fields are guarded by the cache's lock.
+     */
+    private static final class Entry {
+        /** The process handle. */
+        private final HANDLE handle;
+
+        /** Number of callers that have acquired but not released the
+         * handle. */
+        private int pins;
+
+        /** true once the entry has been removed from the cache. */
+        private boolean evicted;
+
+        /**
+         * Constructs a new Entry.
+         *
+         * @param handle The process handle.
+         */
+        Entry(final HANDLE handle) {
+            this.handle = handle;
+        }
+    }
+}
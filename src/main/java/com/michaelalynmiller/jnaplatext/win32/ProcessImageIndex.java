@@ -0,0 +1,515 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An inverted index from process image names to process ids.  Every
+ * process is filed under its full image path and under the basename of
+ * that path (for example, "java.exe"), both compared without regard to
+ * case as Windows does.  Exact lookups are a single hash probe plus a
+ * copy of the matching process ids; prefix lookups walk a sorted map
+ * and cost O(log n) plus the number of matches.
+ *
+ * <p>The index is built from a ProcessSnapshot and can then be kept
+ * current either by applying each new snapshot with {@link #update},
+ * which only touches processes that have started or exited, or by
+ * reporting individual starts and exits (for example, from a
+ * ProcessExitWatcher).  All methods are thread-safe.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcessImageIndex {
+    /** Shared empty result. */
+    private static final int[] NO_PROCESSES = new int[0];
+
+    /** Indexed processes, by process id. */
+    private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+    /** Processes by lower-case image path. */
+    private final Map<String, Group> byPath = new HashMap<String, Group>();
+
+    /** Processes by lower-case basename. */
+    private final Map<String, Group> byBaseName
+        = new HashMap<String, Group>();
+
+    /** byPath, sorted for prefix lookups. */
+    private final TreeMap<String, Group> sortedPaths
+        = new TreeMap<String, Group>();
+
+    /** byBaseName, sorted for prefix lookups. */
+    private final TreeMap<String, Group> sortedBaseNames
+        = new TreeMap<String, Group>();
+
+    /** Incremented by every update; entries that an update does not
+     * see are removed. */
+    private int generation;
+
+    /**
+     * Constructs a new, empty ProcessImageIndex.
+     */
+    public ProcessImageIndex() { }
+
+    /**
+     * Creates an index of the processes in a snapshot.
+     *
+     * @param snapshot The snapshot.
+     * @return The index.
+     */
+    public static ProcessImageIndex of(final ProcessSnapshot snapshot) {
+        ProcessImageIndex index = new ProcessImageIndex();
+        index.update(snapshot);
+        return index;
+    }
+
+    /**
+     * Brings the index in line with a newer snapshot.  Processes that
+     * are in the snapshot but not the index (or whose parent or image
+     * differs, because the process id has been reused) are added, and
+     * processes that are no longer in the snapshot are removed.
+     *
+     * @param snapshot The snapshot.
+     * @return The number of processes that were added or removed.
+     */
+    public synchronized int update(final ProcessSnapshot snapshot) {
+        int changes = 0;
+        int current = ++this.generation;
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            int processId = snapshot.getProcessId(i);
+            int parentProcessId = snapshot.getParentProcessId(i);
+            String imageName = snapshot.getImageName(i);
+
+            Entry entry = this.entries.get(processId);
+            if (entry == null
+                    || entry.parentProcessId != parentProcessId
+                    || !entry.imageName.equals(imageName)) {
+                entry = add(processId, parentProcessId, imageName);
+                changes++;
+            }
+            entry.generation = current;
+        }
+
+        /* Remove the processes that the snapshot did not contain. */
+        if (this.entries.size() > snapshot.size()) {
+            List<Entry> exited = new ArrayList<Entry>();
+            for (Entry entry : this.entries.values()) {
+                if (entry.generation != current) {
+                    exited.add(entry);
+                }
+            }
+            for (Entry entry : exited) {
+                remove(entry);
+                changes++;
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * Adds a process that has started.  A process that is already in
+     * the index under the same process id is replaced.
+     *
+     * @param processId Process id.
+     * @param parentProcessId Parent process id.
+     * @param imageName Full path to the process's image.
+     */
+    public synchronized void processStarted(
+            final int processId,
+            final int parentProcessId,
+            final String imageName) {
+        add(processId, parentProcessId, imageName).generation
+            = this.generation;
+    }
+
+    /**
+     * Removes a process that has exited.
+     *
+     * @param processId Process id.
+     * @return true if the process was in the index, false otherwise.
+     */
+    public synchronized boolean processExited(final int processId) {
+        Entry entry = this.entries.get(processId);
+        if (entry == null) {
+            return false;
+        }
+
+        remove(entry);
+        return true;
+    }
+
+    /**
+     * Returns the number of indexed processes.
+     *
+     * @return The number of indexed processes.
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns the processes whose image has the given basename, such
+     * as "java.exe".
+     *
+     * @param baseName The basename, in any case.
+     * @return The matching process ids, in no particular order.
+     */
+    public synchronized int[] findByBaseName(final String baseName) {
+        return processIdsOf(this.byBaseName.get(toKey(baseName)));
+    }
+
+    /**
+     * Returns the processes whose image has the given full path.
+     *
+     * @param path The full path, in any case.
+     * @return The matching process ids, in no particular order.
+     */
+    public synchronized int[] findByPath(final String path) {
+        return processIdsOf(this.byPath.get(toKey(path)));
+    }
+
+    /**
+     * Returns the processes whose image basename starts with the given
+     * prefix; "java" finds java.exe and javaw.exe.
+     *
+     * @param prefix The prefix, in any case.
+     * @return The matching process ids, in no particular order.
+     */
+    public synchronized int[] findByBaseNamePrefix(final String prefix) {
+        return processIdsOf(prefixMap(this.sortedBaseNames, toKey(prefix)));
+    }
+
+    /**
+     * Returns the processes whose image path starts with the given
+     * prefix, such as every process run from a given directory.
+     *
+     * @param prefix The prefix, in any case.
+     * @return The matching process ids, in no particular order.
+     */
+    public synchronized int[] findByPathPrefix(final String prefix) {
+        return processIdsOf(prefixMap(this.sortedPaths, toKey(prefix)));
+    }
+
+    /**
+     * Returns the nearest ancestor of a process whose image has the
+     * given basename; for example, the cmd.exe that a program was
+     * (perhaps indirectly) started from.  The cost is proportional to
+     * the depth of the process in the process tree.
+     *
+     * @param processId Process id whose ancestors should be searched;
+     *  the process itself is not considered.
+     * @param baseName The basename, in any case.
+     * @return The process id of the nearest matching ancestor; -1 if
+     *  there is none.
+     */
+    public synchronized int findAncestor(
+            final int processId, final String baseName) {
+        Group group = this.byBaseName.get(toKey(baseName));
+        Entry entry = this.entries.get(processId);
+        if (group == null || entry == null) {
+            return -1;
+        }
+
+        /* Walk up the PID chain; stop if the chain loops back on
+         * itself, which can happen when a parent's id is reused. */
+        for (int depth = 0; depth < this.entries.size(); depth++) {
+            entry = this.entries.get(entry.parentProcessId);
+            if (entry == null) {
+                return -1;
+            }
+            if (entry.baseNameGroup == group) {
+                return entry.processId;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Files a process under its path and basename, replacing any
+     * process with the same process id.
+     *
+     * @param processId Process id.
+     * @param parentProcessId Parent process id.
+     * @param imageName Full path to the process's image.
+     * @return The process's entry.
+     */
+    private Entry add(
+            final int processId,
+            final int parentProcessId,
+            final String imageName) {
+        Entry previous = this.entries.get(processId);
+        if (previous != null) {
+            remove(previous);
+        }
+
+        Entry entry = new Entry(processId, parentProcessId, imageName);
+        String pathKey = toKey(imageName);
+        entry.pathGroup = group(this.byPath, this.sortedPaths, pathKey);
+        entry.baseNameGroup = group(this.byBaseName, this.sortedBaseNames,
+                pathKey.substring(baseNameStart(pathKey)));
+        entry.pathSlot = entry.pathGroup.add(entry);
+        entry.baseNameSlot = entry.baseNameGroup.add(entry);
+        this.entries.put(processId, entry);
+        return entry;
+    }
+
+    /**
+     * Removes a process from the index.
+     *
+     * @param entry The process's entry.
+     */
+    private void remove(final Entry entry) {
+        this.entries.remove(entry.processId);
+
+        entry.pathGroup.remove(entry, true);
+        if (entry.pathGroup.size == 0) {
+            this.byPath.remove(entry.pathGroup.key);
+            this.sortedPaths.remove(entry.pathGroup.key);
+        }
+
+        entry.baseNameGroup.remove(entry, false);
+        if (entry.baseNameGroup.size == 0) {
+            this.byBaseName.remove(entry.baseNameGroup.key);
+            this.sortedBaseNames.remove(entry.baseNameGroup.key);
+        }
+    }
+
+    /**
+     * Returns the group for a key, creating it if necessary.
+     *
+     * @param groups Groups by key.
+     * @param sortedGroups The same groups, sorted by key.
+     * @param key The key.
+     * @return The group.
+     */
+    private static Group group(
+            final Map<String, Group> groups,
+            final TreeMap<String, Group> sortedGroups,
+            final String key) {
+        Group group = groups.get(key);
+        if (group == null) {
+            group = new Group(key);
+            groups.put(key, group);
+            sortedGroups.put(key, group);
+        }
+        return group;
+    }
+
+    /**
+     * Returns the groups whose keys start with a prefix.
+     *
+     * @param sortedGroups Groups sorted by key.
+     * @param prefix The prefix.
+     * @return The matching groups.
+     */
+    private static SortedMap<String, Group> prefixMap(
+            final TreeMap<String, Group> sortedGroups, final String prefix) {
+        return sortedGroups.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    /**
+     * Copies the process ids of a group.
+     *
+     * @param group The group; may be null.
+     * @return The process ids.
+     */
+    private static int[] processIdsOf(final Group group) {
+        if (group == null) {
+            return NO_PROCESSES;
+        }
+
+        int[] processIds = new int[group.size];
+        for (int i = 0; i < group.size; i++) {
+            processIds[i] = group.members[i].processId;
+        }
+        return processIds;
+    }
+
+    /**
+     * Copies the process ids of several groups.
+     *
+     * @param groups The groups.
+     * @return The process ids.
+     */
+    private static int[] processIdsOf(final SortedMap<String, Group> groups) {
+        int count = 0;
+        for (Group group : groups.values()) {
+            count += group.size;
+        }
+
+        int[] processIds = new int[count];
+        int next = 0;
+        for (Group group : groups.values()) {
+            for (int i = 0; i < group.size; i++) {
+                processIds[next++] = group.members[i].processId;
+            }
+        }
+        return processIds;
+    }
+
+    /**
+     * Converts an image name or prefix into an index key.
+     *
+     * @param name The name.
+     * @return The key.
+     */
+    private static String toKey(final String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the index of the first character of a path's basename.
+     *
+     * @param path The path.
+     * @return The index of the character after the last separator.
+     */
+    private static int baseNameStart(final String path) {
+        return Math.max(path.lastIndexOf('\\'), path.lastIndexOf('/')) + 1;
+    }
+
+    /**
+     * An indexed process.
+     */
+    private static final class Entry {
+        /** Process id. */
+        private final int processId;
+
+        /** Parent process id. */
+        private final int parentProcessId;
+
+        /** Full path to the process's image, as reported. */
+        private final String imageName;
+
+        /** The processes with the same path. */
+        private Group pathGroup;
+
+        /** Index of this entry in pathGroup. */
+        private int pathSlot;
+
+        /** The processes with the same basename. */
+        private Group baseNameGroup;
+
+        /** Index of this entry in baseNameGroup. */
+        private int baseNameSlot;
+
+        /** The last update that saw this process. */
+        private int generation;
+
+        /**
+         * Constructs a new Entry.
+         *
+         * @param processId Process id.
+         * @param parentProcessId Parent process id.
+         * @param imageName Full path to the process's image.
+         */
+        Entry(final int processId, final int parentProcessId,
+                final String imageName) {
+            this.processId = processId;
+            this.parentProcessId = parentProcessId;
+            this.imageName = imageName;
+        }
+    }
+
+    /**
+     * The processes filed under a single key.  Members are kept in a
+     * dense array; each entry remembers its slot, so that it can be
+     * removed in constant time by moving the last member into its
+     * place.
+     */
+    private static final class Group {
+        /** The key. */
+        private final String key;
+
+        /** The members. */
+        private Entry[] members = new Entry[2];
+
+        /** Number of members. */
+        private int size;
+
+        /**
+         * Constructs a new, empty Group.
+         *
+         * @param key The key.
+         */
+        Group(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * Adds a member.
+         *
+         * @param entry The new member.
+         * @return The member's slot.
+         */
+        int add(final Entry entry) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size] = entry;
+            return size++;
+        }
+
+        /**
+         * Removes a member.
+         *
+         * @param entry The member.
+         * @param pathGroup true if this group is the member's path
+         *  group, false if it is the member's basename group.
+         */
+        void remove(final Entry entry, final boolean pathGroup) {
+            int slot = pathGroup ? entry.pathSlot : entry.baseNameSlot;
+            Entry last = members[--size];
+            members[size] = null;
+            if (last != entry) {
+                members[slot] = last;
+                if (pathGroup) {
+                    last.pathSlot = slot;
+                } else {
+                    last.baseNameSlot = slot;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, compact snapshot of the processes on this machine.
+ * Processes are stored in parallel arrays sorted by process id, and
+ * each process's image name is an index into a table of distinct image
+ * names, so a snapshot costs a dozen bytes per process plus one String
+ * per distinct executable.
+ *
+ * <p>The {@link #asProcessList} view presents the snapshot as the list
+ * of ProcessInfo objects returned by ProcessUtils.getProcessList.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcessSnapshot {
+    /** Process ids, in ascending order. */
+    private final int[] processIds;
+
+    /** Parent process ids, parallel to processIds. */
+    private final int[] parentProcessIds;
+
+    /** Indexes into imageNames, parallel to processIds. */
+    private final int[] imageNameIndexes;
+
+    /** Distinct image names. */
+    private final String[] imageNames;
+
+    /**
+     * Constructs a new ProcessSnapshot from sorted columns.  The arrays
+     * are not copied.
+     *
+     * @param processIds Process ids, in ascending order.
+     * @param parentProcessIds Parent process ids.
+     * @param imageNameIndexes Indexes into imageNames.
+     * @param imageNames Distinct image names.
+     */
+    ProcessSnapshot(
+            final int[] processIds,
+            final int[] parentProcessIds,
+            final int[] imageNameIndexes,
+            final String[] imageNames) {
+        this.processIds = processIds;
+        this.parentProcessIds = parentProcessIds;
+        this.imageNameIndexes = imageNameIndexes;
+        this.imageNames = imageNames;
+    }
+
+    /**
+     * Creates a snapshot from a list of processes.
+     *
+     * @param processList The list of processes.
+     * @return The snapshot.
+     */
+    public static ProcessSnapshot of(
+            final List<ProcessUtils.ProcessInfo> processList) {
+        Builder builder = new Builder(processList.size());
+        for (ProcessUtils.ProcessInfo process : processList) {
+            builder.add(process.getProcessId(),
+                    process.getParentProcessId(), process.getImageName());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of processes in the snapshot.
+     *
+     * @return The number of processes in the snapshot.
+     */
+    public int size() {
+        return processIds.length;
+    }
+
+    /**
+     * Returns the index of the given process.
+     *
+     * @param processId Process id to look for.
+     * @return The index of the process; -1 if the process is not in
+     *  the snapshot.
+     */
+    public int indexOf(final int processId) {
+        int index = Arrays.binarySearch(processIds, processId);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Returns the process id of the process at the given index.
+     *
+     * @param index Index of the process.
+     * @return The process id.
+     */
+    public int getProcessId(final int index) {
+        return processIds[index];
+    }
+
+    /**
+     * Returns the parent process id of the process at the given index.
+     *
+     * @param index Index of the process.
+     * @return The parent process id.
+     */
+    public int getParentProcessId(final int index) {
+        return parentProcessIds[index];
+    }
+
+    /**
+     * Returns the image name of the process at the given index.
+     *
+     * @param index Index of the process.
+     * @return The image name.
+     */
+    public String getImageName(final int index) {
+        return imageNames[imageNameIndexes[index]];
+    }
+
+    /**
+     * Returns the index into the image name table of the process at
+     * the given index.
+     *
+     * @param index Index of the process.
+     * @return Index of the process's image name.
+     */
+    public int getImageNameIndex(final int index) {
+        return imageNameIndexes[index];
+    }
+
+    /**
+     * Returns the number of distinct image names in the snapshot.
+     *
+     * @return The number of distinct image names.
+     */
+    public int getImageNameCount() {
+        return imageNames.length;
+    }
+
+    /**
+     * Returns an entry from the table of distinct image names.
+     *
+     * @param imageNameIndex Index of the image name.
+     * @return The image name.
+     */
+    public String getImageNameAt(final int imageNameIndex) {
+        return imageNames[imageNameIndex];
+    }
+
+    /**
+     * Returns the process at the given index.
+     *
+     * @param index Index of the process.
+     * @return The process.
+     */
+    public ProcessUtils.ProcessInfo getProcessInfo(final int index) {
+        return new ProcessUtils.ProcessInfo(
+                processIds[index], parentProcessIds[index],
+                getImageName(index));
+    }
+
+    /**
+     * Returns the given process.
+     *
+     * @param processId Process id to look for.
+     * @return The process; null if the process is not in the snapshot.
+     */
+    public ProcessUtils.ProcessInfo findProcess(final int processId) {
+        int index = indexOf(processId);
+        return index < 0 ? null : getProcessInfo(index);
+    }
+
+    /**
+     * Returns the given process and its ancestors in ascending (towards
+     * the root) order.
+     *
+     * @param processId Process id of the first process in the list.
+     * @return The list of the process's ancestors.
+     */
+    public List<ProcessUtils.ProcessInfo> getProcessAncestors(
+            final int processId) {
+        List<ProcessUtils.ProcessInfo> ancestorList
+            = new ArrayList<ProcessUtils.ProcessInfo>();
+
+        /* Walk up the PID chain; stop if the chain loops back on
+         * itself, which can happen when a parent's id is reused. */
+        for (int index = indexOf(processId);
+                index >= 0 && ancestorList.size() < size();
+                index = indexOf(parentProcessIds[index])) {
+            ancestorList.add(getProcessInfo(index));
+        }
+
+        return ancestorList;
+    }
+
+    /**
+     * Returns a read-only view of the snapshot as a list of processes
+     * sorted by process id.  ProcessInfo objects are created as they
+     * are accessed.
+     *
+     * @return The list view of the snapshot.
+     */
+    public List<ProcessUtils.ProcessInfo> asProcessList() {
+        return new AbstractList<ProcessUtils.ProcessInfo>() {
+            @Override
+            public ProcessUtils.ProcessInfo get(final int index) {
+                return getProcessInfo(index);
+            }
+
+            @Override
+            public int size() {
+                return processIds.length;
+            }
+        };
+    }
+
+    /**
+     * Accumulates processes and builds a ProcessSnapshot.  Image names
+     * can be added straight from a character buffer; a String is only
+     * created the first time each distinct image name is seen.
+     */
+    public static final class Builder {
+        /** Number of processes added so far. */
+        private int count;
+
+        /** Process ids, in the order in which they were added. */
+        private int[] processIds;
+
+        /** Parent process ids. */
+        private int[] parentProcessIds;
+
+        /** Indexes into imageNames. */
+        private int[] imageNameIndexes;
+
+        /** Distinct image names, in the order in which they were
+         * seen. */
+        private final List<String> imageNames = new ArrayList<String>();
+
+        /** Index of each distinct image name. */
+        private final Map<CharBuffer, Integer> imageNameIndex
+            = new HashMap<CharBuffer, Integer>();
+
+        /**
+         * Constructs a new Builder.
+         *
+         * @param expectedSize Expected number of processes.
+         */
+        public Builder(final int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            processIds = new int[capacity];
+            parentProcessIds = new int[capacity];
+            imageNameIndexes = new int[capacity];
+        }
+
+        /**
+         * Adds a process to the snapshot.
+         *
+         * @param processId Process id.
+         * @param parentProcessId Parent process id.
+         * @param imageName Process image name.
+         * @return This builder.
+         */
+        public Builder add(
+                final int processId,
+                final int parentProcessId,
+                final String imageName) {
+            return add(processId, parentProcessId,
+                    CharBuffer.wrap(imageName));
+        }
+
+        /**
+         * Adds a process to the snapshot.
+         *
+         * @param processId Process id.
+         * @param parentProcessId Parent process id.
+         * @param imageName Buffer containing the process image name.
+         * @param imageNameLength Number of characters in the image name.
+         * @return This builder.
+         */
+        public Builder add(
+                final int processId,
+                final int parentProcessId,
+                final char[] imageName,
+                final int imageNameLength) {
+            return add(processId, parentProcessId,
+                    CharBuffer.wrap(imageName, 0, imageNameLength));
+        }
+
+        /**
+         * Adds a process to the snapshot.
+         *
+         * @param processId Process id.
+         * @param parentProcessId Parent process id.
+         * @param imageName The process image name.
+         * @return This builder.
+         */
+        private Builder add(
+                final int processId,
+                final int parentProcessId,
+                final CharBuffer imageName) {
+            /* Look up the image name, adding it to the table if this is
+             * the first time that we have seen it. */
+            Integer index = imageNameIndex.get(imageName);
+            if (index == null) {
+                String name = imageName.toString();
+                index = imageNames.size();
+                imageNames.add(name);
+                imageNameIndex.put(CharBuffer.wrap(name), index);
+            }
+
+            /* Grow the columns if necessary. */
+            if (count == processIds.length) {
+                int capacity = count * 2;
+                processIds = Arrays.copyOf(processIds, capacity);
+                parentProcessIds = Arrays.copyOf(parentProcessIds, capacity);
+                imageNameIndexes = Arrays.copyOf(imageNameIndexes, capacity);
+            }
+
+            /* Add the process. */
+            processIds[count] = processId;
+            parentProcessIds[count] = parentProcessId;
+            imageNameIndexes[count] = index;
+            count++;
+            return this;
+        }
+
+        /**
+         * Builds the snapshot.
+         *
+         * @return The snapshot.
+         */
+        public ProcessSnapshot build() {
+            /* Sort the processes by process id, carrying each process's
+             * original position in the low half of the sort key. */
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = ((long) processIds[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            /* Copy the columns into sorted order. */
+            int[] sortedIds = new int[count];
+            int[] sortedParentIds = new int[count];
+            int[] sortedImageNameIndexes = new int[count];
+            for (int i = 0; i < count; i++) {
+                int from = (int) order[i];
+                sortedIds[i] = processIds[from];
+                sortedParentIds[i] = parentProcessIds[from];
+                sortedImageNameIndexes[i] = imageNameIndexes[from];
+            }
+
+            return new ProcessSnapshot(sortedIds, sortedParentIds,
+                    sortedImageNameIndexes,
+                    imageNames.toArray(new String[imageNames.size()]));
+        }
+    }
+}
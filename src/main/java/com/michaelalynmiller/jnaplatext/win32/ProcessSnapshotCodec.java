@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes ProcessSnapshots in a compact, versioned binary format.  All
+ * values are little-endian:
+ *
+ * <pre>
+ *   int     magic ("JPSS")
+ *   short   format version
+ *   short   reserved (zero)
+ *   int     process count (n)
+ *   int     image name count (m)
+ *   int[n]  process ids, ascending
+ *   int[n]  parent process ids
+ *   int[n]  image name indexes
+ *   m x     (int byte length, UTF-8 bytes) image names
+ * </pre>
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcessSnapshotCodec {
+    /** Magic number at the start of every encoded snapshot. */
+    public static final int MAGIC = 0x5353504A; /* "JPSS" */
+
+    /** Current format version. */
+    public static final short VERSION = 1;
+
+    /** Size of the fixed header, in bytes. */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Prevent construction.
+     */
+    private ProcessSnapshotCodec() { }
+
+    /**
+     * Returns the number of bytes needed to encode the given snapshot.
+     *
+     * @param snapshot The snapshot.
+     * @return The encoded size of the snapshot, in bytes.
+     */
+    public static int encodedSize(final ProcessSnapshot snapshot) {
+        int size = HEADER_SIZE + snapshot.size() * 12;
+        for (int i = 0; i < snapshot.getImageNameCount(); i++) {
+            size += 4 + utf8Length(snapshot.getImageNameAt(i));
+        }
+        return size;
+    }
+
+    /**
+     * Encodes a snapshot into a buffer, starting at the buffer's
+     * position.  On return the buffer's position is just past the
+     * encoded snapshot.
+     *
+     * @param snapshot The snapshot to encode.
+     * @param buffer The buffer; must have at least encodedSize bytes
+     *  remaining.
+     */
+    public static void encode(
+            final ProcessSnapshot snapshot, final ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int count = snapshot.size();
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putShort((short) 0);
+            buffer.putInt(count);
+            buffer.putInt(snapshot.getImageNameCount());
+
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(snapshot.getProcessId(i));
+            }
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(snapshot.getParentProcessId(i));
+            }
+            for (int i = 0; i < count; i++) {
+                buffer.putInt(snapshot.getImageNameIndex(i));
+            }
+
+            for (int i = 0; i < snapshot.getImageNameCount(); i++) {
+                byte[] name = snapshot.getImageNameAt(i).getBytes(
+                        StandardCharsets.UTF_8);
+                buffer.putInt(name.length);
+                buffer.put(name);
+            }
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Encodes a snapshot into a new array.
+     *
+     * @param snapshot The snapshot to encode.
+     * @return The encoded snapshot.
+     */
+    public static byte[] encode(final ProcessSnapshot snapshot) {
+        byte[] encoded = new byte[encodedSize(snapshot)];
+        encode(snapshot, ByteBuffer.wrap(encoded));
+        return encoded;
+    }
+
+    /**
+     * Decodes a snapshot from a buffer, starting at the buffer's
+     * position.  On return the buffer's position is just past the
+     * encoded snapshot.
+     *
+     * @param buffer The buffer containing the encoded snapshot.
+     * @return The decoded snapshot.
+     * @throws IOException if the buffer does not contain a valid
+     *  snapshot.
+     */
+    public static ProcessSnapshot decode(final ByteBuffer buffer)
+            throws IOException {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            /* Read and validate the header. */
+            if (buffer.remaining() < HEADER_SIZE
+                    || buffer.getInt() != MAGIC) {
+                throw new IOException("Not an encoded process snapshot.");
+            }
+
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException(
+                        "Unsupported process snapshot version " + version);
+            }
+
+            buffer.getShort();
+            int count = buffer.getInt();
+            int imageNameCount = buffer.getInt();
+            if (count < 0 || imageNameCount < 0
+                    || (long) count * 12 + (long) imageNameCount * 4
+                        > buffer.remaining()) {
+                throw new IOException("Truncated process snapshot.");
+            }
+
+            /* Read the columns. */
+            int[] processIds = new int[count];
+            int[] parentProcessIds = new int[count];
+            int[] imageNameIndexes = new int[count];
+            buffer.asIntBuffer().get(processIds);
+            buffer.position(buffer.position() + count * 4);
+            buffer.asIntBuffer().get(parentProcessIds);
+            buffer.position(buffer.position() + count * 4);
+            buffer.asIntBuffer().get(imageNameIndexes);
+            buffer.position(buffer.position() + count * 4);
+
+            /* Read the image names. */
+            String[] imageNames = new String[imageNameCount];
+            byte[] name = new byte[64];
+            for (int i = 0; i < imageNameCount; i++) {
+                int length = buffer.remaining() >= 4 ? buffer.getInt() : -1;
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IOException("Truncated process snapshot.");
+                }
+
+                if (length > name.length) {
+                    name = new byte[Math.max(length, name.length * 2)];
+                }
+                buffer.get(name, 0, length);
+                imageNames[i] = new String(
+                        name, 0, length, StandardCharsets.UTF_8);
+            }
+
+            /* Validate the columns. */
+            for (int i = 0; i < count; i++) {
+                if ((i > 0 && processIds[i] < processIds[i - 1])
+                        || imageNameIndexes[i] < 0
+                        || imageNameIndexes[i] >= imageNameCount) {
+                    throw new IOException("Corrupt process snapshot.");
+                }
+            }
+
+            return new ProcessSnapshot(processIds, parentProcessIds,
+                    imageNameIndexes, imageNames);
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the UTF-8 encoding of a string.
+     *
+     * @param s The string.
+     * @return The length of the string's UTF-8 encoding.
+     */
+    private static int utf8Length(final String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                /* Unpaired surrogates are encoded as '?'. */
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of timestamped ProcessSnapshots, kept for offline
+ * diffing.  A record that was only partially written (for example
+ * because the writer crashed) ends the log when it is read back, and is
+ * truncated away when the log is next opened for appending.
+ *
+ * <p>File layout (little-endian):
+ *
+ * <pre>
+ *   int   magic ("JPSL")
+ *   int   log format version
+ *   records:
+ *     int   length of the encoded snapshot, in bytes
+ *     long  timestamp, in milliseconds since the epoch
+ *     int   CRC-32 of the encoded snapshot
+ *     ...   encoded snapshot (see ProcessSnapshotCodec)
+ * </pre>
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcessSnapshotLog {
+    /** Magic number at the start of the file. */
+    public static final int MAGIC = 0x4C53504A; /* "JPSL" */
+
+    /** Current log format version. */
+    public static final int VERSION = 1;
+
+    /** Size of the file header, in bytes. */
+    private static final int FILE_HEADER_SIZE = 8;
+
+    /** Size of each record header, in bytes. */
+    private static final int RECORD_HEADER_SIZE = 16;
+
+    /** The open file. */
+    private final RandomAccessFile file;
+
+    /**
+     * Constructs a new ProcessSnapshotLog around an open file.
+     *
+     * @param file The open file, positioned at its end.
+     */
+    private ProcessSnapshotLog(final RandomAccessFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens (creating it if necessary) a log file for appending.  Any
+     * torn or corrupt records at the end of the file are truncated so
+     * that the records appended after them can be read back.
+     *
+     * @param path Path to the log file.
+     * @return The log.
+     * @throws IOException if the file could not be opened or is not a
+     *  snapshot log.
+     */
+    public static ProcessSnapshotLog open(final File path)
+            throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            if (file.length() == 0) {
+                ByteBuffer header = fileHeader();
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(channel, header);
+            } else {
+                readFileHeader(channel, path);
+                long end = readRecords(channel, null);
+                if (end < channel.size()) {
+                    channel.truncate(end);
+                }
+            }
+
+            channel.position(channel.size());
+            return new ProcessSnapshotLog(file);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a snapshot to the log.
+     *
+     * @param snapshot The snapshot to append.
+     * @param timestamp Time at which the snapshot was taken, in
+     *  milliseconds since the epoch.
+     * @throws IOException if the snapshot could not be written.
+     */
+    public synchronized void append(
+            final ProcessSnapshot snapshot, final long timestamp)
+            throws IOException {
+        /* Encode the record into a single buffer so that it is written
+         * with one call. */
+        int length = ProcessSnapshotCodec.encodedSize(snapshot);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        record.position(RECORD_HEADER_SIZE);
+        ProcessSnapshotCodec.encode(snapshot, record);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length);
+        record.putLong(4, timestamp);
+        record.putInt(12, (int) crc.getValue());
+        record.flip();
+
+        writeFully(file.getChannel(), record);
+    }
+
+    /**
+     * Closes the log.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Reads every complete snapshot in a log file.
+     *
+     * @param path Path to the log file.
+     * @return The snapshots, in the order in which they were appended.
+     * @throws IOException if the file could not be read or is not a
+     *  snapshot log.
+     */
+    public static List<Entry> readAll(final File path) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            readFileHeader(channel, path);
+            readRecords(channel, entries);
+        } finally {
+            file.close();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Reads records up to the end of the file or the first torn or
+     * corrupt record, whichever comes first.
+     *
+     * @param channel The file, positioned at its first record.
+     * @param entries List to which the decoded snapshots are added;
+     *  null to only verify the records.
+     * @return The offset just past the last valid record.
+     * @throws IOException if the file could not be read.
+     */
+    private static long readRecords(
+            final FileChannel channel, final List<Entry> entries)
+            throws IOException {
+        long end = channel.position();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        while (true) {
+            /* Read the record header. */
+            header.clear();
+            if (!readFully(channel, header)) {
+                break;
+            }
+            int length = header.getInt(0);
+            long timestamp = header.getLong(4);
+            int expectedCrc = header.getInt(12);
+            if (length < 0
+                    || length > channel.size() - channel.position()) {
+                break;
+            }
+
+            /* Read and verify the snapshot. */
+            ByteBuffer data = ByteBuffer.allocate(length);
+            if (!readFully(channel, data)) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data.array(), 0, length);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+
+            end = channel.position();
+            if (entries != null) {
+                data.flip();
+                entries.add(new Entry(
+                        timestamp, ProcessSnapshotCodec.decode(data)));
+            }
+        }
+
+        return end;
+    }
+
+    /**
+     * Returns a buffer for the file header.
+     *
+     * @return An empty, little-endian buffer for the file header.
+     */
+    private static ByteBuffer fileHeader() {
+        return ByteBuffer.allocate(FILE_HEADER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Reads and validates the file header.
+     *
+     * @param channel The file, positioned at its start.
+     * @param path Path to the file, for error messages.
+     * @throws IOException if the file is not a snapshot log.
+     */
+    private static void readFileHeader(
+            final FileChannel channel, final File path) throws IOException {
+        ByteBuffer header = fileHeader();
+        if (!readFully(channel, header) || header.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a process snapshot log.");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported process snapshot log version "
+                    + header.getInt(4));
+        }
+    }
+
+    /**
+     * Fills a buffer from a channel.
+     *
+     * @param channel The channel to read from.
+     * @param buffer The buffer to fill.
+     * @return true if the buffer was filled, false if the end of the
+     *  channel was reached first.
+     * @throws IOException if the channel could not be read.
+     */
+    private static boolean readFully(
+            final FileChannel channel, final ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes an entire buffer to a channel.
+     *
+     * @param channel The channel to write to.
+     * @param buffer The buffer to write.
+     * @throws IOException if the channel could not be written.
+     */
+    private static void writeFully(
+            final FileChannel channel, final ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A snapshot and the time at which it was taken.
+     */
+    public static final class Entry {
+        /** Time at which the snapshot was taken. */
+        private final long timestamp;
+
+        /** The snapshot. */
+        private final ProcessSnapshot snapshot;
+
+        /**
+         * Constructs a new Entry.
+         *
+         * @param timestamp Time at which the snapshot was taken.
+         * @param snapshot The snapshot.
+         */
+        Entry(final long timestamp, final ProcessSnapshot snapshot) {
+            this.timestamp = timestamp;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Returns the time at which the snapshot was taken.
+         *
+         * @return The timestamp, in milliseconds since the epoch.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Returns the snapshot.
+         *
+         * @return The snapshot.
+         */
+        public ProcessSnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+}
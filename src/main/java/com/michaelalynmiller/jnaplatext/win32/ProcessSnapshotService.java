@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares process snapshots between every thread in the process.
+ * Callers get the most recent snapshot if it is no older than the
+ * service's maximum staleness; otherwise they trigger a refresh.  Only
+ * one refresh runs at a time and callers that arrive while it is
+ * running wait for it instead of taking their own snapshot, so the
+ * snapshot cost does not grow with the number of callers.  Snapshots
+ * can also be refreshed on a background schedule so that callers rarely
+ * have to wait at all.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class ProcessSnapshotService {
+    /** Maximum staleness of the process-wide service, in
+     * milliseconds. */
+    public static final long DEFAULT_MAX_STALENESS_MILLIS = 1000;
+
+    /** KERNEL32 functions used to take snapshots. */
+    private final Kernel32Process kernel32;
+
+    /** Cache of open process handles; may be null. */
+    private final ProcessHandleCache handleCache;
+
+    /** Maximum age of a snapshot returned by getSnapshot(), in
+     * nanoseconds. */
+    private final long maxStalenessNanos;
+
+    /** Guards inFlight. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The refresh that is currently running; null if none is. */
+    private CompletableFuture<ProcessSnapshot> inFlight;
+
+    /** The most recent snapshot; null if none has been taken. */
+    private volatile TimedSnapshot current;
+
+    /** Number of snapshots taken. */
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    /** Runs background refreshes; null if they are not scheduled. */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a new ProcessSnapshotService.
+     *
+     * @param maxStaleness Maximum age of a snapshot returned by
+     *  getSnapshot().
+     * @param unit Unit of maxStaleness.
+     */
+    public ProcessSnapshotService(
+            final long maxStaleness, final TimeUnit unit) {
+        this(Kernel32.INSTANCE, new ProcessHandleCache(),
+                maxStaleness, unit);
+    }
+
+    /**
+     * Constructs a new ProcessSnapshotService.
+     *
+     * @param kernel32 KERNEL32 functions used to take snapshots.
+     * @param handleCache Cache of open process handles; null to open
+     *  and close each process.
+     * @param maxStaleness Maximum age of a snapshot returned by
+     *  getSnapshot().
+     * @param unit Unit of maxStaleness.
+     */
+    public ProcessSnapshotService(
+            final Kernel32Process kernel32,
+            final ProcessHandleCache handleCache,
+            final long maxStaleness,
+            final TimeUnit unit) {
+        this.kernel32 = kernel32;
+        this.handleCache = handleCache;
+        this.maxStalenessNanos = unit.toNanos(maxStaleness);
+    }
+
+    /**
+     * Returns the process-wide service, creating it on first use.  Its
+     * maximum staleness is DEFAULT_MAX_STALENESS_MILLIS.
+     *
+     * @return The process-wide service.
+     */
+    public static ProcessSnapshotService getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Returns a snapshot that is no older than this service's maximum
+     * staleness.
+     *
+     * @return The snapshot.
+     */
+    public ProcessSnapshot getSnapshot() throws Exception {
+        return getSnapshot(maxStalenessNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a snapshot that is no older than the given staleness.
+     *
+     * @param maxStaleness Maximum age of the snapshot.
+     * @param unit Unit of maxStaleness.
+     * @return The snapshot.
+     */
+    public ProcessSnapshot getSnapshot(
+            final long maxStaleness, final TimeUnit unit) throws Exception {
+        TimedSnapshot snapshot = current;
+        if (snapshot != null && System.nanoTime() - snapshot.takenNanos
+                <= unit.toNanos(maxStaleness)) {
+            return snapshot.snapshot;
+        }
+
+        return refresh(unit.toNanos(maxStaleness));
+    }
+
+    /**
+     * Returns the list of processes from a snapshot that is no older
+     * than this service's maximum staleness.
+     *
+     * @return The unmodifiable list of processes, sorted by process id.
+     */
+    public List<ProcessUtils.ProcessInfo> getProcessList() throws Exception {
+        return getSnapshot().asProcessList();
+    }
+
+    /**
+     * Takes a new snapshot, or waits for the refresh that is already in
+     * progress.
+     *
+     * @return The new snapshot.
+     */
+    public ProcessSnapshot refresh() throws Exception {
+        return refresh(-1);
+    }
+
+    /**
+     * Returns the number of snapshots this service has taken.
+     *
+     * @return The number of snapshots taken.
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * Refreshes the snapshot in the background at a fixed rate.  Errors
+     * in background refreshes are ignored; the next caller that needs
+     * a fresh snapshot will see them.
+     *
+     * @param period Time between refreshes.
+     * @param unit Unit of period.
+     */
+    public void startBackgroundRefresh(
+            final long period, final TimeUnit unit) {
+        lock.lock();
+        try {
+            if (scheduler != null) {
+                throw new IllegalStateException(
+                        "Background refresh is already running.");
+            }
+
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(
+                                r, "jnaplatext-snapshot-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            scheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    try {
+                        refresh();
+                    } catch (Exception e) {
+                        /* Ignored; see the method comment. */
+                    }
+                }
+            }, 0, period, unit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops refreshing the snapshot in the background, waiting for a
+     * background refresh that is already running to finish.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void stopBackgroundRefresh() throws InterruptedException {
+        ScheduledExecutorService stopping;
+        lock.lock();
+        try {
+            stopping = scheduler;
+            scheduler = null;
+        } finally {
+            lock.unlock();
+        }
+
+        /* Wait outside of the lock, since the refresh needs it in order
+         * to complete. */
+        if (stopping != null) {
+            stopping.shutdown();
+            stopping.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Takes a new snapshot unless one no older than the given staleness
+     * became available while waiting for the lock, joining the refresh
+     * that is already in progress if there is one.
+     *
+     * @param maxStalenessNanos Maximum acceptable age of an existing
+     *  snapshot; negative to always take a new one.
+     * @return The snapshot.
+     */
+    private ProcessSnapshot refresh(final long maxStalenessNanos)
+            throws Exception {
+        /* Join the in-flight refresh, or become the refresher. */
+        CompletableFuture<ProcessSnapshot> future;
+        boolean refresher = false;
+        lock.lock();
+        try {
+            TimedSnapshot snapshot = current;
+            if (maxStalenessNanos >= 0 && snapshot != null
+                    && System.nanoTime() - snapshot.takenNanos
+                        <= maxStalenessNanos) {
+                return snapshot.snapshot;
+            }
+
+            if (inFlight == null) {
+                inFlight = new CompletableFuture<ProcessSnapshot>();
+                refresher = true;
+            }
+            future = inFlight;
+        } finally {
+            lock.unlock();
+        }
+
+        /* Take the snapshot if we are the refresher.  The snapshot is
+         * timestamped with the time at which it was started. */
+        if (refresher) {
+            try {
+                long startNanos = System.nanoTime();
+                ProcessSnapshot snapshot
+                    = ProcessUtils.getProcessSnapshot(kernel32, handleCache);
+                refreshCount.incrementAndGet();
+                current = new TimedSnapshot(snapshot, startNanos);
+                complete(future, snapshot, null);
+            } catch (Throwable t) {
+                complete(future, null, t);
+            }
+        }
+
+        /* Return the result of the refresh. */
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new Exception(cause);
+        }
+    }
+
+    /**
+     * Clears the in-flight refresh and completes its future.
+     *
+     * @param future The in-flight refresh.
+     * @param snapshot The new snapshot; null if the refresh failed.
+     * @param error The error; null if the refresh succeeded.
+     */
+    private void complete(
+            final CompletableFuture<ProcessSnapshot> future,
+            final ProcessSnapshot snapshot,
+            final Throwable error) {
+        lock.lock();
+        try {
+            inFlight = null;
+        } finally {
+            lock.unlock();
+        }
+
+        if (error == null) {
+            future.complete(snapshot);
+        } else {
+            future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * A snapshot and the time at which it was started.
+     */
+    private static final class TimedSnapshot {
+        /** The snapshot. */
+        private final ProcessSnapshot snapshot;
+
+        /** Value of System.nanoTime() when the snapshot was started. */
+        private final long takenNanos;
+
+        /**
+         * Constructs a new TimedSnapshot.
+         *
+         * @param snapshot The snapshot.
+         * @param takenNanos Time at which the snapshot was started.
+         */
+        TimedSnapshot(final ProcessSnapshot snapshot, final long takenNanos) {
+            this.snapshot = snapshot;
+            this.takenNanos = takenNanos;
+        }
+    }
+
+    /**
+     * Lazily creates the process-wide service.
+     */
+    private static final class InstanceHolder {
+        /** The process-wide service. */
+        static final ProcessSnapshotService INSTANCE
+            = new ProcessSnapshotService(
+                    DEFAULT_MAX_STALENESS_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -58,58 +58,141 @@ public final class ProcessUtils {
     private ProcessUtils() { }
 
     /**
-     * Gets the list of processes on this machine.
+     * Gets the list of processes on this machine.  Callers that poll
+     * the process list from many threads should share snapshots through
+     * ProcessSnapshotService instead.
      *
      * @return The list of processes on this machine.
      */
     public static List<ProcessInfo> getProcessList()
             throws Exception {
-        /* Initialize the empty process list. */
-        List<ProcessInfo> processList = new ArrayList<ProcessInfo>();
+        return getProcessList(Kernel32.INSTANCE, null);
+    }
+
+    /**
+     * Gets the list of processes on this machine, using (and
+     * maintaining) the given cache of process handles instead of
+     * opening and closing every process.  Handles for processes that
+     * are no longer running are closed.
+     *
+     * @param handleCache Cache of open process handles.
+     * @return The list of processes on this machine.
+     */
+    public static List<ProcessInfo> getProcessList(
+            final ProcessHandleCache handleCache) throws Exception {
+        return getProcessList(handleCache.getKernel32(), handleCache);
+    }
+
+    /**
+     * Gets the list of processes on this machine using the given
+     * KERNEL32 functions.  The list is sorted by process id.
+     *
+     * @param kernel32 KERNEL32 functions used to enumerate and query
+     *  processes.
+     * @param handleCache Cache of open process handles; null to open
+     *  and close each process.
+     * @return The list of processes on this machine.
+     */
+    public static List<ProcessInfo> getProcessList(
+            final Kernel32Process kernel32,
+            final ProcessHandleCache handleCache) throws Exception {
+        return new ArrayList<ProcessInfo>(
+                getProcessSnapshot(kernel32, handleCache).asProcessList());
+    }
+
+    /**
+     * Takes a compact snapshot of the processes on this machine.
+     *
+     * @return The snapshot of the processes on this machine.
+     */
+    public static ProcessSnapshot getProcessSnapshot() throws Exception {
+        return getProcessSnapshot(Kernel32.INSTANCE, null);
+    }
+
+    /**
+     * Takes a compact snapshot of the processes on this machine using
+     * the given KERNEL32 functions.
+     *
+     * @param kernel32 KERNEL32 functions used to enumerate and query
+     *  processes.
+     * @param handleCache Cache of open process handles; null to open
+     *  and close each process.
+     * @return The snapshot of the processes on this machine.
+     */
+    public static ProcessSnapshot getProcessSnapshot(
+            final Kernel32Process kernel32,
+            final ProcessHandleCache handleCache) throws Exception {
+        /* Initialize the empty snapshot. */
+        ProcessSnapshot.Builder builder = new ProcessSnapshot.Builder(256);
+        List<Integer> processIds = new ArrayList<Integer>();
 
         /* Create the process snapshot. */
-        HANDLE snapshot = Kernel32.INSTANCE.CreateToolhelp32Snapshot(
+        HANDLE snapshot = kernel32.CreateToolhelp32Snapshot(
                 Tlhelp32.TH32CS_SNAPPROCESS, new DWORD(0));
 
-        Tlhelp32.PROCESSENTRY32.ByReference pe
-            = new Tlhelp32.PROCESSENTRY32.ByReference();
-        for (boolean more = Kernel32.INSTANCE.Process32First(snapshot, pe);
-                more;
-                more = Kernel32.INSTANCE.Process32Next(snapshot, pe)) {
-            /* Open this process; ignore processes that we cannot open. */
-            HANDLE hProcess = Kernel32.INSTANCE.OpenProcess(
-                    0x1000, /* PROCESS_QUERY_LIMITED_INFORMATION */
-                    false,
-                    pe.th32ProcessID.intValue());
-            if (hProcess == null) {
-                continue;
-            }
-
-            /* Get the image name. */
+        try {
+            Tlhelp32.PROCESSENTRY32.ByReference pe
+                = new Tlhelp32.PROCESSENTRY32.ByReference();
             char[] imageNameChars = new char[1024];
-            IntByReference imageNameLen
-                = new IntByReference(imageNameChars.length);
-            if (!Kernel32.INSTANCE.QueryFullProcessImageName(
-                    hProcess, new DWORD(0), imageNameChars, imageNameLen)) {
-                throw new Exception("Couldn't get process image name for "
-                        + pe.th32ProcessID.intValue());
-            }
+            IntByReference imageNameLen = new IntByReference();
+            for (boolean more = kernel32.Process32First(snapshot, pe);
+                    more;
+                    more = kernel32.Process32Next(snapshot, pe)) {
+                int processId = pe.th32ProcessID.intValue();
+                processIds.add(processId);
+
+                /* Open this process; ignore processes that we cannot
+                 * open. */
+                HANDLE hProcess = handleCache != null
+                    ? handleCache.acquire(processId)
+                    : kernel32.OpenProcess(
+                        ProcessHandleCache.PROCESS_QUERY_LIMITED_INFORMATION,
+                        false,
+                        processId);
+                if (hProcess == null) {
+                    continue;
+                }
 
-            /* Add the process info to our list. */
-            processList.add(new ProcessInfo(
-                pe.th32ProcessID.intValue(),
-                pe.th32ParentProcessID.intValue(),
-                new String(imageNameChars, 0, imageNameLen.getValue())));
+                try {
+                    /* Get the image name. */
+                    imageNameLen.setValue(imageNameChars.length);
+                    if (!kernel32.QueryFullProcessImageName(
+                            hProcess, new DWORD(0),
+                            imageNameChars, imageNameLen)) {
+                        throw new Exception(
+                                "Couldn't get process image name for "
+                                + processId);
+                    }
 
-            /* Close the process handle. */
-            Kernel32.INSTANCE.CloseHandle(hProcess);
+                    /* Add the process to the snapshot; the image name
+                     * is only copied if we have not seen it before. */
+                    builder.add(
+                        processId,
+                        pe.th32ParentProcessID.intValue(),
+                        imageNameChars,
+                        imageNameLen.getValue());
+                } finally {
+                    /* Close the process handle, or unpin it if it is
+                     * cached. */
+                    if (handleCache == null) {
+                        kernel32.CloseHandle(hProcess);
+                    } else {
+                        handleCache.release(hProcess);
+                    }
+                }
+            }
+        } finally {
+            /* Close the process snapshot. */
+            kernel32.CloseHandle(snapshot);
         }
 
-        /* Close the process snapshot. */
-        Kernel32.INSTANCE.CloseHandle(snapshot);
+        /* Close the handles of processes that have exited. */
+        if (handleCache != null) {
+            handleCache.retainAll(processIds);
+        }
 
-        /* Return the process list. */
-        return processList;
+        /* Return the snapshot. */
+        return builder.build();
     }
 
     /**
@@ -133,6 +216,21 @@ public final class ProcessUtils {
      */
     public static List<ProcessInfo> getProcessAncestors(
             final List<ProcessInfo> processList) {
+        return getProcessAncestors(
+                Kernel32.INSTANCE.GetCurrentProcessId(), processList);
+    }
+
+    /**
+     * Given a list of the processes on this machine, returns the given
+     * process and its ancestors in ascending (towards the root) order.
+     *
+     * @param processId Process id of the first process in the list.
+     * @param processList The list of processes on this machine.
+     * @return The list of the process's ancestors.
+     */
+    public static List<ProcessInfo> getProcessAncestors(
+            final int processId,
+            final List<ProcessInfo> processList) {
         /* Convert the list to a HashMap indexed by process id. */
         HashMap<Integer, ProcessInfo> processListById
             = new HashMap<Integer, ProcessInfo>();
@@ -144,8 +242,7 @@ public final class ProcessUtils {
         List<ProcessInfo> ancestorList = new ArrayList<ProcessInfo>();
 
         /* Walk up the PID chain and build our ancestor list. */
-        ProcessInfo curProcess = processListById.get(
-                Kernel32.INSTANCE.GetCurrentProcessId());
+        ProcessInfo curProcess = processListById.get(processId);
         while (curProcess != null) {
             /* Add this entry to the end of the ancestor list. */
             ancestorList.add(curProcess);
@@ -166,18 +263,35 @@ public final class ProcessUtils {
      */
     public static List<HWND> getProcessWindows(final int processId)
             throws Exception {
+        return getProcessWindows(
+                User32.INSTANCE, Kernel32.INSTANCE, processId);
+    }
+
+    /**
+     * Returns the list of windows owned by the given process using the
+     * given USER32 and KERNEL32 functions.
+     *
+     * @param user32 USER32 functions used to enumerate windows.
+     * @param kernel32 KERNEL32 functions used to report errors.
+     * @param processId Process id whose windows should be returned.
+     * @return The list of windows owned by the given process.
+     */
+    public static List<HWND> getProcessWindows(
+            final User32Window user32,
+            final Kernel32Process kernel32,
+            final int processId) throws Exception {
         /* Initialize the empty window list. */
         final List<HWND> processWindows = new ArrayList<HWND>();
 
         /* Enumerate all of the windows and add all of the one for the
          * given process id to our list. */
-        boolean result = User32.INSTANCE.EnumWindows(
+        boolean result = user32.EnumWindows(
             new WinUser.WNDENUMPROC() {
                 public boolean callback(
                         final HWND hwnd, final Pointer data) {
                     /* Get the process id associated with this window. */
                     IntByReference windowPid = new IntByReference();
-                    User32.INSTANCE.GetWindowThreadProcessId(hwnd, windowPid);
+                    user32.GetWindowThreadProcessId(hwnd, windowPid);
 
                     /* Add the window to our list if it is associated
                      * with the desired process id. */
@@ -192,7 +306,7 @@ public final class ProcessUtils {
             null);
 
         /* Handle errors. */
-        if (!result && Kernel32.INSTANCE.GetLastError() != 0) {
+        if (!result && kernel32.GetLastError() != 0) {
             throw new Exception("Couldn't enumerate windows.");
         }
 
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.zip.CRC32;
+
+/**
+ * Shares the latest ProcessSnapshot between JVMs through a
+ * memory-mapped file.  One JVM publishes snapshots; any number of JVMs
+ * read them straight out of the mapping.
+ *
+ * <p>Publication is protected by a sequence counter: the publisher
+ * makes the counter odd while it rewrites the snapshot and even again
+ * once it is done, and readers retry whenever the counter is odd or has
+ * changed while they were reading.  Java 8 has no portable memory
+ * fences for mapped buffers, so each snapshot is also checksummed and
+ * readers retry on a checksum mismatch as well.
+ *
+ * <p>File layout (little-endian):
+ *
+ * <pre>
+ *   int   magic ("JPSM")
+ *   int   capacity of the snapshot area, in bytes
+ *   long  sequence
+ *   int   length of the published snapshot, in bytes
+ *   int   CRC-32 of the published snapshot
+ *   ...   encoded snapshot (see ProcessSnapshotCodec)
+ * </pre>
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class SharedProcessSnapshot {
+    /** Magic number at the start of the file. */
+    public static final int MAGIC = 0x4D53504A; /* "JPSM" */
+
+    /** Default capacity of the snapshot area, in bytes. */
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    /** Offset of the capacity field. */
+    private static final int CAPACITY_OFFSET = 4;
+
+    /** Offset of the sequence counter. */
+    private static final int SEQUENCE_OFFSET = 8;
+
+    /** Offset of the snapshot length. */
+    private static final int LENGTH_OFFSET = 16;
+
+    /** Offset of the snapshot checksum. */
+    private static final int CRC_OFFSET = 20;
+
+    /** Offset of the snapshot area. */
+    private static final int DATA_OFFSET = 24;
+
+    /** Number of times a read is retried before giving up. */
+    private static final int MAX_READ_ATTEMPTS = 1000;
+
+    /** The open file. */
+    private final RandomAccessFile file;
+
+    /** Mapping of the entire file. */
+    private final MappedByteBuffer mapping;
+
+    /** Capacity of the snapshot area, in bytes. */
+    private final int capacity;
+
+    /**
+     * Constructs a new SharedProcessSnapshot around an open mapping.
+     *
+     * @param file The open file.
+     * @param mapping Mapping of the entire file.
+     * @param capacity Capacity of the snapshot area.
+     */
+    private SharedProcessSnapshot(
+            final RandomAccessFile file,
+            final MappedByteBuffer mapping,
+            final int capacity) {
+        this.file = file;
+        this.mapping = mapping;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens (creating it if necessary) a shared snapshot file with the
+     * default capacity.
+     *
+     * @param path Path to the shared file.
+     * @return The shared snapshot.
+     * @throws IOException if the file could not be opened or is not a
+     *  shared snapshot file.
+     */
+    public static SharedProcessSnapshot open(final File path)
+            throws IOException {
+        return open(path, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Opens (creating it if necessary) a shared snapshot file.
+     *
+     * @param path Path to the shared file.
+     * @param capacity Capacity of the snapshot area to use if the file
+     *  is created; existing files keep their capacity.
+     * @return The shared snapshot.
+     * @throws IOException if the file could not be opened or is not a
+     *  shared snapshot file.
+     */
+    public static SharedProcessSnapshot open(
+            final File path, final int capacity) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer mapping;
+
+            /* Initialize new files under a lock so that two JVMs do not
+             * both try to do it. */
+            FileLock lock = channel.lock();
+            try {
+                if (file.length() == 0) {
+                    file.setLength(DATA_OFFSET + capacity);
+                    mapping = channel.map(FileChannel.MapMode.READ_WRITE,
+                            0, DATA_OFFSET + capacity);
+                    mapping.order(ByteOrder.LITTLE_ENDIAN);
+                    mapping.putInt(CAPACITY_OFFSET, capacity);
+                    mapping.putInt(0, MAGIC);
+                } else {
+                    mapping = channel.map(FileChannel.MapMode.READ_WRITE,
+                            0, file.length());
+                    mapping.order(ByteOrder.LITTLE_ENDIAN);
+                }
+            } finally {
+                lock.release();
+            }
+
+            /* Validate the header, which must fit in the file. */
+            if (mapping.capacity() < DATA_OFFSET
+                    || mapping.getInt(0) != MAGIC) {
+                throw new IOException(
+                        path + " is not a shared process snapshot file.");
+            }
+
+            int existingCapacity = mapping.getInt(CAPACITY_OFFSET);
+            if (existingCapacity < 0 || (long) DATA_OFFSET
+                    + existingCapacity > mapping.capacity()) {
+                throw new IOException(
+                        path + " is not a shared process snapshot file.");
+            }
+
+            return new SharedProcessSnapshot(file, mapping, existingCapacity);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Publishes a snapshot, replacing the previously-published one.
+     * Only one thread in one JVM may publish to a given file.
+     *
+     * @param snapshot The snapshot to publish.
+     * @throws IOException if the snapshot does not fit in the file.
+     */
+    public synchronized void publish(final ProcessSnapshot snapshot)
+            throws IOException {
+        int length = ProcessSnapshotCodec.encodedSize(snapshot);
+        if (length > capacity) {
+            throw new IOException("Snapshot needs " + length
+                    + " bytes but the shared file only holds " + capacity);
+        }
+
+        /* Mark the snapshot as being written. */
+        long sequence = mapping.getLong(SEQUENCE_OFFSET);
+        long writing = (sequence & 1) == 0 ? sequence + 1 : sequence + 2;
+        mapping.putLong(SEQUENCE_OFFSET, writing);
+
+        /* Write the snapshot and its checksum. */
+        ByteBuffer data = dataArea();
+        ProcessSnapshotCodec.encode(snapshot, data);
+        data.flip();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        mapping.putInt(LENGTH_OFFSET, length);
+        mapping.putInt(CRC_OFFSET, (int) crc.getValue());
+
+        /* Mark the snapshot as complete. */
+        mapping.putLong(SEQUENCE_OFFSET, writing + 1);
+    }
+
+    /**
+     * Reads the most recently published snapshot.
+     *
+     * @return The snapshot; null if no snapshot has been published.
+     * @throws IOException if a consistent snapshot could not be read.
+     */
+    public ProcessSnapshot read() throws IOException {
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            /* Wait for the publisher to finish writing. */
+            long sequence = mapping.getLong(SEQUENCE_OFFSET);
+            if (sequence == 0) {
+                return null;
+            }
+            if ((sequence & 1) != 0) {
+                Thread.yield();
+                continue;
+            }
+
+            /* Verify and decode the snapshot directly from the
+             * mapping. */
+            int length = mapping.getInt(LENGTH_OFFSET);
+            int expectedCrc = mapping.getInt(CRC_OFFSET);
+            ProcessSnapshot snapshot = null;
+            if (length >= 0 && length <= capacity) {
+                ByteBuffer data = dataArea();
+                data.limit(length);
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() == expectedCrc) {
+                    data.position(0);
+                    try {
+                        snapshot = ProcessSnapshotCodec.decode(data);
+                    } catch (IOException e) {
+                        snapshot = null;
+                    }
+                }
+            }
+
+            /* Return the snapshot if nothing changed while we were
+             * reading it. */
+            if (snapshot != null
+                    && mapping.getLong(SEQUENCE_OFFSET) == sequence) {
+                return snapshot;
+            }
+        }
+
+        throw new IOException("Couldn't read a consistent snapshot.");
+    }
+
+    /**
+     * Returns the current sequence number, which changes every time a
+     * snapshot is published.
+     *
+     * @return The current sequence number; zero if no snapshot has
+     *  been published.
+     */
+    public long getSequence() {
+        return mapping.getLong(SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Closes the shared file.  The mapping itself is released when it
+     * is garbage collected.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Returns a new view of the snapshot area.
+     *
+     * @return A buffer positioned at the start of the snapshot area.
+     */
+    private ByteBuffer dataArea() {
+        ByteBuffer data = mapping.duplicate();
+        data.position(DATA_OFFSET);
+        data.limit(DATA_OFFSET + capacity);
+        return data.slice();
+    }
+}
@@ -37,6 +37,7 @@ import com.sun.jna.Native;
 import com.sun.jna.WString;
 import com.sun.jna.platform.win32.BaseTSD.LONG_PTR;
 import com.sun.jna.platform.win32.WinDef.WORD;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
 import com.sun.jna.win32.StdCallLibrary;
 import com.sun.jna.win32.W32APIOptions;
 
@@ -48,7 +49,10 @@ import com.sun.jna.win32.W32APIOptions;
  */
 public interface User32
     extends StdCallLibrary,
-            com.sun.jna.platform.win32.User32 {
+            com.sun.jna.platform.win32.User32,
+            User32Clipboard,
+            User32Input,
+            User32Window {
 
     /** Instance of USER32.DLL for use in accessing native functions. */
     User32 INSTANCE = (User32) Native.loadLibrary(
@@ -150,6 +154,15 @@ public interface User32
      */
     boolean DestroyWindow(HWND hWnd);
 
+    /**
+     * Retrieves the handle to the ancestor of the specified window.
+     *
+     * @param hwnd A handle to the window.
+     * @param gaFlags The ancestor to be retrieved, such as GA_ROOT.
+     * @return The handle of the ancestor window.
+     */
+    HWND GetAncestor(HWND hwnd, int gaFlags);
+
     /**
      * Translates (maps) a virtual-key code into a scan code or
      * character value, or translates a scan code into a virtual-key
@@ -163,6 +176,18 @@ public interface User32
      */
     int MapVirtualKey(int uCode, int uMapType);
 
+    /**
+     * Posts a message to the message queue of the specified thread.
+     *
+     * @param idThread The identifier of the thread.
+     * @param Msg The type of message to be posted.
+     * @param wParam Additional message-specific information.
+     * @param lParam Additional message-specific information.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean PostThreadMessage(
+            int idThread, int Msg, WPARAM wParam, LPARAM lParam);
+
     /**
      * Registers a window class for subsequent use in calls to the
      * CreateWindow or CreateWindowEx function.
@@ -186,6 +211,33 @@ public interface User32
      */
     LRESULT SendMessage(HWND hWnd, int Msg, WPARAM wParam, LPARAM lParam);
 
+    /**
+     * Sets an event hook function for a range of events.
+     *
+     * @param eventMin The lowest event value in the range.
+     * @param eventMax The highest event value in the range.
+     * @param hmodWinEventProc Handle to the DLL that contains the hook
+     *  function; null for out-of-context hooks.
+     * @param pfnWinEventProc The event hook function.
+     * @param idProcess The process from which the hook function
+     *  receives events; zero for all processes.
+     * @param idThread The thread from which the hook function receives
+     *  events; zero for all threads.
+     * @param dwFlags Flags such as WINEVENT_OUTOFCONTEXT.
+     * @return A handle to the event hook; null if the function fails.
+     */
+    HANDLE SetWinEventHook(int eventMin, int eventMax,
+        HMODULE hmodWinEventProc, WinUser.WINEVENTPROC pfnWinEventProc,
+        int idProcess, int idThread, int dwFlags);
+
+    /**
+     * Removes an event hook function created by SetWinEventHook.
+     *
+     * @param hWinEventHook Handle to the event hook.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean UnhookWinEvent(HANDLE hWinEventHook);
+
     /**
      * Unregisters a window class.
      *
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.WString;
+import com.sun.jna.platform.win32.WinDef.HINSTANCE;
+import com.sun.jna.platform.win32.WinDef.HMENU;
+import com.sun.jna.platform.win32.WinDef.HWND;
+
+/**
+ * The subset of USER32.DLL used to read and write the clipboard,
+ * including the functions used to create and destroy the window that
+ * owns the clipboard while it is being written.  Clipboard data is
+ * exchanged as global memory handles, which are
+ * represented as Pointers to match Kernel32Memory.  User32 extends this
+ * interface, so User32.INSTANCE can be used anywhere a User32Clipboard
+ * is expected.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface User32Clipboard {
+    /** Text format; each line ends with a carriage return/linefeed
+     * combination and a null character signals the end of the data. */
+    int CF_UNICODETEXT = 13;
+
+    /**
+     * Opens the clipboard for examination and prevents other
+     * applications from modifying the clipboard content.
+     *
+     * @param hWndNewOwner A handle to the window to be associated with
+     *  the open clipboard; null to associate it with the current task.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean OpenClipboard(HWND hWndNewOwner);
+
+    /**
+     * Closes the clipboard.
+     *
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean CloseClipboard();
+
+    /**
+     * Empties the clipboard and frees handles to data in the clipboard.
+     *
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean EmptyClipboard();
+
+    /**
+     * Enumerates the data formats currently available on the
+     * clipboard.
+     *
+     * @param format A clipboard format that is known to be available,
+     *  or zero to start the enumeration.
+     * @return The clipboard format that follows the given format; zero
+     *  if there are no more formats or the function fails.
+     */
+    int EnumClipboardFormats(int format);
+
+    /**
+     * Retrieves data from the clipboard in a specified format.
+     *
+     * @param uFormat A clipboard format.
+     * @return A handle to the clipboard object in the specified format;
+     *  null if the function fails.
+     */
+    Pointer GetClipboardData(int uFormat);
+
+    /**
+     * Places data on the clipboard in a specified clipboard format.
+     * The system owns the data once the function succeeds.
+     *
+     * @param uFormat The clipboard format.
+     * @param hMem A handle to the data in the specified format.
+     * @return The handle to the data if the function succeeds; null
+     *  otherwise.
+     */
+    Pointer SetClipboardData(int uFormat, Pointer hMem);
+
+    /**
+     * Creates an overlapped, pop-up, or child window with an extended
+     * window style.
+     *
+     * @param dwExStyle The extended window style of the window being
+     *  created
+     * @param lpClassName A string or class atom created by a previous
+     *  call to RegisterClass or RegisterClassEx.
+     * @param lpWindowName The window name.
+     * @param dwStyle The style of the window being created.
+     * @param x The initial horizontal position of the window.
+     * @param y The initial vertical position of the window.
+     * @param nWidth The width, in device units, of the window.
+     * @param nHeight The height, in device units, of the window.
+     * @param hWndParent A handle to the parent or owner window of the
+     *  window being created; HWND_MESSAGE for a message-only window.
+     * @param hMenu A handle to a menu, or specifies a child-window
+     *  identifier, depending on the window style.
+     * @param hInstance A handle to the instance of the module to be
+     *  associated with the window
+     * @param lpParam Pointer to a value to be passed to the window
+     *  through the CREATESTRUCT structure.
+     * @return The handle to the new window on success; null otherwise.
+     */
+    HWND CreateWindowEx(int dwExStyle, WString lpClassName,
+        String lpWindowName, int dwStyle, int x, int y, int nWidth,
+        int nHeight, HWND hWndParent, HMENU hMenu, HINSTANCE hInstance,
+        User32.LPVOID lpParam);
+
+    /**
+     * Destroys the specified window.
+     *
+     * @param hWnd A handle to the window to be destroyed.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean DestroyWindow(HWND hWnd);
+}
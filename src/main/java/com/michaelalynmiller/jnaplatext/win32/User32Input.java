@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.LRESULT;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/**
+ * The subset of USER32.DLL used to synthesize keyboard input and to
+ * synchronize with the window that receives it.  PostMessage is bound
+ * by its Unicode name, PostMessageW, so that its result can be returned
+ * without clashing with the JNA platform binding, which discards it.  User32
+ * extends this interface, so User32.INSTANCE can be used anywhere a
+ * User32Input is expected; other implementations make it possible to
+ * drive the typing code without loading USER32.DLL.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface User32Input {
+    /**
+     * Places a message in the message queue associated with the thread
+     * that created the specified window and returns without waiting
+     * for the thread to process the message.
+     *
+     * @param hWnd A handle to the window whose window procedure is to
+     *  receive the message.
+     * @param msg The message to be posted.
+     * @param wParam Additional message-specific information.
+     * @param lParam Additional message-specific information.
+     * @return true if the message was posted; false if it was not, for
+     *  example because the window's message queue is full.
+     */
+    boolean PostMessageW(HWND hWnd, int msg, WPARAM wParam, LPARAM lParam);
+
+    /**
+     * Sends the specified message to a window and waits, up to the
+     * given time-out, for the window procedure to process the message.
+     * A message that times out stays in the receiving thread's queue
+     * and may still be processed later.
+     *
+     * @param hWnd A handle to the window whose window procedure will
+     *  receive the message.
+     * @param Msg The message to be sent.
+     * @param wParam Additional message-specific information.
+     * @param lParam Additional message-specific information.
+     * @param fuFlags The behavior of this function, such as
+     *  SMTO_ABORTIFHUNG.
+     * @param uTimeout The duration of the time-out period, in
+     *  milliseconds.
+     * @param lpdwResult Receives the result of the message processing;
+     *  may be null.
+     * @return Nonzero if the function succeeds; zero if the function
+     *  fails or times out.
+     */
+    LRESULT SendMessageTimeout(HWND hWnd, int Msg, WPARAM wParam,
+        LPARAM lParam, int fuFlags, int uTimeout, Pointer lpdwResult);
+
+    /**
+     * Translates (maps) a virtual-key code into a scan code or
+     * character value, or translates a scan code into a virtual-key
+     * code.
+     *
+     * @param uCode The virtual key code or scan code for a key.
+     * @param uMapType The translation to be performed.
+     * @return The return value is either a scan code, a virtual-key
+     *  code, or a character value, depending on the value of uCode and
+     *  uMapType. If there is no translation, the return value is zero.
+     */
+    int MapVirtualKey(int uCode, int uMapType);
+
+    /**
+     * Translates a character to the corresponding virtual-key code and
+     * shift state for the current keyboard.
+     *
+     * @param ch The character to be translated into a virtual-key code.
+     * @return On success, the low-order byte contains the virtual-key
+     *  code and the high-order byte contains the shift state; -1 on
+     *  failure.
+     */
+    short VkKeyScan(char ch);
+}
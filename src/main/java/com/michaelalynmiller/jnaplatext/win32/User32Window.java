@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * The subset of USER32.DLL used to enumerate and describe top-level
+ * windows.
+ * User32 extends this interface, so User32.INSTANCE can be used
+ * anywhere a User32Window is expected; other implementations make it
+ * possible to drive the window utilities without loading USER32.DLL.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface User32Window {
+    /**
+     * Enumerates all top-level windows on the screen by passing the
+     * handle to each window, in turn, to an application-defined
+     * callback function.
+     *
+     * @param lpEnumFunc The callback function.
+     * @param data An application-defined value to be passed to the
+     *  callback function.
+     * @return true if the function succeeds, false otherwise.
+     */
+    boolean EnumWindows(
+            com.sun.jna.platform.win32.WinUser.WNDENUMPROC lpEnumFunc,
+            Pointer data);
+
+    /**
+     * Retrieves the identifier of the thread that created the specified
+     * window and, optionally, the identifier of the process that
+     * created the window.
+     *
+     * @param hWnd A handle to the window.
+     * @param lpdwProcessId On output, the process identifier; may be
+     *  null.
+     * @return The identifier of the thread that created the window;
+     *  zero if the window handle is invalid.
+     */
+    int GetWindowThreadProcessId(HWND hWnd, IntByReference lpdwProcessId);
+
+    /**
+     * Copies the text of the specified window's title bar into a
+     * buffer.
+     *
+     * @param hWnd A handle to the window.
+     * @param lpString The buffer that will receive the text, including
+     *  a terminating null character.
+     * @param nMaxCount The maximum number of characters to copy,
+     *  including the null character.
+     * @return The length of the copied string, not including the null
+     *  character; zero if the window has no title or the handle is
+     *  invalid.
+     */
+    int GetWindowText(HWND hWnd, char[] lpString, int nMaxCount);
+}
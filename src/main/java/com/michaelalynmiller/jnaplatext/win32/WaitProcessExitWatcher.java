@@ -0,0 +1,565 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinBase;
+import com.sun.jna.platform.win32.WinError;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+import com.sun.jna.ptr.IntByReference;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessExitWatcher;
+
+/**
+ * Watches Windows processes for exit by waiting on their process
+ * handles.
+ *
+ * <p>WaitForMultipleObjects can wait for at most 64 handles, so the
+ * watched processes are spread across waiter threads that each wait
+ * for up to 63 process handles plus an auto-reset event that is used
+ * to hand the thread new handles, withdraw handles and shut it down.
+ * Waiter threads are started as they are needed and exit once they
+ * have no handles left, so 1000 watched processes need 16 threads, all
+ * of them blocked in the kernel until a process exits.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class WaitProcessExitWatcher implements ProcessExitWatcher {
+    /** Process handles per waiter thread; the remaining wait slot holds
+     * the thread's wake event. */
+    public static final int HANDLES_PER_WAITER
+        = Kernel32Wait.MAXIMUM_WAIT_OBJECTS - 1;
+
+    /** Required to wait for a process handle. */
+    private static final int SYNCHRONIZE = 0x00100000;
+
+    /** Milliseconds to pause after a wait fails for no visible reason. */
+    private static final long WAIT_RETRY_DELAY = 100;
+
+    /** Reports waits that fail and listeners that cannot be run. */
+    private static final Logger LOGGER
+        = Logger.getLogger(WaitProcessExitWatcher.class.getName());
+
+    /** KERNEL32 functions used to open and query processes. */
+    private final Kernel32Process kernel32;
+
+    /** KERNEL32 functions used to wait for processes. */
+    private final Kernel32Wait kernel32Wait;
+
+    /** Runs listeners. */
+    private final Executor executor;
+
+    /** Guards the watches, the waiters and their pending changes. */
+    private final Object lock = new Object();
+
+    /** Watched processes by process id. */
+    private final Map<Integer, Watch> watches = new HashMap<Integer, Watch>();
+
+    /** Running waiter threads. */
+    private final List<Waiter> waiters = new ArrayList<Waiter>();
+
+    /** Number of waiter threads started so far, used to name them. */
+    private int waitersStarted;
+
+    /** true once the watcher has been closed. */
+    private boolean closed;
+
+    /** true once a rejected listener has been logged. */
+    private final AtomicBoolean rejectionLogged = new AtomicBoolean();
+
+    /**
+     * Constructs a new WaitProcessExitWatcher.
+     *
+     * @param executor Runs listeners.
+     */
+    public WaitProcessExitWatcher(final Executor executor) {
+        this(Kernel32.INSTANCE, Kernel32.INSTANCE, executor);
+    }
+
+    /**
+     * Constructs a new WaitProcessExitWatcher that uses the given
+     * KERNEL32 functions.
+     *
+     * @param kernel32 KERNEL32 functions used to open and query
+     *  processes.
+     * @param kernel32Wait KERNEL32 functions used to wait for
+     *  processes.
+     * @param executor Runs listeners.
+     */
+    public WaitProcessExitWatcher(
+            final Kernel32Process kernel32,
+            final Kernel32Wait kernel32Wait,
+            final Executor executor) {
+        this.kernel32 = kernel32;
+        this.kernel32Wait = kernel32Wait;
+        this.executor = executor;
+    }
+
+    /** {@inheritDoc} */
+    public boolean watch(final int processId, final Listener listener)
+            throws IOException {
+        /* Share the existing watch, if any. */
+        synchronized (this.lock) {
+            checkOpen();
+            Watch watch = this.watches.get(processId);
+            if (watch != null) {
+                watch.listeners.add(listener);
+                return true;
+            }
+        }
+
+        /* Open the process outside of the lock. */
+        HANDLE hProcess = this.kernel32.OpenProcess(
+                SYNCHRONIZE
+                | ProcessHandleCache.PROCESS_QUERY_LIMITED_INFORMATION,
+                false, processId);
+        if (hProcess == null) {
+            return false;
+        }
+
+        synchronized (this.lock) {
+            /* Another thread may have closed the watcher or started
+             * watching the process in the meantime. */
+            Watch watch = this.closed ? null : this.watches.get(processId);
+            if (this.closed || watch != null) {
+                this.kernel32.CloseHandle(hProcess);
+                checkOpen();
+                watch.listeners.add(listener);
+                return true;
+            }
+
+            /* Find a waiter with room for the handle. */
+            Waiter waiter = null;
+            for (Waiter candidate : this.waiters) {
+                if (candidate.assigned < HANDLES_PER_WAITER) {
+                    waiter = candidate;
+                    break;
+                }
+            }
+            if (waiter == null) {
+                try {
+                    waiter = startWaiter();
+                } catch (IOException e) {
+                    this.kernel32.CloseHandle(hProcess);
+                    throw e;
+                }
+            }
+
+            /* Hand the handle to the waiter. */
+            watch = new Watch(processId, hProcess, waiter, listener);
+            this.watches.put(processId, watch);
+            waiter.assigned++;
+            waiter.pendingAdds.add(watch);
+            this.kernel32Wait.SetEvent(waiter.event);
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean unwatch(final int processId) {
+        synchronized (this.lock) {
+            Watch watch = this.watches.remove(processId);
+            if (watch == null) {
+                return false;
+            }
+
+            /* The waiter closes the handle once it is no longer
+             * waiting for it. */
+            watch.removed = true;
+            Waiter waiter = watch.waiter;
+            waiter.assigned--;
+            waiter.pendingRemoves.add(watch);
+            this.kernel32Wait.SetEvent(waiter.event);
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int getWatchedCount() {
+        synchronized (this.lock) {
+            return this.watches.size();
+        }
+    }
+
+    /**
+     * Returns the number of running waiter threads.
+     *
+     * @return The number of waiter threads.
+     */
+    public int getWaiterCount() {
+        synchronized (this.lock) {
+            return this.waiters.size();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void close() {
+        List<Thread> threads = new ArrayList<Thread>();
+        synchronized (this.lock) {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+            this.watches.clear();
+            for (Waiter waiter : this.waiters) {
+                threads.add(waiter.thread);
+                this.kernel32Wait.SetEvent(waiter.event);
+            }
+        }
+
+        /* Wait for the waiters to close their handles. */
+        for (Thread thread : threads) {
+            if (thread == Thread.currentThread()) {
+                continue;
+            }
+
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Throws if the watcher has been closed.  Must be called with the
+     * lock held.
+     *
+     * @throws IOException if the watcher has been closed.
+     */
+    private void checkOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("Process exit watcher is closed.");
+        }
+    }
+
+    /**
+     * Starts a new waiter thread.  Must be called with the lock held.
+     *
+     * @return The new waiter.
+     * @throws IOException if the waiter's event could not be created.
+     */
+    private Waiter startWaiter() throws IOException {
+        HANDLE event = this.kernel32Wait.CreateEvent(null, false, false, null);
+        if (event == null) {
+            throw new IOException("Couldn't create waiter event: error "
+                    + this.kernel32.GetLastError());
+        }
+
+        Waiter waiter = new Waiter(event);
+        waiter.thread = new Thread(waiter,
+                "jnaplatext-exit-waiter-" + ++this.waitersStarted);
+        waiter.thread.setDaemon(true);
+        this.waiters.add(waiter);
+        waiter.thread.start();
+        return waiter;
+    }
+
+    /**
+     * Reports the exit of a watched process, unless it has been
+     * unwatched.  Called by the process's waiter once the process
+     * handle has been signaled.
+     *
+     * @param watch The process's watch.
+     */
+    private void exited(final Watch watch) {
+        List<Listener> listeners;
+        synchronized (this.lock) {
+            if (watch.removed) {
+                return;
+            }
+
+            watch.removed = true;
+            this.watches.remove(watch.processId);
+            watch.waiter.assigned--;
+            listeners = new ArrayList<Listener>(watch.listeners);
+        }
+
+        IntByReference exitCode = new IntByReference();
+        final int code = this.kernel32.GetExitCodeProcess(
+                watch.handle, exitCode)
+            ? exitCode.getValue() : EXIT_CODE_UNKNOWN;
+        this.kernel32.CloseHandle(watch.handle);
+
+        for (final Listener listener : listeners) {
+            try {
+                this.executor.execute(new Runnable() {
+                    public void run() {
+                        listener.processExited(watch.processId, code);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                /* Keep going so that the remaining listeners and exits
+                 * are still handled, but only report the first
+                 * rejection. */
+                if (this.rejectionLogged.compareAndSet(false, true)) {
+                    LOGGER.log(Level.WARNING,
+                            "Executor rejected a process exit listener.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A watched process.  The mutable fields are guarded by the
+     * watcher's lock.
+     */
+    private static final class Watch {
+        /** Process id. */
+        private final int processId;
+
+        /** Process handle. */
+        private final HANDLE handle;
+
+        /** The waiter that waits for the handle. */
+        private final Waiter waiter;
+
+        /** Listeners to call when the process exits. */
+        private final List<Listener> listeners = new ArrayList<Listener>(1);
+
+        /** true once the process has exited or been unwatched. */
+        private boolean removed;
+
+        /**
+         * Constructs a new Watch.
+         *
+         * @param processId Process id.
+         * @param handle Process handle.
+         * @param waiter The waiter that waits for the handle.
+         * @param listener The first listener.
+         */
+        Watch(final int processId, final HANDLE handle,
+                final Waiter waiter, final Listener listener) {
+            this.processId = processId;
+            this.handle = handle;
+            this.waiter = waiter;
+            this.listeners.add(listener);
+        }
+    }
+
+    /**
+     * A thread that waits for up to HANDLES_PER_WAITER process handles.
+     * The event, the pending lists and the assigned count are guarded
+     * by the watcher's lock; the wait arrays belong to the thread.
+     */
+    private final class Waiter implements Runnable {
+        /** Auto-reset event that wakes the thread. */
+        private HANDLE event;
+
+        /** Watches handed to the thread but not yet waited for. */
+        private final List<Watch> pendingAdds = new ArrayList<Watch>();
+
+        /** Unwatched processes whose handles the thread must close. */
+        private final List<Watch> pendingRemoves = new ArrayList<Watch>();
+
+        /** Number of live watches assigned to the thread. */
+        private int assigned;
+
+        /** The thread. */
+        private Thread thread;
+
+        /** Handles being waited for; slot 0 holds the event. */
+        private final HANDLE[] handles
+            = new HANDLE[Kernel32Wait.MAXIMUM_WAIT_OBJECTS];
+
+        /** The watch of each handle. */
+        private final Watch[] slots
+            = new Watch[Kernel32Wait.MAXIMUM_WAIT_OBJECTS];
+
+        /** Number of handles being waited for, including the event. */
+        private int count;
+
+        /**
+         * Constructs a new Waiter.
+         *
+         * @param event Auto-reset event that wakes the thread.
+         */
+        Waiter(final HANDLE event) {
+            this.event = event;
+            this.handles[0] = event;
+            this.count = 1;
+        }
+
+        /**
+         * Waits for processes until there are none left or the watcher
+         * is closed.
+         */
+        public void run() {
+            while (applyPendingChanges()) {
+                int result = WaitProcessExitWatcher.this.kernel32Wait
+                    .WaitForMultipleObjects(
+                        this.count, this.handles, false, WinBase.INFINITE);
+                int index = result - WinBase.WAIT_OBJECT_0;
+                if (index == 0) {
+                    continue;
+                }
+
+                if (index > 0 && index < this.count) {
+                    exited(this.slots[index]);
+                    removeSlot(index);
+                    continue;
+                }
+
+                /* The wait failed, which usually means that one of the
+                 * handles is no longer valid; drop the handles that are
+                 * signaled or invalid. */
+                int error = WaitProcessExitWatcher.this.kernel32
+                    .GetLastError();
+                boolean dropped = false;
+                for (int i = this.count - 1; i > 0; i--) {
+                    if (WaitProcessExitWatcher.this.kernel32Wait
+                            .WaitForSingleObject(this.handles[i], 0)
+                            != WinError.WAIT_TIMEOUT) {
+                        exited(this.slots[i]);
+                        removeSlot(i);
+                        dropped = true;
+                    }
+                }
+
+                if (!dropped) {
+                    /* Every process is still running, so the fault is
+                     * our own event or the wait itself.  Keep the
+                     * watches, replace the event and try again after a
+                     * pause so that a persistent failure does not
+                     * spin. */
+                    LOGGER.warning("Wait for process exits failed: error "
+                            + error + "; replacing the waiter event.");
+                    replaceEvent();
+                    try {
+                        Thread.sleep(WAIT_RETRY_DELAY);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Replaces the waiter's event with a new one and closes the old
+         * event.  The new event is signaled so that changes that were
+         * signaled on the old event are still applied.
+         */
+        private void replaceEvent() {
+            HANDLE newEvent = WaitProcessExitWatcher.this.kernel32Wait
+                .CreateEvent(null, false, true, null);
+            if (newEvent == null) {
+                LOGGER.warning("Couldn't create waiter event: error "
+                        + WaitProcessExitWatcher.this.kernel32
+                            .GetLastError());
+                return;
+            }
+
+            synchronized (WaitProcessExitWatcher.this.lock) {
+                WaitProcessExitWatcher.this.kernel32.CloseHandle(this.event);
+                this.event = newEvent;
+                this.handles[0] = newEvent;
+            }
+        }
+
+        /**
+         * Applies the watcher's pending changes to the wait arrays.
+         * When the waiter has nothing left to wait for, or the watcher
+         * has been closed, this closes the waiter's handles and
+         * retires it.
+         *
+         * @return true if the waiter should keep waiting, false if it
+         *  has been retired.
+         */
+        private boolean applyPendingChanges() {
+            synchronized (WaitProcessExitWatcher.this.lock) {
+                for (Watch watch : this.pendingAdds) {
+                    this.handles[this.count] = watch.handle;
+                    this.slots[this.count] = watch;
+                    this.count++;
+                }
+                this.pendingAdds.clear();
+
+                for (Watch watch : this.pendingRemoves) {
+                    for (int i = 1; i < this.count; i++) {
+                        if (this.slots[i] == watch) {
+                            removeSlot(i);
+                            break;
+                        }
+                    }
+                    WaitProcessExitWatcher.this.kernel32.CloseHandle(
+                            watch.handle);
+                }
+                this.pendingRemoves.clear();
+
+                if (!WaitProcessExitWatcher.this.closed
+                        && this.assigned > 0) {
+                    return true;
+                }
+
+                /* Retire the waiter. */
+                WaitProcessExitWatcher.this.waiters.remove(this);
+                for (int i = 1; i < this.count; i++) {
+                    WaitProcessExitWatcher.this.kernel32.CloseHandle(
+                            this.handles[i]);
+                }
+                WaitProcessExitWatcher.this.kernel32.CloseHandle(this.event);
+                return false;
+            }
+        }
+
+        /**
+         * Removes a handle from the wait arrays by moving the last
+         * handle into its slot.
+         *
+         * @param index Index of the handle.
+         */
+        private void removeSlot(final int index) {
+            this.count--;
+            this.handles[index] = this.handles[this.count];
+            this.slots[index] = this.slots[this.count];
+            this.handles[this.count] = null;
+            this.slots[this.count] = null;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Arrays;
+import java.util.List;
+
+/* JNA imports. */
+import com.sun.jna.Structure;
+
+/**
+ * Provides JNA access to the Win32 console types in WINCON.H.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface WinCon {
+    /** Size, in bytes, of a CHAR_INFO structure: a UTF-16 character
+     * followed by its attributes. */
+    int CHAR_INFO_SIZE = 4;
+
+    /**
+     * Defines the coordinates of a character cell in a console screen
+     * buffer.
+     */
+    public static class COORD extends Structure {
+        /**
+         * The by-value version of this structure.
+         */
+        public static class ByValue
+                extends COORD
+                implements Structure.ByValue { }
+
+        /** The horizontal coordinate or column value. */
+        public short X;
+
+        /** The vertical coordinate or row value. */
+        public short Y;
+
+        /**
+         * Returns the serialized order of this structure's fields.
+         *
+         * @return The serialized order of this structure's fields.
+         * @see com.sun.jna.Structure#getFieldOrder()
+         */
+        @Override
+        protected final List getFieldOrder() {
+            return Arrays.asList(new String[] {"X", "Y" });
+        }
+    }
+
+    /**
+     * Defines the coordinates of the upper left and lower right corners
+     * of a rectangle.
+     */
+    public static class SMALL_RECT extends Structure {
+        /** The x-coordinate of the upper left corner. */
+        public short Left;
+
+        /** The y-coordinate of the upper left corner. */
+        public short Top;
+
+        /** The x-coordinate of the lower right corner. */
+        public short Right;
+
+        /** The y-coordinate of the lower right corner. */
+        public short Bottom;
+
+        /**
+         * Returns the serialized order of this structure's fields.
+         *
+         * @return The serialized order of this structure's fields.
+         * @see com.sun.jna.Structure#getFieldOrder()
+         */
+        @Override
+        protected final List getFieldOrder() {
+            return Arrays.asList(new String[] {"Left", "Top", "Right",
+                    "Bottom" });
+        }
+    }
+
+    /**
+     * Contains information about a console screen buffer.
+     */
+    public static class CONSOLE_SCREEN_BUFFER_INFO extends Structure {
+        /** The size of the console screen buffer, in character columns
+         * and rows. */
+        public COORD dwSize;
+
+        /** The column and row coordinates of the cursor. */
+        public COORD dwCursorPosition;
+
+        /** The attributes of the characters written to the screen
+         * buffer. */
+        public short wAttributes;
+
+        /** The screen buffer coordinates of the upper-left and
+         * lower-right corners of the display window. */
+        public SMALL_RECT srWindow;
+
+        /** The maximum size of the console window. */
+        public COORD dwMaximumWindowSize;
+
+        /**
+         * Returns the serialized order of this structure's fields.
+         *
+         * @return The serialized order of this structure's fields.
+         * @see com.sun.jna.Structure#getFieldOrder()
+         */
+        @Override
+        protected final List getFieldOrder() {
+            return Arrays.asList(new String[] {"dwSize", "dwCursorPosition",
+                    "wAttributes", "srWindow", "dwMaximumWindowSize" });
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+
+/**
+ * Delivers window events from out-of-context WinEvent hooks.  The pump
+ * thread installs hooks for EVENT_OBJECT_CREATE, EVENT_OBJECT_DESTROY
+ * and EVENT_OBJECT_NAMECHANGE and then runs a message loop; Windows
+ * queues the events to that thread and calls the hook function from
+ * within GetMessage, so events arrive in order and are never delivered
+ * concurrently.  Events for parts of windows (carets, scroll bars and
+ * the like) and creation events for child windows are filtered out.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class WinEventHookSource implements WindowEventSource {
+    /** USER32 functions used to hook events and pump messages. */
+    private final User32 user32;
+
+    /** The pump thread; null until the source is started. */
+    private Thread thread;
+
+    /** Thread id of the pump thread. */
+    private volatile int threadId;
+
+    /** Reason that the hooks could not be installed; null if they
+     * were. */
+    private volatile IOException failure;
+
+    /** The hook function; referenced here so that it is not garbage
+     * collected while the hooks are installed. */
+    private WinUser.WINEVENTPROC hookProc;
+
+    /**
+     * Constructs a new WinEventHookSource.
+     */
+    public WinEventHookSource() {
+        this.user32 = User32.INSTANCE;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void start(final Handler handler)
+            throws IOException {
+        if (this.thread != null) {
+            throw new IllegalStateException("Already started.");
+        }
+
+        final CountDownLatch started = new CountDownLatch(1);
+        this.thread = new Thread(new Runnable() {
+            public void run() {
+                pump(handler, started);
+            }
+        }, "jnaplatext-winevent-pump");
+        this.thread.setDaemon(true);
+        this.thread.start();
+
+        try {
+            started.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting.");
+        }
+
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void stop() {
+        if (this.thread == null || !this.thread.isAlive()) {
+            return;
+        }
+
+        this.user32.PostThreadMessage(
+            this.threadId, WinUser.WM_QUIT, new WPARAM(0), new LPARAM(0));
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The body of the pump thread.
+     *
+     * @param handler Receives the events.
+     * @param started Released once the handler has been started or the
+     *  hooks could not be installed.
+     */
+    private void pump(final Handler handler, final CountDownLatch started) {
+        this.threadId = Kernel32.INSTANCE.GetCurrentThreadId();
+        this.hookProc = new WinUser.WINEVENTPROC() {
+            public void callback(final HANDLE hWinEventHook,
+                    final int event, final HWND hwnd, final int idObject,
+                    final int idChild, final int dwEventThread,
+                    final int dwmsEventTime) {
+                if (hwnd == null
+                        || idObject != WinUser.OBJID_WINDOW
+                        || idChild != WinUser.CHILDID_SELF) {
+                    return;
+                }
+
+                switch (event) {
+                case WinUser.EVENT_OBJECT_CREATE:
+                    if (hwnd.equals(user32.GetAncestor(
+                                    hwnd, WinUser.GA_ROOT))) {
+                        handler.windowCreated(hwnd);
+                    }
+                    break;
+                case WinUser.EVENT_OBJECT_DESTROY:
+                    handler.windowDestroyed(hwnd);
+                    break;
+                case WinUser.EVENT_OBJECT_NAMECHANGE:
+                    handler.windowNameChanged(hwnd);
+                    break;
+                default:
+                    break;
+                }
+            }
+        };
+
+        /* Install the hooks; the message queue that receives the
+         * events is created by the first of these calls. */
+        HANDLE lifecycleHook = this.user32.SetWinEventHook(
+                WinUser.EVENT_OBJECT_CREATE, WinUser.EVENT_OBJECT_DESTROY,
+                null, this.hookProc, 0, 0, WinUser.WINEVENT_OUTOFCONTEXT);
+        HANDLE nameHook = this.user32.SetWinEventHook(
+                WinUser.EVENT_OBJECT_NAMECHANGE,
+                WinUser.EVENT_OBJECT_NAMECHANGE,
+                null, this.hookProc, 0, 0, WinUser.WINEVENT_OUTOFCONTEXT);
+
+        try {
+            if (lifecycleHook == null || nameHook == null) {
+                this.failure = new IOException(
+                        "Couldn't install WinEvent hooks: error "
+                        + Kernel32.INSTANCE.GetLastError());
+                return;
+            }
+
+            try {
+                handler.started();
+            } catch (RuntimeException e) {
+                this.failure = new IOException(
+                        "Window event handler failed to start.", e);
+                return;
+            } finally {
+                started.countDown();
+            }
+
+            /* Pump messages; the hook function is called from within
+             * GetMessage. */
+            WinUser.MSG msg = new WinUser.MSG();
+            while (this.user32.GetMessage(msg, null, 0, 0) > 0) {
+                this.user32.TranslateMessage(msg);
+                this.user32.DispatchMessage(msg);
+            }
+        } finally {
+            if (lifecycleHook != null) {
+                this.user32.UnhookWinEvent(lifecycleHook);
+            }
+            if (nameHook != null) {
+                this.user32.UnhookWinEvent(nameHook);
+            }
+            started.countDown();
+        }
+    }
+}
@@ -71,6 +71,10 @@ public interface WinUser
      * value is passed to. */
     int CW_USEDEFAULT = 0x80000000;
 
+    /** Parent window that makes the new window a message-only window,
+     * which is invisible and is not enumerated by EnumWindows. */
+    HWND HWND_MESSAGE = new HWND(Pointer.createConstant(-3));
+
 
     /* -----------------------------------------------------------------
      * Window Messages
@@ -86,6 +90,55 @@ public interface WinUser
     /** Sent to pass data to another application. */
     int WM_COPYDATA = 0x004A;
 
+    /** Sent when the user selects a command item from a menu or when
+     * an accelerator keystroke is translated. */
+    int WM_COMMAND = 0x0111;
+
+
+    /* -----------------------------------------------------------------
+     * SendMessageTimeout flags
+     */
+
+    /** Returns without waiting for the time-out period to elapse if the
+     * receiving thread appears to be hung. */
+    int SMTO_ABORTIFHUNG = 0x0002;
+
+
+    /* -----------------------------------------------------------------
+     * WinEvents
+     */
+
+    /** An object has been created. */
+    int EVENT_OBJECT_CREATE = 0x8000;
+
+    /** An object has been destroyed. */
+    int EVENT_OBJECT_DESTROY = 0x8001;
+
+    /** An object's Name property has changed; for a window, its
+     * title. */
+    int EVENT_OBJECT_NAMECHANGE = 0x800C;
+
+    /** The callback function is not mapped into the address space of
+     * the process that generates the event; events are delivered
+     * through the hooking thread's message queue. */
+    int WINEVENT_OUTOFCONTEXT = 0x0000;
+
+    /** Prevents this instance of the hook from receiving the events
+     * that are generated by threads in this process. */
+    int WINEVENT_SKIPOWNPROCESS = 0x0002;
+
+    /** The event concerns the window itself rather than one of its
+     * parts. */
+    int OBJID_WINDOW = 0x00000000;
+
+    /** The event was triggered by the object itself rather than one
+     * of its children. */
+    int CHILDID_SELF = 0;
+
+    /** GetAncestor: retrieves the root window by walking the chain of
+     * parent windows. */
+    int GA_ROOT = 2;
+
 
     /* -----------------------------------------------------------------
      * Window Styles
@@ -295,4 +348,27 @@ public interface WinUser
          */
         LRESULT callback(HWND hwnd, int uMsg, WPARAM wParam, LPARAM lParam);
     }
+
+    /**
+     * An application-defined function that the system calls in
+     * response to events generated by an accessible object.
+     */
+    public interface WINEVENTPROC extends StdCallCallback {
+        /**
+         * Handles an event.
+         *
+         * @param hWinEventHook Handle to the event hook.
+         * @param event The event that occurred.
+         * @param hwnd Handle to the window that generated the event.
+         * @param idObject The object associated with the event.
+         * @param idChild Whether the event was triggered by the object
+         *  or one of its children.
+         * @param dwEventThread The thread that generated the event.
+         * @param dwmsEventTime The time, in milliseconds, at which the
+         *  event was generated.
+         */
+        void callback(HANDLE hWinEventHook, int event, HWND hwnd,
+                int idObject, int idChild, int dwEventThread,
+                int dwmsEventTime);
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinDef.HWND;
+
+/**
+ * Delivers top-level window lifecycle events on a dedicated pump
+ * thread.  Events are delivered one at a time, in the order in which
+ * they occurred.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public interface WindowEventSource {
+    /**
+     * Starts the pump thread and waits until the handler's started
+     * method has returned.  A source can be started once.
+     *
+     * @param handler Receives the events.
+     * @throws IOException if the events could not be subscribed to.
+     */
+    void start(Handler handler) throws IOException;
+
+    /**
+     * Stops delivering events and waits for the pump thread to exit.
+     * Events that have not yet been delivered are discarded.
+     */
+    void stop();
+
+    /**
+     * Receives window events.  Every method is called on the pump
+     * thread.
+     */
+    interface Handler {
+        /**
+         * Called once the source is subscribed to events, before any
+         * event is delivered.  Events that occur while this method runs
+         * are delivered after it returns, so a handler can take an
+         * initial snapshot here without missing or misordering any
+         * change.
+         */
+        void started();
+
+        /**
+         * Called when a top-level window has been created.
+         *
+         * @param hwnd The window.
+         */
+        void windowCreated(HWND hwnd);
+
+        /**
+         * Called when a window has been destroyed.  This may be called
+         * for windows that are not top-level windows.
+         *
+         * @param hwnd The window, which is no longer valid.
+         */
+        void windowDestroyed(HWND hwnd);
+
+        /**
+         * Called when a window's title has changed.  This may be called
+         * for windows that are not top-level windows.
+         *
+         * @param hwnd The window.
+         */
+        void windowNameChanged(HWND hwnd);
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * A live index of the top-level windows on the desktop.  The registry
+ * enumerates the windows once and then follows window creation,
+ * destruction and title changes through a WindowEventSource, so
+ * lookups never call into USER32 and never block: they read maps that
+ * only the event source's pump thread writes.
+ *
+ * <p>The initial enumeration runs on the pump thread before any event
+ * is delivered, so a window that is created or destroyed during
+ * enumeration is still recorded correctly.  Lookups reflect events that
+ * the pump thread has already handled and may briefly lag the desktop.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+public final class WindowRegistry implements Closeable {
+    /** Maximum length, in characters, of the window titles that are
+     * recorded; longer titles are truncated. */
+    public static final int MAX_TITLE_LENGTH = 512;
+
+    /** Shared empty window array. */
+    private static final HWND[] NO_WINDOWS = new HWND[0];
+
+    /** USER32 functions used to query windows; called only on the pump
+     * thread. */
+    private final User32Window user32;
+
+    /** Delivers window events. */
+    private final WindowEventSource eventSource;
+
+    /** Known windows, by handle. */
+    private final ConcurrentHashMap<HWND, WindowInfo> windows
+        = new ConcurrentHashMap<HWND, WindowInfo>();
+
+    /** Each process's windows, by process id.  The arrays are replaced,
+     * never modified, so readers can use them without locking. */
+    private final ConcurrentHashMap<Integer, HWND[]> processWindows
+        = new ConcurrentHashMap<Integer, HWND[]>();
+
+    /** Receives the window's process id; used only on the pump
+     * thread. */
+    private final IntByReference processIdRef = new IntByReference();
+
+    /** Receives window titles; used only on the pump thread. */
+    private final char[] titleBuffer = new char[MAX_TITLE_LENGTH + 1];
+
+    /**
+     * Constructs a new WindowRegistry.
+     *
+     * @param user32 USER32 functions used to query windows.
+     * @param eventSource Delivers window events.
+     */
+    private WindowRegistry(
+            final User32Window user32,
+            final WindowEventSource eventSource) {
+        this.user32 = user32;
+        this.eventSource = eventSource;
+    }
+
+    /**
+     * Opens a registry of the desktop's windows that is kept current by
+     * WinEvent hooks.
+     *
+     * @return The registry, seeded with the current windows.
+     * @throws IOException if the hooks could not be installed.
+     */
+    public static WindowRegistry open() throws IOException {
+        return open(User32.INSTANCE, new WinEventHookSource());
+    }
+
+    /**
+     * Opens a registry that uses the given USER32 functions and event
+     * source.  This method returns once the registry has been seeded.
+     *
+     * @param user32 USER32 functions used to query windows.
+     * @param eventSource An unstarted source of window events.
+     * @return The registry, seeded with the current windows.
+     * @throws IOException if the event source could not be started.
+     */
+    public static WindowRegistry open(
+            final User32Window user32,
+            final WindowEventSource eventSource) throws IOException {
+        final WindowRegistry registry = new WindowRegistry(
+                user32, eventSource);
+        eventSource.start(new WindowEventSource.Handler() {
+            public void started() {
+                registry.seed();
+            }
+
+            public void windowCreated(final HWND hwnd) {
+                registry.add(hwnd);
+            }
+
+            public void windowDestroyed(final HWND hwnd) {
+                registry.remove(hwnd);
+            }
+
+            public void windowNameChanged(final HWND hwnd) {
+                registry.rename(hwnd);
+            }
+        });
+        return registry;
+    }
+
+    /**
+     * Returns the top-level windows owned by the given process, in the
+     * order in which the registry learned of them.
+     *
+     * @param processId Process id whose windows should be returned.
+     * @return An unmodifiable list of the process's windows; empty if
+     *  the process has no windows.
+     */
+    public List<HWND> getProcessWindows(final int processId) {
+        HWND[] hwnds = this.processWindows.get(processId);
+        if (hwnds == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(hwnds));
+    }
+
+    /**
+     * Returns the information recorded for a window.
+     *
+     * @param hwnd The window.
+     * @return The window's information; null if the window is not a
+     *  known top-level window.
+     */
+    public WindowInfo getWindow(final HWND hwnd) {
+        return this.windows.get(hwnd);
+    }
+
+    /**
+     * Returns the number of known windows.
+     *
+     * @return The number of known windows.
+     */
+    public int size() {
+        return this.windows.size();
+    }
+
+    /**
+     * Stops following window events.  The registry keeps its last
+     * contents but is no longer updated.
+     */
+    public void close() {
+        this.eventSource.stop();
+    }
+
+    /**
+     * Records every existing top-level window.
+     */
+    private void seed() {
+        this.user32.EnumWindows(
+            new WinUser.WNDENUMPROC() {
+                public boolean callback(
+                        final HWND hwnd, final Pointer data) {
+                    add(hwnd);
+                    return true;
+                }
+            },
+            null);
+    }
+
+    /**
+     * Records a window.  Windows that no longer exist are ignored.
+     *
+     * @param hwnd The window.
+     */
+    private void add(final HWND hwnd) {
+        if (this.windows.containsKey(hwnd)) {
+            return;
+        }
+
+        /* Get the window's owner; a zero thread id means that the
+         * window has already been destroyed. */
+        int threadId = this.user32.GetWindowThreadProcessId(
+                hwnd, this.processIdRef);
+        if (threadId == 0) {
+            return;
+        }
+        int processId = this.processIdRef.getValue();
+
+        /* Record the window. */
+        this.windows.put(hwnd,
+                new WindowInfo(hwnd, processId, threadId, readTitle(hwnd)));
+
+        HWND[] hwnds = this.processWindows.get(processId);
+        if (hwnds == null) {
+            hwnds = NO_WINDOWS;
+        }
+        HWND[] updated = Arrays.copyOf(hwnds, hwnds.length + 1);
+        updated[hwnds.length] = hwnd;
+        this.processWindows.put(processId, updated);
+    }
+
+    /**
+     * Forgets a window.
+     *
+     * @param hwnd The window.
+     */
+    private void remove(final HWND hwnd) {
+        WindowInfo info = this.windows.remove(hwnd);
+        if (info == null) {
+            return;
+        }
+
+        /* Copy the process's window list, minus this window. */
+        HWND[] hwnds = this.processWindows.get(info.getProcessId());
+        if (hwnds == null) {
+            return;
+        }
+        if (hwnds.length == 1) {
+            this.processWindows.remove(info.getProcessId());
+            return;
+        }
+
+        HWND[] updated = new HWND[hwnds.length - 1];
+        int i = 0;
+        for (HWND h : hwnds) {
+            if (!h.equals(hwnd) && i < updated.length) {
+                updated[i++] = h;
+            }
+        }
+        this.processWindows.put(info.getProcessId(), updated);
+    }
+
+    /**
+     * Rereads a window's title.  Windows that are not known top-level
+     * windows are ignored.
+     *
+     * @param hwnd The window.
+     */
+    private void rename(final HWND hwnd) {
+        WindowInfo info = this.windows.get(hwnd);
+        if (info == null) {
+            return;
+        }
+
+        this.windows.put(hwnd, new WindowInfo(hwnd, info.getProcessId(),
+                    info.getThreadId(), readTitle(hwnd)));
+    }
+
+    /**
+     * Reads a window's title.
+     *
+     * @param hwnd The window.
+     * @return The window's title; empty if it has none.
+     */
+    private String readTitle(final HWND hwnd) {
+        int length = this.user32.GetWindowText(
+                hwnd, this.titleBuffer, this.titleBuffer.length);
+        return new String(this.titleBuffer, 0, length);
+    }
+
+    /**
+     * Stores the information about a top-level window.
+     */
+    public static final class WindowInfo {
+        /** The window. */
+        private final HWND hwnd;
+
+        /** Process id of the window's owner. */
+        private final int processId;
+
+        /** Thread id of the thread that created the window. */
+        private final int threadId;
+
+        /** The window's title. */
+        private final String title;
+
+        /**
+         * Constructs a new WindowInfo object.
+         *
+         * @param hwnd The window.
+         * @param processId Process id of the window's owner.
+         * @param threadId Thread id of the window's thread.
+         * @param title The window's title.
+         */
+        public WindowInfo(
+                final HWND hwnd,
+                final int processId,
+                final int threadId,
+                final String title) {
+            this.hwnd = hwnd;
+            this.processId = processId;
+            this.threadId = threadId;
+            this.title = title;
+        }
+
+        /**
+         * Returns the window.
+         *
+         * @return The window.
+         */
+        public HWND getHwnd() {
+            return hwnd;
+        }
+
+        /**
+         * Returns the process id of the window's owner.
+         *
+         * @return The process id.
+         */
+        public int getProcessId() {
+            return processId;
+        }
+
+        /**
+         * Returns the thread id of the window's thread.
+         *
+         * @return The thread id.
+         */
+        public int getThreadId() {
+            return threadId;
+        }
+
+        /**
+         * Returns the window's title as of the last title change.
+         *
+         * @return The window's title.
+         */
+        public String getTitle() {
+            return title;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for AsyncProcessUtils.
+ */
+public class AsyncProcessUtilsTest extends Assert {
+    /**
+     * Concurrent identical requests share a single snapshot.
+     */
+    @Test
+    public void testRequestsAreCoalesced() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int a = win32.createProcess(0, "C:\\a.exe");
+        win32.createProcess(0, "C:\\b.exe");
+        win32.createProcess(0, "C:\\c.exe");
+        win32.setCurrentProcessId(a);
+        CountDownLatch gate = new CountDownLatch(1);
+        win32.setSnapshotGate(gate);
+        AsyncProcessUtils async = new AsyncProcessUtils(
+                win32, null, null, 2, 8);
+
+        CompletableFuture<List<ProcessUtils.ProcessInfo>> first
+            = async.getProcessList();
+        CompletableFuture<List<ProcessUtils.ProcessInfo>> second
+            = async.getProcessList();
+        CompletableFuture<List<ProcessUtils.ProcessInfo>> ancestors
+            = async.getProcessAncestors();
+        assertNotSame(first, second);
+        assertFalse(first.isDone());
+
+        gate.countDown();
+        assertEquals(3, first.get().size());
+        assertEquals(1, ancestors.get().size());
+        assertEquals(a, ancestors.get().get(0).getProcessId());
+        assertEquals(1, win32.getCallCount("CreateToolhelp32Snapshot"));
+
+        /* Requests issued after completion take a fresh snapshot. */
+        assertEquals(3, async.getProcessList().get().size());
+        assertEquals(2, win32.getCallCount("CreateToolhelp32Snapshot"));
+        async.shutdown();
+    }
+
+    /**
+     * Cancelling the original submitter's future does not affect the
+     * other callers that share the request.
+     */
+    @Test
+    public void testCancelDoesNotAffectCoalescedCallers() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        win32.createProcess(0, "C:\\a.exe");
+        win32.createProcess(0, "C:\\b.exe");
+        win32.createProcess(0, "C:\\c.exe");
+        CountDownLatch gate = new CountDownLatch(1);
+        win32.setSnapshotGate(gate);
+        AsyncProcessUtils async = new AsyncProcessUtils(
+                win32, null, null, 2, 8);
+
+        CompletableFuture<List<ProcessUtils.ProcessInfo>> first
+            = async.getProcessList();
+        CompletableFuture<List<ProcessUtils.ProcessInfo>> second
+            = async.getProcessList();
+        assertTrue(first.cancel(true));
+
+        gate.countDown();
+        assertEquals(3, second.get().size());
+        assertTrue(first.isCancelled());
+        assertEquals(1, win32.getCallCount("CreateToolhelp32Snapshot"));
+        async.shutdown();
+    }
+
+    /**
+     * Requests beyond the executor's bounds fail instead of blocking.
+     */
+    @Test
+    public void testBoundedQueue() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        win32.createProcess(0, "C:\\a.exe");
+        CountDownLatch gate = new CountDownLatch(1);
+        win32.setSnapshotGate(gate);
+        AsyncProcessUtils async = new AsyncProcessUtils(
+                win32, null, null, 1, 1);
+
+        /* One request runs, one is queued, and the third is rejected;
+         * process list requests are coalesced, so use the windows of
+         * different processes to fill the queue. */
+        CompletableFuture<List<ProcessUtils.ProcessInfo>> running
+            = async.getProcessList();
+        while (win32.getCallCount("CreateToolhelp32Snapshot") == 0) {
+            Thread.yield();
+        }
+        async.getProcessWindows(1);
+        try {
+            async.getProcessWindows(2).get();
+            fail("Expected the request to be rejected.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        gate.countDown();
+        assertEquals(1, running.get().size());
+        async.shutdown();
+    }
+}
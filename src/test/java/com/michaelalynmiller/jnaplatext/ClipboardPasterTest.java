@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.BaseTSD.SIZE_T;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.LRESULT;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ClipboardPaster.
+ */
+public class ClipboardPasterTest extends Assert {
+    /** Data for a registered clipboard format. */
+    private static final byte[] REGISTERED_DATA = {1, 2, 3, 4, 5};
+
+    /**
+     * Pasting delivers the text and restores the previous contents.
+     */
+    @Test
+    public void testPasteRestoresClipboard() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"));
+        win32.setClipboardText("previous");
+        win32.addClipboardContents(0xC123, REGISTERED_DATA);
+        win32.addClipboardContents(2 /* CF_BITMAP */, new byte[8]);
+
+        ClipboardPaster paster = new ClipboardPaster(win32, win32, win32);
+        assertTrue(paster.paste(hwnd, "dir /s\r"));
+
+        assertEquals("dir /s\r", win32.getReceivedText(hwnd));
+        assertEquals("previous", win32.getClipboardText());
+        assertTrue(Arrays.equals(
+                    REGISTERED_DATA, win32.getClipboardContents(0xC123)));
+        assertNull(win32.getClipboardContents(2));
+        assertEquals(2, win32.getGlobalMemoryCount());
+        assertEquals(1, win32.getCallCount("SendMessageTimeout"));
+        assertEquals(0, win32.getCallCount("PostMessageW"));
+        assertEquals(0, win32.getMessageWindowCount());
+    }
+
+    /**
+     * The clipboard must have an owner when it is written.
+     */
+    @Test
+    public void testClipboardNeedsOwner() {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        Pointer hMem = win32.GlobalAlloc(
+                Kernel32Memory.GMEM_MOVEABLE, new SIZE_T(2));
+
+        assertTrue(win32.OpenClipboard(null));
+        assertTrue(win32.EmptyClipboard());
+        assertNull(win32.SetClipboardData(
+                    User32Clipboard.CF_UNICODETEXT, hMem));
+        assertTrue(win32.CloseClipboard());
+    }
+
+    /**
+     * A console that does not respond in time fails the paste and
+     * leaves the pasted text on the clipboard.
+     */
+    @Test
+    public void testPasteTimeout() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"),
+                SimulatedWin32.DEFAULT_QUEUE_CAPACITY, 500000000L);
+        try {
+            win32.setClipboardText("previous");
+            win32.PostMessageW(hwnd, WinUser.WM_CHAR,
+                    new WPARAM('x'), new LPARAM(0));
+
+            ClipboardPaster paster = new ClipboardPaster(win32, win32, win32);
+            paster.setTimeout(10);
+            try {
+                paster.paste(hwnd, "dir /s\r");
+                fail("Expected the paste to time out.");
+            } catch (IOException e) {
+                assertEquals("dir /s\r", win32.getClipboardText());
+            }
+            assertEquals(0, win32.getMessageWindowCount());
+        } finally {
+            win32.shutdown();
+        }
+    }
+
+    /**
+     * A clipboard that cannot be reopened after the paste fails the
+     * paste instead of silently dropping the previous contents.
+     */
+    @Test
+    public void testRestoreFailure() throws Exception {
+        final SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"));
+        win32.setClipboardText("previous");
+
+        /* Another application opens the clipboard as soon as the
+         * console has pasted. */
+        User32Input grabbing = new User32Input() {
+            public boolean PostMessageW(final HWND hWnd, final int msg,
+                    final WPARAM wParam, final LPARAM lParam) {
+                return win32.PostMessageW(hWnd, msg, wParam, lParam);
+            }
+
+            public LRESULT SendMessageTimeout(final HWND hWnd,
+                    final int msg, final WPARAM wParam,
+                    final LPARAM lParam, final int fuFlags,
+                    final int uTimeout, final Pointer lpdwResult) {
+                LRESULT result = win32.SendMessageTimeout(hWnd, msg,
+                        wParam, lParam, fuFlags, uTimeout, lpdwResult);
+                Thread holder = new Thread() {
+                    @Override
+                    public void run() {
+                        win32.OpenClipboard(null);
+                    }
+                };
+                holder.start();
+                try {
+                    holder.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return result;
+            }
+
+            public int MapVirtualKey(final int uCode, final int uMapType) {
+                return win32.MapVirtualKey(uCode, uMapType);
+            }
+
+            public short VkKeyScan(final char ch) {
+                return win32.VkKeyScan(ch);
+            }
+        };
+
+        ClipboardPaster paster = new ClipboardPaster(grabbing, win32, win32);
+        try {
+            paster.paste(hwnd, "dir /s\r");
+            fail("Expected the restore to fail.");
+        } catch (IOException e) {
+            assertEquals("dir /s\r", win32.getReceivedText(hwnd));
+        }
+    }
+
+    /**
+     * A busy clipboard leaves the console and the clipboard untouched.
+     */
+    @Test
+    public void testBusyClipboard() throws Exception {
+        final SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"));
+        win32.setClipboardText("previous");
+
+        Thread holder = new Thread() {
+            @Override
+            public void run() {
+                win32.OpenClipboard(null);
+            }
+        };
+        holder.start();
+        holder.join();
+
+        ClipboardPaster paster = new ClipboardPaster(win32, win32, win32);
+        assertFalse(paster.paste(hwnd, "dir /s\r"));
+        assertEquals("", win32.getReceivedText(hwnd));
+        assertEquals("previous", win32.getClipboardText());
+    }
+
+    /**
+     * CmdExeTyper pastes writes that reach the threshold and types the
+     * rest.
+     */
+    @Test
+    public void testPasteThreshold() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"));
+
+        CmdExeTyper typer = new CmdExeTyper(
+                hwnd, win32, new ClipboardPaster(win32, win32, win32));
+        typer.setPasteThreshold(16);
+
+        typer.write("echo 1\r");
+        assertEquals(14, win32.getCallCount("PostMessageW"));
+        assertEquals(0, win32.getCallCount("SendMessageTimeout"));
+        win32.pump(hwnd);
+        typer.markInputConsumed();
+
+        char[] large = new char[20000];
+        Arrays.fill(large, 'x');
+        typer.write(new String(large));
+        assertEquals(14, win32.getCallCount("PostMessageW"));
+        assertEquals(1, win32.getCallCount("SendMessageTimeout"));
+
+        win32.pump(hwnd);
+        assertEquals("echo 1\r" + new String(large),
+                win32.getReceivedText(hwnd));
+    }
+
+    /**
+     * A write that follows typed text that cmd.exe may not have
+     * processed is typed, so that the paste cannot overtake it.
+     */
+    @Test
+    public void testNoPasteWhileInputPending() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"));
+
+        CmdExeTyper typer = new CmdExeTyper(
+                hwnd, win32, new ClipboardPaster(win32, win32, win32));
+        typer.setPasteThreshold(8);
+
+        typer.write("cd \\\r");
+        typer.write("echo pasted?\r");
+        assertEquals(0, win32.getCallCount("SendMessageTimeout"));
+
+        win32.pump(hwnd);
+        assertEquals("cd \\\recho pasted?\r", win32.getReceivedText(hwnd));
+    }
+
+    /**
+     * A paste that CmdExeTyper cannot complete is reported as an
+     * unchecked exception.
+     */
+    @Test
+    public void testTyperPasteFailure() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"),
+                SimulatedWin32.DEFAULT_QUEUE_CAPACITY, 500000000L);
+        try {
+            win32.PostMessageW(hwnd, WinUser.WM_CHAR,
+                    new WPARAM('x'), new LPARAM(0));
+
+            ClipboardPaster paster = new ClipboardPaster(win32, win32, win32);
+            paster.setTimeout(10);
+            CmdExeTyper typer = new CmdExeTyper(hwnd, win32, paster);
+            typer.setPasteThreshold(4);
+            try {
+                typer.write("dir /s\r");
+                fail("Expected the paste to time out.");
+            } catch (UncheckedIOException e) {
+                assertNotNull(e.getCause());
+            }
+        } finally {
+            win32.shutdown();
+        }
+    }
+
+    /**
+     * Formats whose data is a GDI handle are not restored.
+     */
+    @Test
+    public void testGlobalMemoryFormats() {
+        assertTrue(ClipboardPaster.isGlobalMemoryFormat(
+                    User32Clipboard.CF_UNICODETEXT));
+        assertTrue(ClipboardPaster.isGlobalMemoryFormat(8 /* CF_DIB */));
+        assertTrue(ClipboardPaster.isGlobalMemoryFormat(0xC123));
+        assertFalse(ClipboardPaster.isGlobalMemoryFormat(2));
+        assertFalse(ClipboardPaster.isGlobalMemoryFormat(14));
+        assertFalse(ClipboardPaster.isGlobalMemoryFormat(0x0300));
+    }
+}
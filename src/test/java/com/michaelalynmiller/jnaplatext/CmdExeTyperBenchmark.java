@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.IOException;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/**
+ * Measures the time and memory that CmdExeTyper spends per character
+ * against a backend that discards messages, comparing the typer with a
+ * loop that allocates a WPARAM and LPARAM for every message.  Run with
+ * <code>java ... CmdExeTyperBenchmark [characters]</code>.
+ */
+public final class CmdExeTyperBenchmark {
+    /**
+     * Prevent construction.
+     */
+    private CmdExeTyperBenchmark() { }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optional number of characters to type.
+     * @throws IOException if the typer fails.
+     */
+    public static void main(final String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+        /* Build a line of typical command text. */
+        StringBuilder line = new StringBuilder();
+        while (line.length() < 4000) {
+            line.append("copy C:\\Temp\\a.txt D:\\Backup\\ /Y & ");
+        }
+        char[] chars = line.toString().toCharArray();
+
+        CmdExeTyperTest.NullUser32Input user32
+            = new CmdExeTyperTest.NullUser32Input();
+        CmdExeTyper typer = new CmdExeTyper(
+                new HWND(Pointer.createConstant(0x1234)), user32);
+
+        /* Warm up, then measure each strategy. */
+        for (int i = 0; i < 3; i++) {
+            run(typer, user32, chars, count / 10, 0);
+            run(typer, user32, chars, count / 10, 1);
+            run(typer, user32, chars, count / 10, 2);
+        }
+        report("allocating", run(typer, user32, chars, count, 0), count);
+        report("CharSequence", run(typer, user32, chars, count, 1), count);
+        report("char[]", run(typer, user32, chars, count, 2), count);
+    }
+
+    /**
+     * Types characters with one strategy.
+     *
+     * @param typer The typer.
+     * @param user32 The backend.
+     * @param chars The text to type, repeatedly.
+     * @param count Number of characters to type.
+     * @param strategy 0 for the allocating loop, 1 for a CharSequence
+     *  range, 2 for a char[] range.
+     * @return Elapsed nanoseconds and allocated bytes.
+     * @throws IOException if the typer fails.
+     */
+    private static long[] run(
+            final CmdExeTyper typer,
+            final CmdExeTyperTest.NullUser32Input user32,
+            final char[] chars,
+            final int count,
+            final int strategy) throws IOException {
+        HWND hwnd = new HWND(Pointer.createConstant(0x1234));
+        CharSequence text = new String(chars);
+
+        long startBytes = CmdExeTyperTest.allocatedBytes();
+        long start = System.nanoTime();
+        for (int typed = 0; typed < count; typed += chars.length) {
+            if (strategy == 1) {
+                typer.write(text, 0, chars.length);
+            } else if (strategy == 2) {
+                typer.write(chars, 0, chars.length);
+            } else {
+                for (char c : chars) {
+                    user32.PostMessageW(hwnd, WinUser.WM_CHAR,
+                            new WPARAM(c), new LPARAM(0));
+                    short vkey = user32.VkKeyScan(c);
+                    user32.PostMessageW(hwnd, WinUser.WM_KEYUP,
+                            new WPARAM(vkey & 0xff),
+                            new LPARAM(KeystrokeProgram.keyUpLParam(
+                                    user32, vkey)));
+                }
+            }
+        }
+        return new long[] {System.nanoTime() - start,
+            CmdExeTyperTest.allocatedBytes() - startBytes};
+    }
+
+    /**
+     * Prints the cost of a single run.
+     *
+     * @param name Name of the strategy.
+     * @param result Elapsed nanoseconds and allocated bytes.
+     * @param count Number of characters typed.
+     */
+    private static void report(
+            final String name, final long[] result, final int count) {
+        System.out.printf("%-13s %6.1f ns/char %8.2f bytes/char%n",
+                name, (double) result[0] / count, (double) result[1] / count);
+    }
+}
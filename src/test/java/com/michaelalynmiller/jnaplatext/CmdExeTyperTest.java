@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.lang.management.ManagementFactory;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.LRESULT;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Unit test for CmdExeTyper.
+ */
+public class CmdExeTyperTest extends Assert {
+    /** Number of characters typed by each allocation measurement. */
+    private static final int ALLOCATION_CHARS = 200000;
+
+    /**
+     * A User32Input that discards messages without allocating, so that
+     * allocations made by the typer can be measured on their own.
+     */
+    static final class NullUser32Input implements User32Input {
+        /** Result of every SendMessageTimeout. */
+        private final LRESULT result = new LRESULT(0);
+
+        /** Number of messages posted. */
+        private long posted;
+
+        /** Sum of the posted wParams and lParams, so that the posts are
+         * not optimized away. */
+        private long checksum;
+
+        /** {@inheritDoc} */
+        public boolean PostMessageW(final HWND hWnd, final int msg,
+                final WPARAM wParam, final LPARAM lParam) {
+            posted++;
+            checksum += msg + wParam.longValue() + lParam.longValue();
+            return true;
+        }
+
+        /** {@inheritDoc} */
+        public LRESULT SendMessageTimeout(final HWND hWnd, final int msg,
+                final WPARAM wParam, final LPARAM lParam,
+                final int fuFlags, final int uTimeout,
+                final Pointer lpdwResult) {
+            return result;
+        }
+
+        /** {@inheritDoc} */
+        public int MapVirtualKey(final int uCode, final int uMapType) {
+            return SimulatedKeyboardLayout.US.mapVirtualKey(
+                    uCode, uMapType);
+        }
+
+        /** {@inheritDoc} */
+        public short VkKeyScan(final char ch) {
+            return SimulatedKeyboardLayout.US.vkKeyScan(ch);
+        }
+
+        /**
+         * Returns the number of messages posted.
+         *
+         * @return The number of messages posted.
+         */
+        long getPosted() {
+            return posted;
+        }
+
+        /**
+         * Returns the checksum of the posted messages.
+         *
+         * @return The checksum.
+         */
+        long getChecksum() {
+            return checksum;
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread.
+     *
+     * @return The number of bytes allocated; -1 if the JVM cannot
+     *  measure per-thread allocation.
+     */
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean
+            = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+
+        com.sun.management.ThreadMXBean sunBean
+            = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()
+                || !sunBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return sunBean.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    /**
+     * Every overload types the same messages for the same text.
+     */
+    @Test
+    public void testOverloadsTypeRanges() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"));
+        CmdExeTyper typer = new CmdExeTyper(hwnd, win32);
+
+        typer.write("dir ");
+        typer.write(new StringBuilder("xx/w\nyy"), 2, 3);
+        typer.write("--echo hello\n".toCharArray(), 2, 11);
+        typer.write("", 0, 0);
+        typer.write(KeystrokeProgram.compile(win32, "exit\n"));
+        win32.pump(hwnd);
+        assertEquals("dir /w\necho hello\nexit\n",
+                win32.getReceivedText(hwnd));
+        assertEquals(46, win32.getCallCount("PostMessageW"));
+    }
+
+    /**
+     * Ranges that lie outside the text are rejected before anything is
+     * typed.
+     */
+    @Test
+    public void testRangeChecks() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        HWND hwnd = win32.createWindow(win32.createProcess(
+                    0, "C:\\Windows\\System32\\cmd.exe"));
+        CmdExeTyper typer = new CmdExeTyper(hwnd, win32);
+
+        int[][] ranges = {{-1, 1}, {0, -1}, {2, 3}, {5, 0}};
+        for (int[] range : ranges) {
+            try {
+                typer.write("abcd", range[0], range[1]);
+                fail("Accepted " + range[0] + ", " + range[1]);
+            } catch (IndexOutOfBoundsException e) {
+                /* Expected. */
+            }
+            try {
+                typer.write("abcd".toCharArray(), range[0], range[1]);
+                fail("Accepted " + range[0] + ", " + range[1]);
+            } catch (IndexOutOfBoundsException e) {
+                /* Expected. */
+            }
+        }
+        assertEquals(0, win32.getCallCount("PostMessageW"));
+    }
+
+    /**
+     * Once warmed up, typing a CharSequence or char[] range allocates
+     * nothing per character.  Per-character WPARAM and LPARAM objects
+     * cost about 72 bytes per character.
+     */
+    @Test
+    public void testSteadyStateAllocatesNothingPerCharacter() throws Exception {
+        Assume.assumeTrue(allocatedBytes() >= 0);
+
+        NullUser32Input user32 = new NullUser32Input();
+        CmdExeTyper typer = new CmdExeTyper(
+                new HWND(Pointer.createConstant(0x1234)), user32);
+        StringBuilder line = new StringBuilder();
+        while (line.length() < 1000) {
+            line.append("copy C:\\Temp\\a.txt D:\\Backup\\ /Y & ");
+        }
+        char[] chars = line.toString().toCharArray();
+
+        /* Warm up, so that the caches are full and the loops are
+         * compiled. */
+        for (int i = 0; i < 20; i++) {
+            typer.write(line, 0, line.length());
+            typer.write(chars, 0, chars.length);
+        }
+
+        long before = allocatedBytes();
+        int typed = 0;
+        while (typed < ALLOCATION_CHARS) {
+            typer.write(line, 0, line.length());
+            typer.write(chars, 0, chars.length);
+            typed += line.length() + chars.length;
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertTrue(allocated + " bytes for " + typed + " characters",
+                allocated < typed / 100);
+        assertEquals(0, user32.getPosted() % 2);
+        assertTrue(user32.getChecksum() != 0);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ConsoleSession;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ConsoleScreenDiff.
+ */
+public class ConsoleScreenDiffTest extends Assert {
+    /** Width of the test screens. */
+    private static final int COLUMNS = 8;
+
+    /**
+     * Collects the emitted rows.
+     */
+    private static final class Recorder
+            implements ConsoleSession.OutputListener {
+        /** The emitted text. */
+        private final StringBuilder text = new StringBuilder();
+
+        /** {@inheritDoc} */
+        public void output(final char[] chars, final int offset,
+                final int length) {
+            text.append(chars, offset, length);
+        }
+
+        /**
+         * Returns and forgets the emitted text.
+         *
+         * @return The text emitted since the last call.
+         */
+        String take() {
+            String result = text.toString();
+            text.setLength(0);
+            return result;
+        }
+    }
+
+    /**
+     * Builds a screen in the CHAR_INFO layout that ReadConsoleOutput
+     * produces: every character is followed by its attributes.
+     *
+     * @param rows The text of each row.
+     * @return The screen's cells.
+     */
+    private static char[] screen(final String... rows) {
+        char[] cells = new char[rows.length * COLUMNS * 2];
+        for (int row = 0; row < rows.length; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int cell = (row * COLUMNS + column) * 2;
+                cells[cell] = column < rows[row].length()
+                    ? rows[row].charAt(column) : ' ';
+                cells[cell + 1] = 0x07;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Feeds a screen to the diff.
+     *
+     * @param diff The diff.
+     * @param recorder Receives the changed rows.
+     * @param rows The text of each row.
+     * @return The emitted text.
+     */
+    private static String update(final ConsoleScreenDiff diff,
+            final Recorder recorder, final String... rows) {
+        int emitted = diff.update(
+                screen(rows), 2, COLUMNS, rows.length, recorder);
+        String text = recorder.take();
+        assertEquals(text.length(), emitted);
+        return text;
+    }
+
+    /**
+     * The first screen emits every non-blank row, and an unchanged
+     * screen emits nothing.
+     */
+    @Test
+    public void testFirstAndUnchanged() {
+        ConsoleScreenDiff diff = new ConsoleScreenDiff();
+        Recorder recorder = new Recorder();
+        assertEquals("one\nthree",
+                update(diff, recorder, "one", "", "three", ""));
+        assertEquals("", update(diff, recorder, "one", "", "three", ""));
+    }
+
+    /**
+     * Only the rows that changed are emitted, and characters appended to
+     * the last row emitted are emitted on their own.
+     */
+    @Test
+    public void testChangedRows() {
+        ConsoleScreenDiff diff = new ConsoleScreenDiff();
+        Recorder recorder = new Recorder();
+        assertEquals("C:\\>", update(diff, recorder, "C:\\>", "", "", ""));
+        assertEquals("dir",
+                update(diff, recorder, "C:\\>dir", "", "", ""));
+        assertEquals("\na.txt\nC:\\>",
+                update(diff, recorder, "C:\\>dir", "a.txt", "C:\\>", ""));
+    }
+
+    /**
+     * A row that is rewritten rather than extended is emitted again in
+     * full, as is an earlier row that is extended.
+     */
+    @Test
+    public void testRewrittenRows() {
+        ConsoleScreenDiff diff = new ConsoleScreenDiff();
+        Recorder recorder = new Recorder();
+        update(diff, recorder, "a", "C:\\>dir", "", "");
+        assertEquals("\nC:\\>di",
+                update(diff, recorder, "a", "C:\\>di", "", ""));
+        assertEquals("\nab",
+                update(diff, recorder, "ab", "C:\\>di", "", ""));
+        assertEquals("\nC:\\>dir",
+                update(diff, recorder, "ab", "C:\\>dir", "", ""));
+    }
+
+    /**
+     * Rows that scroll up are not emitted again.
+     */
+    @Test
+    public void testScroll() {
+        ConsoleScreenDiff diff = new ConsoleScreenDiff();
+        Recorder recorder = new Recorder();
+        update(diff, recorder, "a", "b", "c", "d");
+        assertEquals("\ne", update(diff, recorder, "b", "c", "d", "e"));
+        assertEquals("\nf\ng", update(diff, recorder, "d", "e", "f", "g"));
+
+        /* The row holding the prompt changes as it scrolls. */
+        update(diff, recorder, "d", "e", "f", "C:\\>");
+        assertEquals("ver\nWin 10",
+                update(diff, recorder, "e", "f", "C:\\>ver", "Win 10"));
+    }
+
+    /**
+     * Clearing the screen emits nothing, and text written afterwards is
+     * emitted even if it matches what was there before.
+     */
+    @Test
+    public void testClear() {
+        ConsoleScreenDiff diff = new ConsoleScreenDiff();
+        Recorder recorder = new Recorder();
+        update(diff, recorder, "a", "b", "c", "d");
+        assertEquals("", update(diff, recorder, "", "", "", ""));
+        assertEquals("\na", update(diff, recorder, "a", "", "", ""));
+    }
+
+    /**
+     * A screen of a different size is compared against a blank
+     * screen.
+     */
+    @Test
+    public void testResize() {
+        ConsoleScreenDiff diff = new ConsoleScreenDiff();
+        Recorder recorder = new Recorder();
+        update(diff, recorder, "a", "b", "c", "d");
+        assertEquals("\na\nb\nc", update(diff, recorder, "a", "b", "c"));
+    }
+}
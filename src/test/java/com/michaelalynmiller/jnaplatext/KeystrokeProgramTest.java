@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.ArrayList;
+import java.util.List;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.LRESULT;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for KeystrokeProgram and KeystrokeProgramCache.
+ */
+public class KeystrokeProgramTest extends Assert {
+    /** Window used as the target of all of the tests. */
+    private static final HWND HWND = new HWND(Pointer.createConstant(42));
+
+    /**
+     * Compiled programs post exactly what CmdExeTyper.write posts.
+     */
+    @Test
+    public void testReplayMatchesWrite() throws Exception {
+        RecordingUser32Input written = new RecordingUser32Input();
+        new CmdExeTyper(HWND, written).write("dir 33\r");
+
+        RecordingUser32Input replayed = new RecordingUser32Input();
+        KeystrokeProgram program = KeystrokeProgram.compile(
+                replayed, "dir 33\r");
+        new CmdExeTyper(HWND, replayed).write(program);
+
+        assertEquals(14, program.getMessageCount());
+        assertEquals(written.messages, replayed.messages);
+    }
+
+    /**
+     * Compiled programs contain a WM_CHAR/WM_KEYUP pair per character.
+     */
+    @Test
+    public void testCompile() {
+        KeystrokeProgram program = KeystrokeProgram.compile(
+                new RecordingUser32Input(), "a");
+
+        assertEquals("a", program.getText());
+        assertEquals(2, program.getMessageCount());
+        assertEquals(WinUser.WM_CHAR, program.getMessage(0));
+        assertEquals('a', program.getWParam(0));
+        assertEquals(0, program.getLParam(0));
+        assertEquals(WinUser.WM_KEYUP, program.getMessage(1));
+        assertEquals('A', program.getWParam(1));
+        assertEquals(0x80000000 | ('A' + 100) << 16, program.getLParam(1));
+    }
+
+    /**
+     * Empty text compiles into an empty program.
+     */
+    @Test
+    public void testCompileEmpty() {
+        RecordingUser32Input user32 = new RecordingUser32Input();
+        KeystrokeProgram program = KeystrokeProgram.compile(user32, "");
+        program.replay(user32, HWND);
+
+        assertEquals(0, program.getMessageCount());
+        assertTrue(user32.messages.isEmpty());
+    }
+
+    /**
+     * The cache returns the same program for the same text and evicts
+     * the least-recently used program once it is full.
+     */
+    @Test
+    public void testCacheEviction() {
+        RecordingUser32Input user32 = new RecordingUser32Input();
+        KeystrokeProgramCache cache = new KeystrokeProgramCache(user32, 2);
+
+        KeystrokeProgram a = cache.get("a");
+        KeystrokeProgram b = cache.get("b");
+        assertSame(a, cache.get("a"));
+
+        cache.get("c");
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a"));
+        assertNotSame(b, cache.get("b"));
+    }
+
+    /**
+     * USER32 stand-in that records posted messages and maps characters
+     * to their upper-case virtual keys.
+     */
+    private static final class RecordingUser32Input implements User32Input {
+        /** Posted messages, formatted as "hwnd msg wParam lParam". */
+        private final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public boolean PostMessageW(
+                final HWND hWnd, final int msg,
+                final WPARAM wParam, final LPARAM lParam) {
+            messages.add(hWnd + " " + msg + " "
+                    + wParam.longValue() + " " + lParam.longValue());
+            return true;
+        }
+
+        @Override
+        public LRESULT SendMessageTimeout(
+                final HWND hWnd, final int msg,
+                final WPARAM wParam, final LPARAM lParam,
+                final int fuFlags, final int uTimeout,
+                final Pointer lpdwResult) {
+            PostMessageW(hWnd, msg, wParam, lParam);
+            return new LRESULT(1);
+        }
+
+        @Override
+        public int MapVirtualKey(final int uCode, final int uMapType) {
+            return uCode + 100;
+        }
+
+        @Override
+        public short VkKeyScan(final char ch) {
+            return (short) Character.toUpperCase(ch);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* JNA imports. */
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessStats;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for NtProcessStatsSource.
+ */
+public class NtProcessStatsSourceTest extends Assert {
+    /** Size of each SYSTEM_PROCESS_INFORMATION entry written by the
+     * fake; real entries are followed by thread information. */
+    private static final int ENTRY_SIZE = 0x100;
+
+    /**
+     * A fake NtQuerySystemInformation that returns the given processes
+     * in the 64-bit SYSTEM_PROCESS_INFORMATION layout.
+     */
+    private static final class FakeNtDll implements NtDllSystemInformation {
+        /** Process ids to return. */
+        private final int[] processIds;
+
+        /** Number of calls made. */
+        private int calls;
+
+        /**
+         * Constructs a new FakeNtDll.
+         *
+         * @param processIds Process ids to return.
+         */
+        FakeNtDll(final int... processIds) {
+            this.processIds = processIds;
+        }
+
+        /** {@inheritDoc} */
+        public int NtQuerySystemInformation(
+                final int SystemInformationClass,
+                final Pointer SystemInformation,
+                final int SystemInformationLength,
+                final IntByReference ReturnLength) {
+            calls++;
+            assertEquals(SystemProcessInformation, SystemInformationClass);
+
+            int required = processIds.length * ENTRY_SIZE;
+            ReturnLength.setValue(required);
+            if (SystemInformationLength < required) {
+                return STATUS_INFO_LENGTH_MISMATCH;
+            }
+
+            for (int i = 0; i < processIds.length; i++) {
+                long entry = (long) i * ENTRY_SIZE;
+                int pid = processIds[i];
+                SystemInformation.setInt(entry + 0x00,
+                        i == processIds.length - 1 ? 0 : ENTRY_SIZE);
+                SystemInformation.setLong(entry + 0x20, 1000 + pid);
+                SystemInformation.setLong(entry + 0x28, 3 * pid);
+                SystemInformation.setLong(entry + 0x30, 4 * pid);
+                SystemInformation.setLong(entry + 0x50, pid);
+                SystemInformation.setInt(entry + 0x60, 10 + pid);
+                SystemInformation.setLong(entry + 0x90, 4096L * pid);
+            }
+            return STATUS_SUCCESS;
+        }
+    }
+
+    /**
+     * The offsets used here are those of 64-bit Windows.
+     */
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Pointer.SIZE == 8);
+    }
+
+    /**
+     * Every process's counters are parsed from a single query.
+     */
+    @Test
+    public void testRead() throws Exception {
+        FakeNtDll ntdll = new FakeNtDll(0, 4, 1234);
+        NtProcessStatsSource source
+            = new NtProcessStatsSource(ntdll, 64 * 1024);
+        ProcessStats.Sample sample = new ProcessStats.Sample(8);
+        source.read(sample);
+
+        assertEquals(1, ntdll.calls);
+        assertEquals(3, sample.size());
+        assertEquals(1234, sample.getProcessId(2));
+        assertEquals(2234, sample.getStartTime(2));
+        assertEquals(7 * 1234 * 100, sample.getCpuTimeNanos(2));
+        assertEquals(4096L * 1234, sample.getWorkingSetBytes(2));
+        assertEquals(1244, sample.getHandleCount(2));
+    }
+
+    /**
+     * A buffer that is too small is grown once, with headroom, and then
+     * reused.
+     */
+    @Test
+    public void testBufferGrowth() throws Exception {
+        int[] processIds = new int[1000];
+        for (int i = 0; i < processIds.length; i++) {
+            processIds[i] = i * 4;
+        }
+
+        FakeNtDll ntdll = new FakeNtDll(processIds);
+        NtProcessStatsSource source = new NtProcessStatsSource(ntdll, 1024);
+        ProcessStats stats = new ProcessStats(source);
+        stats.sample();
+        assertEquals(2, ntdll.calls);
+        int bufferSize = source.getBufferSize();
+        assertTrue(bufferSize > processIds.length * ENTRY_SIZE);
+
+        ProcessStats.Sample sample = stats.sample();
+        assertEquals(3, ntdll.calls);
+        assertEquals(bufferSize, source.getBufferSize());
+        assertEquals(1000, sample.size());
+        assertEquals(0.0f, sample.getCpuPercent(999), 0.0f);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* JNA imports. */
+import com.sun.jna.Platform;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessExitWatcher;
+
+/* JUnit imports. */
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for PidfdProcessExitWatcher.
+ */
+public class PidfdProcessExitWatcherTest extends Assert {
+    /** Runs listeners on the epoll thread. */
+    private static final Executor DIRECT = new Executor() {
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    /** Child processes started by the test. */
+    private final List<Process> children = new ArrayList<Process>();
+
+    /** The watcher under test. */
+    private PidfdProcessExitWatcher watcher;
+
+    /**
+     * Skips the tests unless pidfds are available.
+     */
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Platform.isLinux());
+        try {
+            watcher = new PidfdProcessExitWatcher(DIRECT);
+        } catch (IOException e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
+    /**
+     * Closes the watcher and kills any remaining children.
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (watcher != null) {
+            watcher.close();
+        }
+        for (Process child : children) {
+            child.destroy();
+            child.waitFor();
+        }
+    }
+
+    /**
+     * Starts a child process that sleeps until it is destroyed.
+     *
+     * @return The child's process id.
+     */
+    private int startSleeper() throws IOException {
+        Process child = new ProcessBuilder(
+                "/bin/sh", "-c", "echo $$; exec sleep 60").start();
+        children.add(child);
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(child.getInputStream(), "US-ASCII"));
+        return Integer.parseInt(reader.readLine().trim());
+    }
+
+    /**
+     * Rejects its first task and runs the rest on the calling thread.
+     */
+    private static final class RejectFirstExecutor implements Executor {
+        /** true once a task has been rejected. */
+        private final AtomicBoolean rejected = new AtomicBoolean();
+
+        /** {@inheritDoc} */
+        public void execute(final Runnable command) {
+            if (rejected.compareAndSet(false, true)) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        }
+    }
+
+    /**
+     * Records exit notifications.
+     */
+    private static final class RecordingListener
+            implements ProcessExitWatcher.Listener {
+        /** Notification times by process id. */
+        private final Map<Integer, Long> exitNanos
+            = new ConcurrentHashMap<Integer, Long>();
+
+        /** Counts down once per notification. */
+        private final CountDownLatch latch;
+
+        /**
+         * Constructs a new RecordingListener.
+         *
+         * @param expected Number of expected notifications.
+         */
+        RecordingListener(final int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        /** {@inheritDoc} */
+        public void processExited(final int processId, final int exitCode) {
+            assertEquals(ProcessExitWatcher.EXIT_CODE_UNKNOWN, exitCode);
+            exitNanos.put(processId, System.nanoTime());
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Each watched child's exit is reported once.
+     */
+    @Test
+    public void testChildExits() throws Exception {
+        int[] processIds = new int[20];
+        for (int i = 0; i < processIds.length; i++) {
+            processIds[i] = startSleeper();
+        }
+
+        RecordingListener listener = new RecordingListener(19);
+        for (int processId : processIds) {
+            assertTrue(watcher.watch(processId, listener));
+        }
+        assertTrue(watcher.unwatch(processIds[0]));
+        assertEquals(19, watcher.getWatchedCount());
+
+        for (Process child : children) {
+            child.destroy();
+        }
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        assertFalse(listener.exitNanos.containsKey(processIds[0]));
+        assertEquals(19, listener.exitNanos.size());
+        assertEquals(0, watcher.getWatchedCount());
+    }
+
+    /**
+     * A listener that the executor rejects does not stop the remaining
+     * listeners from being notified.
+     */
+    @Test
+    public void testRejectedListener() throws Exception {
+        watcher.close();
+        watcher = new PidfdProcessExitWatcher(new RejectFirstExecutor());
+        int processId = startSleeper();
+
+        RecordingListener rejected = new RecordingListener(1);
+        RecordingListener notified = new RecordingListener(1);
+        assertTrue(watcher.watch(processId, rejected));
+        assertTrue(watcher.watch(processId, notified));
+
+        children.get(0).destroy();
+        assertTrue(notified.latch.await(10, TimeUnit.SECONDS));
+        assertTrue(notified.exitNanos.containsKey(processId));
+        assertEquals(1, rejected.latch.getCount());
+    }
+
+    /**
+     * Processes that do not exist cannot be watched.
+     */
+    @Test
+    public void testNoSuchProcess() throws Exception {
+        assertFalse(watcher.watch(4194305, new RecordingListener(1)));
+        assertEquals(0, watcher.getWatchedCount());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/* JNA imports. */
+import com.sun.jna.Platform;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessStats;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for ProcProcessStatsSource.
+ */
+public class ProcProcessStatsSourceTest extends Assert {
+    /** Directory for the fake /proc. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a fake /proc/[pid]/stat file.
+     *
+     * @param proc The fake /proc directory.
+     * @param pid The process id.
+     * @param stat Contents of the stat file.
+     */
+    private static void writeStat(
+            final File proc, final int pid, final String stat)
+            throws IOException {
+        File dir = new File(proc, Integer.toString(pid));
+        assertTrue(dir.mkdir());
+        FileOutputStream out = new FileOutputStream(new File(dir, "stat"));
+        try {
+            out.write(stat.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Stat files are parsed, including awkward command names, and
+     * non-process entries are ignored.
+     */
+    @Test
+    public void testFakeProc() throws Exception {
+        File proc = folder.newFolder("proc");
+        assertTrue(new File(proc, "self").mkdir());
+        new File(proc, "uptime").createNewFile();
+        writeStat(proc, 1, "1 (init) S 0 1 1 0 -1 4194560 100 200 3 4 "
+                + "150 50 0 0 20 0 1 0 7 1000000 25 18446744073709551615\n");
+        writeStat(proc, 4242, "4242 (a (b) c) R 1 4242 4242 0 -1 0 0 0 0 0 "
+                + "7 3 0 0 20 0 1 0 99 2000 3 18446744073709551615\n");
+        writeStat(proc, 77, "77 (truncated) S 1 77");
+        assertTrue(new File(proc, "4242/fd").mkdir());
+        new File(proc, "4242/fd/0").createNewFile();
+        new File(proc, "4242/fd/1").createNewFile();
+
+        ProcProcessStatsSource source
+            = new ProcProcessStatsSource(proc, 100, 4096, true);
+        ProcessStats.Sample sample = new ProcessStats.Sample(1);
+        source.read(sample);
+
+        assertEquals(2, sample.size());
+        int init = sample.getProcessId(0) == 1 ? 0 : 1;
+        int other = 1 - init;
+        assertEquals(1, sample.getProcessId(init));
+        assertEquals(7, sample.getStartTime(init));
+        assertEquals(2000000000L, sample.getCpuTimeNanos(init));
+        assertEquals(25 * 4096, sample.getWorkingSetBytes(init));
+        assertEquals(-1, sample.getHandleCount(init));
+        assertEquals(4242, sample.getProcessId(other));
+        assertEquals(100000000L, sample.getCpuTimeNanos(other));
+        assertEquals(3 * 4096, sample.getWorkingSetBytes(other));
+        assertEquals(2, sample.getHandleCount(other));
+    }
+
+    /**
+     * Entry names are parsed as process ids only if they are numeric.
+     */
+    @Test
+    public void testParseProcessId() {
+        assertEquals(1, ProcProcessStatsSource.parseProcessId("1"));
+        assertEquals(4194304,
+                ProcProcessStatsSource.parseProcessId("4194304"));
+        assertEquals(-1, ProcProcessStatsSource.parseProcessId("self"));
+        assertEquals(-1, ProcProcessStatsSource.parseProcessId(""));
+        assertEquals(-1, ProcProcessStatsSource.parseProcessId("12a"));
+    }
+
+    /**
+     * The real /proc includes this process, which has used some CPU.
+     */
+    @Test
+    public void testRealProc() throws Exception {
+        Assume.assumeTrue(Platform.isLinux());
+
+        ProcessStats stats = new ProcessStats(new ProcProcessStatsSource());
+        stats.sample();
+        long until = System.nanoTime() + 20000000L;
+        while (System.nanoTime() < until) {
+            Thread.yield();
+        }
+        ProcessStats.Sample sample = stats.sample();
+
+        assertTrue(sample.size() > 0);
+        boolean found = false;
+        for (int i = 0; i < sample.size(); i++) {
+            if (sample.getProcessId(i) == LibC.INSTANCE.getpid()) {
+                found = true;
+                assertTrue(sample.getCpuTimeNanos(i) > 0);
+                assertTrue(sample.getWorkingSetBytes(i) > 0);
+                assertFalse(Float.isNaN(sample.getCpuPercent(i)));
+            }
+        }
+        assertTrue(found);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Arrays;
+import java.util.List;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ProcessHandleCache.
+ */
+public class ProcessHandleCacheTest extends Assert {
+    /**
+     * Handles are opened once and reused.
+     */
+    @Test
+    public void testAcquireReusesHandle() {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int a = win32.createProcess(0, "C:\\a.exe");
+        win32.createProcess(0, "C:\\b.exe");
+        ProcessHandleCache cache = new ProcessHandleCache(win32, 8);
+
+        HANDLE handle = cache.acquire(a);
+        assertNotNull(handle);
+        cache.release(handle);
+        assertSame(handle, cache.acquire(a));
+        cache.release(handle);
+        assertEquals(1, win32.getCallCount("OpenProcess"));
+        assertNull(cache.acquire(99));
+
+        try {
+            cache.release(handle);
+            fail("Expected an unpinned handle to be rejected.");
+        } catch (IllegalStateException e) {
+            assertEquals(1, win32.getOpenHandleCount(a));
+        }
+    }
+
+    /**
+     * Evicted handles are closed immediately.
+     */
+    @Test
+    public void testEvictionClosesHandle() {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int a = win32.createProcess(0, "C:\\a.exe");
+        int b = win32.createProcess(0, "C:\\b.exe");
+        int c = win32.createProcess(0, "C:\\c.exe");
+        ProcessHandleCache cache = new ProcessHandleCache(win32, 2);
+
+        cache.release(cache.acquire(a));
+        cache.release(cache.acquire(b));
+        cache.release(cache.acquire(a));
+        cache.release(cache.acquire(c));
+
+        assertEquals(2, cache.size());
+        assertEquals(0, win32.getOpenHandleCount(b));
+        assertEquals(2, win32.getOpenHandleCount());
+
+        cache.close();
+        assertEquals(0, cache.size());
+        assertEquals(0, win32.getOpenHandleCount());
+    }
+
+    /**
+     * Handles for exited processes are detected and closed.
+     */
+    @Test
+    public void testStaleHandles() {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int a = win32.createProcess(0, "C:\\a.exe");
+        int b = win32.createProcess(0, "C:\\b.exe");
+        int c = win32.createProcess(0, "C:\\c.exe");
+        ProcessHandleCache cache = new ProcessHandleCache(win32, 8);
+        cache.release(cache.acquire(a));
+        cache.release(cache.acquire(b));
+        cache.release(cache.acquire(c));
+
+        win32.exitProcess(b, 0);
+        assertFalse(cache.isStale(a));
+        assertTrue(cache.isStale(b));
+        assertEquals(0, win32.getOpenHandleCount(b));
+
+        assertEquals(1, cache.retainAll(Arrays.asList(a, 9999)));
+        assertEquals(0, win32.getOpenHandleCount(c));
+        assertEquals(1, cache.size());
+    }
+
+    /**
+     * A handle that is evicted while it is in use stays open until it
+     * is released.
+     */
+    @Test
+    public void testPinnedHandleOutlivesEviction() {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int a = win32.createProcess(0, "C:\\a.exe");
+        int b = win32.createProcess(0, "C:\\b.exe");
+        ProcessHandleCache cache = new ProcessHandleCache(win32, 1);
+
+        HANDLE first = cache.acquire(a);
+        HANDLE second = cache.acquire(a);
+        cache.release(cache.acquire(b));
+        assertEquals(1, cache.size());
+        assertEquals(1, win32.getOpenHandleCount(a));
+
+        cache.release(first);
+        assertEquals(1, win32.getOpenHandleCount(a));
+        cache.release(second);
+        assertEquals(0, win32.getOpenHandleCount(a));
+
+        HANDLE pinned = cache.acquire(b);
+        cache.close();
+        assertEquals(1, win32.getOpenHandleCount(b));
+        cache.release(pinned);
+        assertEquals(0, win32.getOpenHandleCount());
+    }
+
+    /**
+     * Repeated process list polls only open each process once.
+     */
+    @Test
+    public void testGetProcessListWithCache() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        win32.createProcess(0, "C:\\a.exe");
+        int b = win32.createProcess(0, "C:\\b.exe");
+        win32.createProcess(0, "C:\\c.exe");
+        ProcessHandleCache cache = new ProcessHandleCache(win32, 8);
+
+        List<ProcessUtils.ProcessInfo> first
+            = ProcessUtils.getProcessList(win32, cache);
+        List<ProcessUtils.ProcessInfo> second
+            = ProcessUtils.getProcessList(win32, cache);
+        assertEquals(3, first.size());
+        assertEquals(3, second.size());
+        assertEquals("C:\\b.exe", second.get(1).getImageName());
+        assertEquals(3, win32.getCallCount("OpenProcess"));
+
+        win32.exitProcess(b, 0);
+        assertEquals(2, ProcessUtils.getProcessList(win32, cache).size());
+        assertEquals(2, cache.size());
+        assertEquals(0, win32.getOpenHandleCount(b));
+
+        /* Without a cache, every process is opened and closed. */
+        ProcessUtils.getProcessList(win32, null);
+        assertEquals(5, win32.getCallCount("OpenProcess"));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures ProcessImageIndex lookups against linear scans of the
+ * process list on a synthetic desktop with 10,000 processes.  Run with
+ * <code>java ... ProcessImageIndexBenchmark [processes]</code>.
+ */
+public final class ProcessImageIndexBenchmark {
+    /** Path of the command interpreter. */
+    private static final String CMD = "C:\\Windows\\System32\\cmd.exe";
+
+    /** Path of the Java launcher. */
+    private static final String JAVA
+        = "C:\\Program Files\\Java\\bin\\java.exe";
+
+    /** Number of rounds; only the last is reported. */
+    private static final int ROUNDS = 5;
+
+    /** Number of times each query is repeated. */
+    private static final int QUERIES = 2000;
+
+    /** Defeats dead-code elimination. */
+    private static long sink;
+
+    /**
+     * Prevent construction.
+     */
+    private ProcessImageIndexBenchmark() { }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optional number of processes.
+     */
+    public static void main(final String[] args) {
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        ProcessSnapshot snapshot = desktop(processes, 0);
+        List<ProcessUtils.ProcessInfo> processList
+            = new ArrayList<ProcessUtils.ProcessInfo>(
+                    snapshot.asProcessList());
+        int leaf = snapshot.getProcessId(snapshot.size() - 1);
+
+        /* Warm up, then measure. */
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean print = round == ROUNDS - 1;
+            ProcessImageIndex index = null;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                index = ProcessImageIndex.of(snapshot);
+            }
+            report(print, "build index", System.nanoTime() - start, 10);
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink += scanByPath(processList, JAVA);
+            }
+            report(print, "java.exe: scan", System.nanoTime() - start,
+                    QUERIES);
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink += index.findByBaseName("java.exe").length;
+            }
+            report(print, "java.exe: index", System.nanoTime() - start,
+                    QUERIES);
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink += scanAncestor(processList, leaf, CMD);
+            }
+            report(print, "cmd ancestor: scan", System.nanoTime() - start,
+                    QUERIES);
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink += index.findAncestor(leaf, "cmd.exe");
+            }
+            report(print, "cmd ancestor: index", System.nanoTime() - start,
+                    QUERIES);
+
+            start = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                sink += index.findByPathPrefix("C:\\Program Files\\").length;
+            }
+            report(print, "path prefix: index", System.nanoTime() - start,
+                    QUERIES);
+
+            /* Apply a snapshot in which 1% of the processes changed. */
+            ProcessSnapshot newer = desktop(processes, processes / 100);
+            start = System.nanoTime();
+            int changes = index.update(newer);
+            report(print, "update (" + changes + " changes)",
+                    System.nanoTime() - start, 1);
+        }
+    }
+
+    /**
+     * Builds a synthetic process tree: chains of cmd.exe and java.exe
+     * processes under explorer.exe, among many other programs.
+     *
+     * @param processes Number of processes.
+     * @param churn Number of processes to replace with new ones.
+     * @return The snapshot.
+     */
+    private static ProcessSnapshot desktop(
+            final int processes, final int churn) {
+        Random random = new Random(42);
+        ProcessSnapshot.Builder builder
+            = new ProcessSnapshot.Builder(processes);
+        builder.add(4, 0, "System");
+        builder.add(8, 4, "C:\\Windows\\explorer.exe");
+        for (int i = 3; i < processes; i++) {
+            int processId = (i < processes - churn ? i : i + processes) * 4;
+            int parentProcessId = (i - 1 - random.nextInt(Math.min(i, 8)))
+                * 4;
+            if (parentProcessId < 8) {
+                parentProcessId = 8;
+            }
+
+            String imageName;
+            switch (random.nextInt(20)) {
+            case 0:
+                imageName = CMD;
+                break;
+            case 1:
+                imageName = JAVA;
+                break;
+            default:
+                imageName = "C:\\Program Files\\App" + random.nextInt(300)
+                    + "\\app.exe";
+                break;
+            }
+            builder.add(processId, parentProcessId, imageName);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Counts the processes with the given path by scanning the list.
+     *
+     * @param processList The process list.
+     * @param path The path.
+     * @return The number of matching processes.
+     */
+    private static int scanByPath(
+            final List<ProcessUtils.ProcessInfo> processList,
+            final String path) {
+        int count = 0;
+        for (ProcessUtils.ProcessInfo process : processList) {
+            if (process.getImageName().equals(path)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds the nearest ancestor with the given path by listing the
+     * process's ancestors.
+     *
+     * @param processList The process list.
+     * @param processId The process.
+     * @param path The path.
+     * @return The ancestor's process id; -1 if there is none.
+     */
+    private static int scanAncestor(
+            final List<ProcessUtils.ProcessInfo> processList,
+            final int processId,
+            final String path) {
+        List<ProcessUtils.ProcessInfo> ancestors
+            = ProcessUtils.getProcessAncestors(processId, processList);
+        for (int i = 1; i < ancestors.size(); i++) {
+            if (ancestors.get(i).getImageName().equals(path)) {
+                return ancestors.get(i).getProcessId();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Prints the cost of an operation.
+     *
+     * @param print false to discard the measurement.
+     * @param name Name of the operation.
+     * @param nanos Elapsed time in nanoseconds.
+     * @param count Number of times the operation was performed.
+     */
+    private static void report(final boolean print, final String name,
+            final long nanos, final int count) {
+        if (print) {
+            System.out.printf("%-26s %12.1f us/op%n",
+                    name, nanos / 1000.0 / count);
+        }
+    }
+}
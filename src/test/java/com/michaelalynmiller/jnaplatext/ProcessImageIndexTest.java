@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Arrays;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ProcessImageIndex.
+ */
+public class ProcessImageIndexTest extends Assert {
+    /** Path of the command interpreter. */
+    private static final String CMD = "C:\\Windows\\System32\\cmd.exe";
+
+    /** Path of the Java launcher. */
+    private static final String JAVA
+        = "C:\\Program Files\\Java\\bin\\java.exe";
+
+    /** Path of the windowed Java launcher. */
+    private static final String JAVAW
+        = "C:\\Program Files\\Java\\bin\\javaw.exe";
+
+    /**
+     * Builds a small process tree:
+     * explorer(100) - cmd(200) - cmd(300) - java(400) - javaw(500),
+     * with an unrelated java(600) under explorer.
+     *
+     * @return The snapshot.
+     */
+    private static ProcessSnapshot tree() {
+        return new ProcessSnapshot.Builder(0)
+            .add(100, 4, "C:\\Windows\\explorer.exe")
+            .add(200, 100, CMD)
+            .add(300, 200, CMD)
+            .add(400, 300, JAVA)
+            .add(500, 400, JAVAW)
+            .add(600, 100, "D:\\JDK\\bin\\JAVA.EXE")
+            .build();
+    }
+
+    /**
+     * Sorts a lookup result.
+     *
+     * @param processIds The process ids.
+     * @return The sorted process ids.
+     */
+    private static int[] sorted(final int[] processIds) {
+        int[] copy = processIds.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Exact lookups ignore case.
+     */
+    @Test
+    public void testExactLookups() {
+        ProcessImageIndex index = ProcessImageIndex.of(tree());
+
+        assertEquals(6, index.size());
+        assertArrayEquals(new int[] {400, 600},
+                sorted(index.findByBaseName("java.exe")));
+        assertArrayEquals(new int[] {400, 600},
+                sorted(index.findByBaseName("Java.Exe")));
+        assertArrayEquals(new int[] {400},
+                sorted(index.findByPath(JAVA.toUpperCase())));
+        assertArrayEquals(new int[] {200, 300},
+                sorted(index.findByPath(CMD)));
+        assertEquals(0, index.findByBaseName("java").length);
+        assertEquals(0, index.findByPath("java.exe").length);
+    }
+
+    /**
+     * Prefix lookups match basenames and paths.
+     */
+    @Test
+    public void testPrefixLookups() {
+        ProcessImageIndex index = ProcessImageIndex.of(tree());
+
+        assertArrayEquals(new int[] {400, 500, 600},
+                sorted(index.findByBaseNamePrefix("JAVA")));
+        assertArrayEquals(new int[] {400, 500},
+                sorted(index.findByPathPrefix("c:\\program files\\")));
+        assertArrayEquals(new int[] {100, 200, 300, 400, 500, 600},
+                sorted(index.findByBaseNamePrefix("")));
+        assertEquals(0, index.findByPathPrefix("E:\\").length);
+    }
+
+    /**
+     * Ancestor lookups find the nearest matching ancestor, never the
+     * process itself.
+     */
+    @Test
+    public void testFindAncestor() {
+        ProcessImageIndex index = ProcessImageIndex.of(tree());
+
+        assertEquals(300, index.findAncestor(500, "cmd.exe"));
+        assertEquals(200, index.findAncestor(300, "CMD.EXE"));
+        assertEquals(400, index.findAncestor(500, "java.exe"));
+        assertEquals(-1, index.findAncestor(600, "cmd.exe"));
+        assertEquals(-1, index.findAncestor(500, "notepad.exe"));
+        assertEquals(-1, index.findAncestor(12345, "cmd.exe"));
+    }
+
+    /**
+     * Starts and exits update every lookup.
+     */
+    @Test
+    public void testStartAndExit() {
+        ProcessImageIndex index = ProcessImageIndex.of(tree());
+
+        index.processStarted(700, 500, CMD);
+        assertArrayEquals(new int[] {200, 300, 700},
+                sorted(index.findByBaseName("cmd.exe")));
+
+        assertTrue(index.processExited(300));
+        assertFalse(index.processExited(300));
+        assertArrayEquals(new int[] {200, 700},
+                sorted(index.findByPath(CMD)));
+        assertEquals(-1, index.findAncestor(500, "cmd.exe"));
+
+        /* Removing every process with a name forgets the name. */
+        assertTrue(index.processExited(500));
+        assertEquals(0, index.findByBaseNamePrefix("javaw").length);
+        assertEquals(5, index.size());
+
+        /* A reused process id replaces the old process. */
+        index.processStarted(400, 100, "C:\\Windows\\notepad.exe");
+        assertArrayEquals(new int[] {600},
+                sorted(index.findByBaseName("java.exe")));
+        assertArrayEquals(new int[] {400},
+                sorted(index.findByBaseName("notepad.exe")));
+        assertEquals(5, index.size());
+    }
+
+    /**
+     * Applying a newer snapshot only changes the processes that started
+     * or exited.
+     */
+    @Test
+    public void testUpdate() {
+        ProcessImageIndex index = ProcessImageIndex.of(tree());
+        assertEquals(0, index.update(tree()));
+
+        ProcessSnapshot newer = new ProcessSnapshot.Builder(0)
+            .add(100, 4, "C:\\Windows\\explorer.exe")
+            .add(200, 100, CMD)
+            .add(400, 200, JAVA)
+            .add(800, 200, JAVA)
+            .build();
+        assertEquals(5, index.update(newer));
+        assertEquals(4, index.size());
+        assertArrayEquals(new int[] {400, 800},
+                sorted(index.findByBaseName("java.exe")));
+        assertEquals(0, index.findByBaseName("javaw.exe").length);
+        assertEquals(200, index.findAncestor(400, "cmd.exe"));
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for ProcessSnapshotCodec, SharedProcessSnapshot and
+ * ProcessSnapshotLog.
+ */
+public class ProcessSnapshotCodecTest extends Assert {
+    /** Directory for the shared and log files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Builds a snapshot with the given number of processes.
+     *
+     * @param count Number of processes.
+     * @return The snapshot.
+     */
+    private static ProcessSnapshot snapshot(final int count) {
+        ProcessSnapshot.Builder builder = new ProcessSnapshot.Builder(count);
+        for (int i = 0; i < count; i++) {
+            builder.add(i * 4, i * 2, "C:\\Program Files\\\u00e9\\"
+                    + (i % 7) + ".exe");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Asserts that two snapshots contain the same processes.
+     *
+     * @param expected The expected snapshot.
+     * @param actual The actual snapshot.
+     */
+    private static void assertSnapshotEquals(
+            final ProcessSnapshot expected, final ProcessSnapshot actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getImageNameCount(),
+                actual.getImageNameCount());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getProcessId(i), actual.getProcessId(i));
+            assertEquals(expected.getParentProcessId(i),
+                    actual.getParentProcessId(i));
+            assertEquals(expected.getImageName(i), actual.getImageName(i));
+        }
+    }
+
+    /**
+     * Snapshots survive an encode/decode round trip.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        ProcessSnapshot snapshot = snapshot(100);
+        byte[] encoded = ProcessSnapshotCodec.encode(snapshot);
+
+        assertEquals(ProcessSnapshotCodec.encodedSize(snapshot),
+                encoded.length);
+        assertSnapshotEquals(snapshot,
+                ProcessSnapshotCodec.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    /**
+     * Corrupt input is rejected.
+     */
+    @Test(expected = IOException.class)
+    public void testDecodeTruncated() throws Exception {
+        byte[] encoded = ProcessSnapshotCodec.encode(snapshot(10));
+        ProcessSnapshotCodec.decode(
+                ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+
+    /**
+     * Snapshots published through one mapping are read through another.
+     */
+    @Test
+    public void testSharedSnapshot() throws Exception {
+        File path = new File(folder.getRoot(), "snapshot.shm");
+        SharedProcessSnapshot publisher
+            = SharedProcessSnapshot.open(path, 64 * 1024);
+        SharedProcessSnapshot reader = SharedProcessSnapshot.open(path);
+
+        assertNull(reader.read());
+        publisher.publish(snapshot(10));
+        assertSnapshotEquals(snapshot(10), reader.read());
+        publisher.publish(snapshot(20));
+        assertSnapshotEquals(snapshot(20), reader.read());
+        assertEquals(4, reader.getSequence());
+
+        publisher.close();
+        reader.close();
+    }
+
+    /**
+     * Files too short to hold the header are rejected as corrupt.
+     */
+    @Test
+    public void testSharedSnapshotTooShort() throws Exception {
+        File path = new File(folder.getRoot(), "snapshot.shm");
+        for (int length : new int[] {2, 12}) {
+            RandomAccessFile file = new RandomAccessFile(path, "rw");
+            file.setLength(length);
+            file.close();
+
+            try {
+                SharedProcessSnapshot.open(path);
+                fail("Expected a " + length + "-byte file to be rejected.");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("not a shared"));
+            }
+        }
+    }
+
+    /**
+     * Readers never see a partially-published snapshot.
+     */
+    @Test
+    public void testConcurrentPublish() throws Exception {
+        File path = new File(folder.getRoot(), "snapshot.shm");
+        final SharedProcessSnapshot publisher
+            = SharedProcessSnapshot.open(path, 64 * 1024);
+        SharedProcessSnapshot reader = SharedProcessSnapshot.open(path);
+        publisher.publish(snapshot(1));
+
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    for (int i = 0; !done.get(); i++) {
+                        publisher.publish(snapshot(1 + i % 500));
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        writer.start();
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                ProcessSnapshot snapshot = reader.read();
+                assertSnapshotEquals(snapshot(snapshot.size()), snapshot);
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    /**
+     * Snapshots are appended to and read back from a log, and a
+     * truncated final record is ignored.
+     */
+    @Test
+    public void testLog() throws Exception {
+        File path = new File(folder.getRoot(), "snapshots.log");
+        ProcessSnapshotLog log = ProcessSnapshotLog.open(path);
+        log.append(snapshot(5), 1000);
+        log.append(snapshot(6), 2000);
+        log.close();
+
+        log = ProcessSnapshotLog.open(path);
+        log.append(snapshot(7), 3000);
+        log.close();
+
+        List<ProcessSnapshotLog.Entry> entries
+            = ProcessSnapshotLog.readAll(path);
+        assertEquals(3, entries.size());
+        assertEquals(2000, entries.get(1).getTimestamp());
+        assertSnapshotEquals(snapshot(7), entries.get(2).getSnapshot());
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+        assertEquals(2, ProcessSnapshotLog.readAll(path).size());
+    }
+
+    /**
+     * Reopening a log with a torn tail truncates the torn record, so
+     * that records appended afterwards can be read back.
+     */
+    @Test
+    public void testLogAppendAfterTornTail() throws Exception {
+        File path = new File(folder.getRoot(), "snapshots.log");
+        ProcessSnapshotLog log = ProcessSnapshotLog.open(path);
+        log.append(snapshot(5), 1000);
+        log.append(snapshot(6), 2000);
+        log.close();
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(file.length() - 3);
+        file.close();
+
+        log = ProcessSnapshotLog.open(path);
+        log.append(snapshot(7), 3000);
+        log.close();
+
+        List<ProcessSnapshotLog.Entry> entries
+            = ProcessSnapshotLog.readAll(path);
+        assertEquals(2, entries.size());
+        assertEquals(1000, entries.get(0).getTimestamp());
+        assertEquals(3000, entries.get(1).getTimestamp());
+        assertSnapshotEquals(snapshot(7), entries.get(1).getSnapshot());
+
+        /* A corrupt (rather than torn) tail is truncated as well. */
+        file = new RandomAccessFile(path, "rw");
+        file.seek(file.length() - 1);
+        int last = file.read();
+        file.seek(file.length() - 1);
+        file.write(last ^ 0xff);
+        file.close();
+
+        log = ProcessSnapshotLog.open(path);
+        log.append(snapshot(8), 4000);
+        log.close();
+
+        entries = ProcessSnapshotLog.readAll(path);
+        assertEquals(2, entries.size());
+        assertEquals(4000, entries.get(1).getTimestamp());
+        assertSnapshotEquals(snapshot(8), entries.get(1).getSnapshot());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ProcessSnapshotService.
+ */
+public class ProcessSnapshotServiceTest extends Assert {
+    /**
+     * Concurrent callers share one snapshot.
+     */
+    @Test
+    public void testSingleFlight() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        win32.createProcess(0, "C:\\a.exe");
+        win32.createProcess(0, "C:\\b.exe");
+        win32.createProcess(0, "C:\\c.exe");
+        CountDownLatch gate = new CountDownLatch(1);
+        win32.setSnapshotGate(gate);
+        final ProcessSnapshotService service = new ProcessSnapshotService(
+                win32, null, 1, TimeUnit.HOURS);
+
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        List<Future<ProcessSnapshot>> results
+            = new ArrayList<Future<ProcessSnapshot>>();
+        for (int i = 0; i < 32; i++) {
+            results.add(callers.submit(new Callable<ProcessSnapshot>() {
+                public ProcessSnapshot call() throws Exception {
+                    return service.getSnapshot();
+                }
+            }));
+        }
+
+        while (win32.getCallCount("CreateToolhelp32Snapshot") == 0) {
+            Thread.yield();
+        }
+        Thread.sleep(50);
+        gate.countDown();
+
+        ProcessSnapshot first = results.get(0).get();
+        for (Future<ProcessSnapshot> result : results) {
+            assertSame(first, result.get());
+        }
+        assertEquals(1, win32.getCallCount("CreateToolhelp32Snapshot"));
+        assertEquals(1, service.getRefreshCount());
+        assertEquals(3, service.getProcessList().size());
+        callers.shutdown();
+    }
+
+    /**
+     * Snapshots older than the maximum staleness are replaced.
+     */
+    @Test
+    public void testStaleness() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        win32.createProcess(0, "C:\\a.exe");
+        int b = win32.createProcess(0, "C:\\b.exe");
+        ProcessSnapshotService service = new ProcessSnapshotService(
+                win32, null, 1, TimeUnit.HOURS);
+
+        ProcessSnapshot first = service.getSnapshot();
+        assertSame(first, service.getSnapshot());
+
+        win32.exitProcess(b, 0);
+        assertSame(first, service.getSnapshot());
+        ProcessSnapshot second = service.getSnapshot(0, TimeUnit.SECONDS);
+        assertNotSame(first, second);
+        assertEquals(1, second.size());
+        assertSame(second, service.getSnapshot());
+        assertEquals(2, win32.getCallCount("CreateToolhelp32Snapshot"));
+    }
+
+    /**
+     * Background refreshes keep the snapshot current.
+     */
+    @Test
+    public void testBackgroundRefresh() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        win32.createProcess(0, "C:\\a.exe");
+        win32.createProcess(0, "C:\\b.exe");
+        ProcessSnapshotService service = new ProcessSnapshotService(
+                win32, null, 1, TimeUnit.HOURS);
+
+        service.startBackgroundRefresh(5, TimeUnit.MILLISECONDS);
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (service.getRefreshCount() < 3
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        } finally {
+            service.stopBackgroundRefresh();
+        }
+
+        assertTrue(service.getRefreshCount() >= 3);
+        long refreshes = win32.getCallCount("CreateToolhelp32Snapshot");
+        service.getSnapshot();
+        assertEquals(refreshes, win32.getCallCount("CreateToolhelp32Snapshot"));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Arrays;
+import java.util.List;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ProcessSnapshot.
+ */
+public class ProcessSnapshotTest extends Assert {
+    /** Path shared by most of the test processes. */
+    private static final String SVCHOST = "C:\\Windows\\System32\\svchost.exe";
+
+    /**
+     * Builds a small process tree.
+     *
+     * @return The snapshot.
+     */
+    private static ProcessSnapshot tree() {
+        return new ProcessSnapshot.Builder(0)
+            .add(400, 4, SVCHOST)
+            .add(4, 0, "System")
+            .add(812, 400, "C:\\Windows\\System32\\cmd.exe")
+            .add(96, 4, new String(SVCHOST))
+            .add(1204, 812, SVCHOST.toCharArray(), SVCHOST.length())
+            .build();
+    }
+
+    /**
+     * Processes are sorted by process id and image names are shared.
+     */
+    @Test
+    public void testColumns() {
+        ProcessSnapshot snapshot = tree();
+
+        assertEquals(5, snapshot.size());
+        assertEquals(3, snapshot.getImageNameCount());
+        assertEquals(4, snapshot.getProcessId(0));
+        assertEquals(96, snapshot.getProcessId(1));
+        assertEquals(1204, snapshot.getProcessId(4));
+        assertEquals(812, snapshot.getParentProcessId(4));
+        assertSame(snapshot.getImageName(1), snapshot.getImageName(2));
+        assertSame(snapshot.getImageName(1), snapshot.getImageName(4));
+        assertEquals(SVCHOST, snapshot.getImageName(4));
+    }
+
+    /**
+     * Processes are found by binary search.
+     */
+    @Test
+    public void testLookup() {
+        ProcessSnapshot snapshot = tree();
+
+        assertEquals(3, snapshot.indexOf(812));
+        assertEquals(-1, snapshot.indexOf(813));
+        assertEquals("System", snapshot.findProcess(4).getImageName());
+        assertNull(snapshot.findProcess(0));
+    }
+
+    /**
+     * Ancestors are walked towards the root.
+     */
+    @Test
+    public void testAncestors() {
+        List<ProcessUtils.ProcessInfo> ancestors
+            = tree().getProcessAncestors(1204);
+
+        assertEquals(4, ancestors.size());
+        assertEquals(812, ancestors.get(1).getProcessId());
+        assertEquals(4, ancestors.get(3).getProcessId());
+    }
+
+    /**
+     * The list view and the ProcessInfo round trip agree.
+     */
+    @Test
+    public void testProcessListView() {
+        List<ProcessUtils.ProcessInfo> processList = Arrays.asList(
+            new ProcessUtils.ProcessInfo(8, 4, SVCHOST),
+            new ProcessUtils.ProcessInfo(4, 0, "System"));
+        List<ProcessUtils.ProcessInfo> view
+            = ProcessSnapshot.of(processList).asProcessList();
+
+        assertEquals(2, view.size());
+        assertEquals(4, view.get(0).getProcessId());
+        assertEquals(SVCHOST, view.get(1).getImageName());
+        assertEquals(4, view.get(1).getParentProcessId());
+    }
+}
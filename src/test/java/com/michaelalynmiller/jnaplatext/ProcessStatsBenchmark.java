@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessStats;
+
+/**
+ * Measures the cost of a ProcessStats cycle against the real /proc,
+ * comparing ProcProcessStatsSource with reading each stat file into a
+ * String and splitting it.  Run with
+ * <code>java ... ProcessStatsBenchmark [cycles]</code>.
+ */
+public final class ProcessStatsBenchmark {
+    /**
+     * Prevent construction.
+     */
+    private ProcessStatsBenchmark() { }
+
+    /**
+     * A Source that reads /proc the straightforward way.
+     */
+    private static final class NaiveSource implements ProcessStats.Source {
+        /** {@inheritDoc} */
+        public void read(final ProcessStats.Sample sample)
+                throws IOException {
+            for (File dir : new File("/proc").listFiles()) {
+                int processId;
+                try {
+                    processId = Integer.parseInt(dir.getName());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                String stat;
+                try {
+                    stat = new String(Files.readAllBytes(
+                                new File(dir, "stat").toPath()), "US-ASCII");
+                } catch (IOException e) {
+                    continue;
+                }
+
+                String[] fields = stat.substring(
+                        stat.lastIndexOf(')') + 2).split(" ");
+                sample.add(processId,
+                        Long.parseLong(fields[19]),
+                        (Long.parseLong(fields[11])
+                            + Long.parseLong(fields[12])) * 10000000L,
+                        Long.parseLong(fields[21]) * 4096,
+                        -1);
+            }
+        }
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optional number of sampling cycles.
+     */
+    public static void main(final String[] args) throws Exception {
+        int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        for (int round = 0; round < 2; round++) {
+            run("naive", new ProcessStats(new NaiveSource()), cycles);
+            run("bulk", new ProcessStats(new ProcProcessStatsSource()),
+                    cycles);
+            run("bulk+fds", new ProcessStats(new ProcProcessStatsSource(
+                    new File("/proc"),
+                    LibC.INSTANCE.sysconf(LibC._SC_CLK_TCK).longValue(),
+                    LibC.INSTANCE.sysconf(LibC._SC_PAGESIZE).longValue(),
+                    true)), cycles);
+        }
+    }
+
+    /**
+     * Times a number of sampling cycles.
+     *
+     * @param name Name of the configuration.
+     * @param stats The sampler.
+     * @param cycles Number of cycles.
+     */
+    private static void run(
+            final String name, final ProcessStats stats, final int cycles)
+            throws IOException {
+        int processes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < cycles; i++) {
+            processes = stats.sample().size();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-9s %5d processes  %8.1f us/cycle%n",
+                name, processes, elapsed / 1000.0 / cycles);
+    }
+}
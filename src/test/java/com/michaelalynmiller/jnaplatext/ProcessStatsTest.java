@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext;
+
+/* Java imports. */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for ProcessStats.
+ */
+public class ProcessStatsTest extends Assert {
+    /**
+     * A Source that replays scripted samples.  Each row is
+     * {pid, startTime, cpuTimeNanos, workingSetBytes}.
+     */
+    private static final class ScriptedSource implements ProcessStats.Source {
+        /** The samples to return, in order. */
+        private final List<long[][]> samples = new ArrayList<long[][]>();
+
+        /** true to fail the next read. */
+        private boolean fail;
+
+        /**
+         * Adds a sample to the script.
+         *
+         * @param rows The processes in the sample.
+         */
+        void add(final long[]... rows) {
+            samples.add(rows);
+        }
+
+        /** {@inheritDoc} */
+        public void read(final ProcessStats.Sample sample)
+                throws IOException {
+            if (fail) {
+                fail = false;
+                throw new IOException("scripted failure");
+            }
+
+            /* Make sure some time passes between samples. */
+            long start = System.nanoTime();
+            while (System.nanoTime() == start) {
+                Thread.yield();
+            }
+
+            for (long[] row : samples.remove(0)) {
+                sample.add((int) row[0], row[1], row[2], row[3], -1);
+            }
+        }
+    }
+
+    /**
+     * CPU usage is computed from the change in CPU time, and is NaN for
+     * new processes and reused process ids.
+     */
+    @Test
+    public void testCpuPercent() throws Exception {
+        ScriptedSource source = new ScriptedSource();
+        source.add(new long[] {4, 1, 0, 100},
+                   new long[] {8, 1, 0, 200},
+                   new long[] {12, 1, 0, 300});
+        source.add(new long[] {12, 2, 50, 300},
+                   new long[] {8, 1, Long.MAX_VALUE / 4, 200},
+                   new long[] {16, 1, 10, 400},
+                   new long[] {4, 1, 0, 100});
+
+        ProcessStats stats = new ProcessStats(source, 2);
+        ProcessStats.Sample first = stats.sample();
+        assertEquals(3, first.size());
+        assertTrue(Float.isNaN(first.getCpuPercent(0)));
+
+        ProcessStats.Sample second = stats.sample();
+        assertEquals(4, second.size());
+        assertTrue(Float.isNaN(second.getCpuPercent(0)));
+        assertTrue(second.getCpuPercent(1) > 0);
+        assertTrue(Float.isNaN(second.getCpuPercent(2)));
+        assertEquals(0.0f, second.getCpuPercent(3), 0.0f);
+        assertEquals(200, second.getWorkingSetBytes(1));
+        assertEquals(-1, second.getHandleCount(1));
+    }
+
+    /**
+     * Samples alternate between two sets of columns.
+     */
+    @Test
+    public void testSamplesAreReused() throws Exception {
+        ScriptedSource source = new ScriptedSource();
+        for (int i = 0; i < 3; i++) {
+            source.add(new long[] {4, 1, i, 100});
+        }
+
+        ProcessStats stats = new ProcessStats(source);
+        ProcessStats.Sample first = stats.sample();
+        ProcessStats.Sample second = stats.sample();
+        assertNotSame(first, second);
+        assertSame(first, stats.sample());
+        assertEquals(2, first.getCpuTimeNanos(0));
+    }
+
+    /**
+     * A failed read keeps the last good sample as the baseline.
+     */
+    @Test
+    public void testFailedRead() throws Exception {
+        ScriptedSource source = new ScriptedSource();
+        source.add(new long[] {4, 1, 0, 100});
+        source.add(new long[] {4, 1, 1000, 100});
+
+        ProcessStats stats = new ProcessStats(source);
+        stats.sample();
+        source.fail = true;
+        try {
+            stats.sample();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals("scripted failure", e.getMessage());
+        }
+
+        ProcessStats.Sample sample = stats.sample();
+        assertTrue(sample.getCpuPercent(0) > 0);
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.FileOutputStream;
+
+/* JNA imports. */
+import com.sun.jna.Platform;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ConsoleSession;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for PtyConsoleSession.
+ */
+public class PtyConsoleSessionTest extends Assert {
+    /**
+     * Collects console output.
+     */
+    private static final class Recorder
+            implements ConsoleSession.OutputListener {
+        /** The output. */
+        private final StringBuilder text = new StringBuilder();
+
+        /** {@inheritDoc} */
+        public void output(final char[] chars, final int offset,
+                final int length) {
+            text.append(chars, offset, length);
+        }
+    }
+
+    /**
+     * Skips the tests on platforms without pseudo-terminals.
+     */
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Platform.isLinux());
+    }
+
+    /**
+     * Reads until the output contains the given text.
+     *
+     * @param session The session.
+     * @param recorder Receives the output.
+     * @param text The text to wait for.
+     */
+    private static void readUntil(final ConsoleSession session,
+            final Recorder recorder, final String text) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (recorder.text.indexOf(text) < 0
+                && System.currentTimeMillis() < deadline) {
+            assertTrue(session.read(recorder, 100) >= 0);
+        }
+        assertTrue(recorder.text.toString(),
+                recorder.text.indexOf(text) >= 0);
+    }
+
+    /**
+     * Commands typed into /bin/sh are answered through reads, and each
+     * read returns only new output.
+     */
+    @Test
+    public void testRequestResponse() throws Exception {
+        PseudoTerminal pty = PseudoTerminal.open();
+        ConsoleSession session = new PtyConsoleSession(pty);
+        try {
+            Process sh = pty.start("/bin/sh");
+            Recorder recorder = new Recorder();
+
+            session.write("echo first-$((6 * 7))\n");
+            readUntil(session, recorder, "first-42");
+
+            recorder.text.setLength(0);
+            session.write("echo second-$((6 * 9))\n");
+            readUntil(session, recorder, "second-54");
+            assertTrue(recorder.text.indexOf("first-42") < 0);
+
+            session.write("exit\n");
+            assertEquals(0, sh.waitFor());
+        } finally {
+            session.close();
+        }
+        assertEquals(-1, session.read(new Recorder(), 0));
+    }
+
+    /**
+     * A read times out when there is no output, and a character that
+     * is split across reads is delivered once it is complete.
+     */
+    @Test
+    public void testTimeoutAndSplitCharacter() throws Exception {
+        PseudoTerminal pty = PseudoTerminal.open();
+        ConsoleSession session = new PtyConsoleSession(pty);
+        FileOutputStream slave = new FileOutputStream(pty.getSlaveName());
+        try {
+            Recorder recorder = new Recorder();
+            assertEquals(0, session.read(recorder, 10));
+
+            /* U+00E9 is C3 A9 in UTF-8. */
+            slave.write(new byte[] {'x', (byte) 0xC3 });
+            slave.flush();
+            assertEquals(1, session.read(recorder, 5000));
+            assertEquals("x", recorder.text.toString());
+
+            slave.write(new byte[] {(byte) 0xA9, 'y' });
+            slave.flush();
+            readUntil(session, recorder, "y");
+            assertEquals("x\u00E9y", recorder.text.toString());
+        } finally {
+            slave.close();
+            session.close();
+        }
+    }
+
+    /**
+     * A read reports the end of the session once the terminal's slave
+     * side has been closed by every process.
+     */
+    @Test
+    public void testHangup() throws Exception {
+        PseudoTerminal pty = PseudoTerminal.open();
+        ConsoleSession session = new PtyConsoleSession(pty);
+        try {
+            Process sh = pty.start("/bin/sh");
+            session.write("exit\n");
+            assertEquals(0, sh.waitFor());
+
+            Recorder recorder = new Recorder();
+            long deadline = System.currentTimeMillis() + 10000;
+            int result = 0;
+            while (result >= 0 && System.currentTimeMillis() < deadline) {
+                result = session.read(recorder, 100);
+            }
+            assertEquals(-1, result);
+        } finally {
+            session.close();
+        }
+    }
+}
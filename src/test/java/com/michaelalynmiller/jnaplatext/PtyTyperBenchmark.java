@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/**
+ * Measures PtyTyper throughput against a local /bin/sh, comparing one
+ * write per character with buffered writes.  Run with
+ * <code>java ... PtyTyperBenchmark [lines]</code>.
+ */
+public final class PtyTyperBenchmark {
+    /**
+     * Prevent construction.
+     */
+    private PtyTyperBenchmark() { }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Optional number of lines to type.
+     */
+    public static void main(final String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+        /* Build a script of no-op commands. */
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            script.append(": the quick brown fox jumps over the lazy dog ")
+                .append(i).append('\n');
+        }
+        String text = script.toString();
+
+        /* Warm up, then measure both strategies. */
+        run(text, true);
+        run(text, false);
+        report("per-character", text, run(text, true));
+        report("buffered", text, run(text, false));
+    }
+
+    /**
+     * Types the text into a new /bin/sh and waits for the shell to
+     * exit.
+     *
+     * @param text The text to type.
+     * @param perCharacter true to write each character separately.
+     * @return Elapsed time in nanoseconds.
+     */
+    private static long run(final String text, final boolean perCharacter)
+            throws Exception {
+        PseudoTerminal pty = PseudoTerminal.open();
+        try {
+            Process sh = pty.start("/bin/sh");
+            PtyTyperTest.drain(pty, null);
+            PtyTyper typer = new PtyTyper(pty);
+
+            long start = System.nanoTime();
+            if (perCharacter) {
+                for (int i = 0; i < text.length(); i++) {
+                    typer.write(text.substring(i, i + 1));
+                }
+            } else {
+                typer.write(text);
+            }
+            typer.write("exit\n");
+            sh.waitFor();
+            return System.nanoTime() - start;
+        } finally {
+            pty.close();
+        }
+    }
+
+    /**
+     * Prints the throughput of a single run.
+     *
+     * @param name Name of the strategy.
+     * @param text The text that was typed.
+     * @param nanos Elapsed time in nanoseconds.
+     */
+    private static void report(
+            final String name, final String text, final long nanos) {
+        System.out.printf("%-14s %8d chars in %6d ms (%,.0f chars/s)%n",
+                name, text.length(), nanos / 1000000,
+                text.length() * 1e9 / nanos);
+    }
+}
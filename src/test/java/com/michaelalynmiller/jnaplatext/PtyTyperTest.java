@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.linux;
+
+/* Java imports. */
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for PtyTyper.
+ */
+public class PtyTyperTest extends Assert {
+    /**
+     * Skips the tests on platforms without pseudo-terminals.
+     */
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Platform.isLinux());
+    }
+
+    /**
+     * Commands typed into /bin/sh are executed.
+     */
+    @Test
+    public void testWriteToShell() throws Exception {
+        PseudoTerminal pty = PseudoTerminal.open();
+        try {
+            Process sh = pty.start("/bin/sh");
+            StringBuffer output = new StringBuffer();
+            Thread drainer = drain(pty, output);
+
+            PtyTyper typer = new PtyTyper(pty);
+            typer.write("echo jnaplatext-$((6 * 7))\n");
+            typer.write("exit\n");
+
+            assertTrue(sh.waitFor(10, TimeUnit.SECONDS));
+            assertEquals(0, sh.exitValue());
+            drainer.join(5000);
+            assertTrue(output.toString(),
+                    output.indexOf("jnaplatext-42") >= 0);
+        } finally {
+            pty.close();
+        }
+    }
+
+    /**
+     * Writes after the pseudo-terminal has been closed fail instead of
+     * going to whatever file reuses its descriptor.
+     */
+    @Test
+    public void testWriteAfterClose() throws Exception {
+        PseudoTerminal pty = PseudoTerminal.open();
+        PtyTyper typer = new PtyTyper(pty);
+        pty.close();
+
+        try {
+            typer.write("echo closed\n");
+            fail("Expected the write to fail.");
+        } catch (IOException e) {
+            assertEquals(-1, pty.getMasterFd());
+        }
+    }
+
+    /**
+     * Starts a daemon thread that reads everything written to the
+     * pseudo-terminal until its slave side is closed.
+     *
+     * @param pty The pseudo-terminal to drain.
+     * @param output Receives the output, or null to discard it.
+     * @return The draining thread.
+     */
+    static Thread drain(final PseudoTerminal pty, final StringBuffer output) {
+        Thread drainer = new Thread(new Runnable() {
+            public void run() {
+                Memory buf = new Memory(64 * 1024);
+                while (true) {
+                    long n = LibC.INSTANCE.read(pty.getMasterFd(), buf,
+                            new NativeLong(buf.size())).longValue();
+                    if (n <= 0) {
+                        return;
+                    }
+
+                    if (output != null) {
+                        output.append(new String(
+                                buf.getByteArray(0, (int) n)));
+                    }
+                }
+            }
+        });
+        drainer.setDaemon(true);
+        drainer.start();
+        return drainer;
+    }
+}
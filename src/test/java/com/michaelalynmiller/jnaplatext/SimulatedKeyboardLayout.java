@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Arrays;
+
+/**
+ * A keyboard layout for SimulatedWin32: the mapping between characters,
+ * virtual-key codes, shift states and scan codes that VkKeyScan and
+ * MapVirtualKey consult.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+final class SimulatedKeyboardLayout {
+    /** Shift state bit for the SHIFT key. */
+    public static final int SHIFT = 0x01;
+
+    /** Shift state bit for the CTRL key. */
+    public static final int CTRL = 0x02;
+
+    /** MapVirtualKey: translate a virtual-key code into a scan code. */
+    public static final int MAPVK_VK_TO_VSC = 0;
+
+    /** MapVirtualKey: translate a scan code into a virtual-key code. */
+    public static final int MAPVK_VSC_TO_VK = 1;
+
+    /** MapVirtualKey: translate a virtual-key code into an unshifted
+     * character value. */
+    public static final int MAPVK_VK_TO_CHAR = 2;
+
+    /** The US English (101/102-key) layout, covering printable ASCII
+     * and the common control keys. */
+    public static final SimulatedKeyboardLayout US = createUsLayout();
+
+    /** VkKeyScan result for each character; -1 if unmapped. */
+    private final short[] vkKeyScan = new short[Character.MAX_VALUE + 1];
+
+    /** Scan code for each virtual-key code; 0 if unmapped. */
+    private final int[] scanCodes = new int[256];
+
+    /** Virtual-key code for each scan code; 0 if unmapped. */
+    private final int[] virtualKeys = new int[256];
+
+    /** Unshifted character for each virtual-key code; 0 if unmapped. */
+    private final char[] characters = new char[256];
+
+    /**
+     * Constructs a new, empty SimulatedKeyboardLayout.
+     */
+    public SimulatedKeyboardLayout() {
+        Arrays.fill(vkKeyScan, (short) -1);
+    }
+
+    /**
+     * Maps a character to a key.
+     *
+     * @param c The character.
+     * @param vkey Virtual-key code of the key that produces the
+     *  character.
+     * @param shiftState Modifier keys (SHIFT, CTRL) that must be held.
+     * @param scanCode Scan code of the key.
+     * @return This layout.
+     */
+    public SimulatedKeyboardLayout map(
+            final char c,
+            final int vkey,
+            final int shiftState,
+            final int scanCode) {
+        vkKeyScan[c] = (short) ((shiftState << 8) | (vkey & 0xff));
+        scanCodes[vkey & 0xff] = scanCode;
+        virtualKeys[scanCode & 0xff] = vkey & 0xff;
+        if (shiftState == 0) {
+            characters[vkey & 0xff] = c;
+        }
+        return this;
+    }
+
+    /**
+     * Translates a character to the corresponding virtual-key code and
+     * shift state, as VkKeyScan does.
+     *
+     * @param ch The character to be translated.
+     * @return The virtual-key code in the low-order byte and the shift
+     *  state in the high-order byte; -1 if the character is unmapped.
+     */
+    public short vkKeyScan(final char ch) {
+        return vkKeyScan[ch];
+    }
+
+    /**
+     * Translates a virtual-key code or scan code, as MapVirtualKey
+     * does.
+     *
+     * @param uCode The virtual key code or scan code for a key.
+     * @param uMapType The translation to be performed.
+     * @return The translated code; zero if there is no translation.
+     */
+    public int mapVirtualKey(final int uCode, final int uMapType) {
+        if (uCode < 0 || uCode > 0xff) {
+            return 0;
+        }
+
+        switch (uMapType) {
+        case MAPVK_VK_TO_VSC:
+            return scanCodes[uCode];
+        case MAPVK_VSC_TO_VK:
+            return virtualKeys[uCode];
+        case MAPVK_VK_TO_CHAR:
+            return characters[uCode];
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Creates the US English layout.
+     *
+     * @return The US English layout.
+     */
+    private static SimulatedKeyboardLayout createUsLayout() {
+        SimulatedKeyboardLayout layout = new SimulatedKeyboardLayout();
+
+        /* Each row lists the unshifted characters, the shifted
+         * characters, the virtual-key codes and the scan codes of a row
+         * of keys, from left to right. */
+        mapRow(layout, "`1234567890-=", "~!@#$%^&*()_+",
+                new int[] {0xC0, '1', '2', '3', '4', '5', '6', '7', '8',
+                    '9', '0', 0xBD, 0xBB},
+                new int[] {0x29, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08,
+                    0x09, 0x0A, 0x0B, 0x0C, 0x0D});
+        mapRow(layout, "qwertyuiop[]\\", "QWERTYUIOP{}|",
+                new int[] {'Q', 'W', 'E', 'R', 'T', 'Y', 'U', 'I', 'O', 'P',
+                    0xDB, 0xDD, 0xDC},
+                new int[] {0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17,
+                    0x18, 0x19, 0x1A, 0x1B, 0x2B});
+        mapRow(layout, "asdfghjkl;'", "ASDFGHJKL:\"",
+                new int[] {'A', 'S', 'D', 'F', 'G', 'H', 'J', 'K', 'L',
+                    0xBA, 0xDE},
+                new int[] {0x1E, 0x1F, 0x20, 0x21, 0x22, 0x23, 0x24, 0x25,
+                    0x26, 0x27, 0x28});
+        mapRow(layout, "zxcvbnm,./", "ZXCVBNM<>?",
+                new int[] {'Z', 'X', 'C', 'V', 'B', 'N', 'M',
+                    0xBC, 0xBE, 0xBF},
+                new int[] {0x2C, 0x2D, 0x2E, 0x2F, 0x30, 0x31, 0x32,
+                    0x33, 0x34, 0x35});
+
+        /* Control keys. */
+        layout.map(' ', 0x20, 0, 0x39);     /* VK_SPACE */
+        layout.map('\r', 0x0D, 0, 0x1C);    /* VK_RETURN */
+        layout.map('\n', 0x0D, CTRL, 0x1C);
+        layout.map('\t', 0x09, 0, 0x0F);    /* VK_TAB */
+        layout.map('\b', 0x08, 0, 0x0E);    /* VK_BACK */
+        layout.map('\u001b', 0x1B, 0, 0x01); /* VK_ESCAPE */
+
+        return layout;
+    }
+
+    /**
+     * Maps a row of keys.
+     *
+     * @param layout The layout.
+     * @param unshifted Characters produced without SHIFT.
+     * @param shifted Characters produced with SHIFT.
+     * @param vkeys Virtual-key codes.
+     * @param scanCodes Scan codes.
+     */
+    private static void mapRow(
+            final SimulatedKeyboardLayout layout,
+            final String unshifted,
+            final String shifted,
+            final int[] vkeys,
+            final int[] scanCodes) {
+        for (int i = 0; i < vkeys.length; i++) {
+            layout.map(shifted.charAt(i), vkeys[i], SHIFT, scanCodes[i]);
+            layout.map(unshifted.charAt(i), vkeys[i], 0, scanCodes[i]);
+        }
+    }
+}
@@ -0,0 +1,1806 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* JNA imports. */
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import com.sun.jna.WString;
+import com.sun.jna.platform.win32.BaseTSD.SIZE_T;
+import com.sun.jna.platform.win32.Tlhelp32;
+import com.sun.jna.platform.win32.WinBase;
+import com.sun.jna.platform.win32.WinBase.FILETIME;
+import com.sun.jna.platform.win32.WinBase.SECURITY_ATTRIBUTES;
+import com.sun.jna.platform.win32.WinDef.DWORD;
+import com.sun.jna.platform.win32.WinDef.HINSTANCE;
+import com.sun.jna.platform.win32.WinDef.HMENU;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.LRESULT;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+import com.sun.jna.platform.win32.WinError;
+import com.sun.jna.platform.win32.WinNT.HANDLE;
+import com.sun.jna.ptr.IntByReference;
+
+/**
+ * An in-process simulation of the USER32 and KERNEL32 functions used by
+ * this library, so that the Windows code can be tested without a
+ * Windows desktop.
+ *
+ * <p>The simulation models a process table, top-level windows in
+ * z-order, the clipboard and the active keyboard layout.  Process ids
+ * and handles are allocated sequentially and never reused, so runs are
+ * reproducible.  Process handles can be waited for, and are signaled
+ * once their process exits.
+ *
+ * <p>Each window has a bounded message queue, which is either pumped
+ * explicitly with {@link #pump} or serviced by a consumer thread that
+ * spends a fixed time on each message.  As on Windows, PostMessage
+ * fails with ERROR_NOT_ENOUGH_QUOTA when the queue is full, and sent
+ * messages are processed ahead of posted ones.  A window that receives
+ * the console Paste command reads the clipboard's text as if it had
+ * been typed.
+ *
+ * <p>Every simulated function counts its calls; see
+ * {@link #getCallCount}.
+ *
+ * @author      Michael Alyn Miller <malyn@strangeGizmo.com>
+ * @version     1.0.0
+ */
+final class SimulatedWin32
+        implements User32Clipboard, User32Input, User32Window,
+                   Kernel32Memory, Kernel32Process, Kernel32Wait {
+    /** Access is denied. */
+    public static final int ERROR_ACCESS_DENIED = 5;
+
+    /** The handle is invalid. */
+    public static final int ERROR_INVALID_HANDLE = 6;
+
+    /** The parameter is incorrect. */
+    public static final int ERROR_INVALID_PARAMETER = 87;
+
+    /** The data area passed to a system call is too small. */
+    public static final int ERROR_INSUFFICIENT_BUFFER = 122;
+
+    /** Invalid window handle. */
+    public static final int ERROR_INVALID_WINDOW_HANDLE = 1400;
+
+    /** Thread does not have a clipboard open. */
+    public static final int ERROR_CLIPBOARD_NOT_OPEN = 1418;
+
+    /** Not enough quota is available to process this command. */
+    public static final int ERROR_NOT_ENOUGH_QUOTA = 1816;
+
+    /** Default capacity of a window's message queue; this is the
+     * Windows default for USERPostMessageLimit. */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    /** Guards the process, window and handle tables. */
+    private final Object lock = new Object();
+
+    /** Every process ever created, by process id, in creation order. */
+    private final Map<Integer, SimProcess> processes
+        = new LinkedHashMap<Integer, SimProcess>();
+
+    /** Live windows, by handle value, in z-order. */
+    private final Map<Long, SimWindow> windows
+        = new LinkedHashMap<Long, SimWindow>();
+
+    /** Handle values of the live message-only windows. */
+    private final Set<Long> messageWindows = new HashSet<Long>();
+
+    /** Live global memory blocks, by handle value. */
+    private final Map<Long, Memory> globals = new HashMap<Long, Memory>();
+
+    /** Clipboard contents: global memory handle values by format, in
+     * the order in which they were set. */
+    private final Map<Integer, Long> clipboardData
+        = new LinkedHashMap<Integer, Long>();
+
+    /** Event queues of the started window event sources. */
+    private final List<BlockingQueue<WindowEvent>> windowEventQueues
+        = new ArrayList<BlockingQueue<WindowEvent>>();
+
+    /** Thread that has the clipboard open; null if it is closed. */
+    private Thread clipboardOwner;
+
+    /** Handle value of the window passed to OpenClipboard; zero if
+     * none was. */
+    private long clipboardOpenWindow;
+
+    /** Handle value of the window that owns the clipboard contents;
+     * zero if the contents have no owner. */
+    private long clipboardOwnerWindow;
+
+    /** Open kernel handles, by handle value. */
+    private final Map<Long, Object> handles = new HashMap<Long, Object>();
+
+    /** Next process id to allocate. */
+    private int nextProcessId = 4;
+
+    /** Next thread id to allocate. */
+    private int nextThreadId = 8;
+
+    /** Next kernel handle value to allocate. */
+    private long nextHandle = 0x100;
+
+    /** Next global memory handle value to allocate. */
+    private long nextGlobal = 0x20000;
+
+    /** Next window handle value to allocate. */
+    private long nextHwnd = 0x10010;
+
+    /** Logical clock used for process creation times. */
+    private long clock;
+
+    /** If set, CreateToolhelp32Snapshot blocks until this latch is
+     * released. */
+    private volatile CountDownLatch snapshotGate;
+
+    /** Number of upcoming infinite waits that fail. */
+    private final AtomicInteger failingWaits = new AtomicInteger();
+
+    /** Process id returned by GetCurrentProcessId. */
+    private volatile int currentProcessId;
+
+    /** Active keyboard layout. */
+    private volatile SimulatedKeyboardLayout keyboardLayout
+        = SimulatedKeyboardLayout.US;
+
+    /** Each thread's last-error code. */
+    private final ThreadLocal<int[]> lastError = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    /** Number of calls made to each simulated function. */
+    private final ConcurrentHashMap<String, AtomicLong> callCounts
+        = new ConcurrentHashMap<String, AtomicLong>();
+
+    /* -----------------------------------------------------------------
+     * Simulation control
+     */
+
+    /**
+     * Creates a process.
+     *
+     * @param parentProcessId Process id of the parent process.
+     * @param imageName Full path to the process's image.
+     * @return The process id of the new process.
+     */
+    public int createProcess(
+            final int parentProcessId, final String imageName) {
+        synchronized (lock) {
+            SimProcess process = new SimProcess(
+                    nextProcessId, parentProcessId, imageName, ++clock);
+            nextProcessId += 4;
+            processes.put(process.processId, process);
+            return process.processId;
+        }
+    }
+
+    /**
+     * Terminates a process and destroys its windows.
+     *
+     * @param processId Process id of the process.
+     * @param exitCode The process's exit code.
+     */
+    public void exitProcess(final int processId, final int exitCode) {
+        List<SimWindow> destroyed = new ArrayList<SimWindow>();
+        synchronized (lock) {
+            SimProcess process = processes.get(processId);
+            if (process == null || process.exitCode != null) {
+                return;
+            }
+            process.exitCode = exitCode;
+            lock.notifyAll();
+
+            for (SimWindow window : windows.values()) {
+                if (window.processId == processId) {
+                    destroyed.add(window);
+                }
+            }
+            for (SimWindow window : destroyed) {
+                windows.remove(window.value);
+                fireWindowEvent(WinUser.EVENT_OBJECT_DESTROY, window.hwnd);
+            }
+        }
+
+        for (SimWindow window : destroyed) {
+            window.stop();
+        }
+    }
+
+    /**
+     * Sets the process id that GetCurrentProcessId returns.
+     *
+     * @param processId The process id.
+     */
+    public void setCurrentProcessId(final int processId) {
+        this.currentProcessId = processId;
+    }
+
+    /**
+     * Makes CreateToolhelp32Snapshot block until a latch is released.
+     *
+     * @param gate The latch; null to stop blocking.
+     */
+    public void setSnapshotGate(final CountDownLatch gate) {
+        this.snapshotGate = gate;
+    }
+
+    /**
+     * Makes the next infinite waits fail with ERROR_INVALID_HANDLE, as
+     * they would if a waited-for event had been closed.  Polls with a
+     * finite timeout are unaffected.
+     *
+     * @param count Number of waits that fail.
+     */
+    public void failInfiniteWaits(final int count) {
+        this.failingWaits.set(count);
+    }
+
+    /**
+     * Sets the active keyboard layout.
+     *
+     * @param layout The keyboard layout.
+     */
+    public void setKeyboardLayout(final SimulatedKeyboardLayout layout) {
+        this.keyboardLayout = layout;
+    }
+
+    /**
+     * Creates a top-level window whose queue has the default capacity
+     * and is pumped explicitly.
+     *
+     * @param processId Process id of the window's owner.
+     * @return The new window.
+     */
+    public HWND createWindow(final int processId) {
+        return createWindow(processId, DEFAULT_QUEUE_CAPACITY, -1);
+    }
+
+    /**
+     * Creates a top-level window.
+     *
+     * @param processId Process id of the window's owner.
+     * @param queueCapacity Maximum number of posted messages that may be
+     *  waiting in the window's queue.
+     * @param nanosPerMessage Time the window's consumer thread spends on
+     *  each message; negative if the queue is pumped explicitly.
+     * @return The new window.
+     */
+    public HWND createWindow(
+            final int processId,
+            final int queueCapacity,
+            final long nanosPerMessage) {
+        SimWindow window;
+        synchronized (lock) {
+            SimProcess process = processes.get(processId);
+            if (process == null || process.exitCode != null) {
+                throw new IllegalArgumentException(
+                        "No such process: " + processId);
+            }
+
+            window = new SimWindow(nextHwnd, processId, nextThreadId,
+                    queueCapacity, nanosPerMessage);
+            nextHwnd += 2;
+            nextThreadId += 4;
+            windows.put(window.value, window);
+            fireWindowEvent(WinUser.EVENT_OBJECT_CREATE, window.hwnd);
+        }
+
+        if (nanosPerMessage >= 0) {
+            window.start();
+        }
+        return window.hwnd;
+    }
+
+    /**
+     * Destroys a window.  Messages still in its queue are discarded.
+     *
+     * @param hwnd The window.
+     */
+    public void destroyWindow(final HWND hwnd) {
+        SimWindow window;
+        synchronized (lock) {
+            window = windows.remove(valueOf(hwnd));
+            if (window != null) {
+                fireWindowEvent(WinUser.EVENT_OBJECT_DESTROY, window.hwnd);
+            }
+        }
+
+        if (window != null) {
+            window.stop();
+        }
+    }
+
+    /**
+     * Sets a window's title.
+     *
+     * @param hwnd The window.
+     * @param title The new title.
+     */
+    public void setWindowText(final HWND hwnd, final String title) {
+        synchronized (lock) {
+            SimWindow window = requireWindow(hwnd);
+            window.title = title;
+            fireWindowEvent(WinUser.EVENT_OBJECT_NAMECHANGE, window.hwnd);
+        }
+    }
+
+    /**
+     * Creates a source of window events.  As with WinEvent hooks,
+     * events are queued from the moment the source starts and are
+     * delivered in order on the source's own pump thread.
+     *
+     * @return The new, unstarted source.
+     */
+    public WindowEventSource createWindowEventSource() {
+        return new SimWindowEventSource();
+    }
+
+    /**
+     * Processes every message in an explicitly-pumped window's queue.
+     *
+     * @param hwnd The window.
+     * @return The number of messages processed.
+     */
+    public int pump(final HWND hwnd) {
+        SimWindow window = requireWindow(hwnd);
+        int count = 0;
+        for (Message message = window.poll();
+                message != null;
+                message = window.poll()) {
+            window.dispatch(message);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of messages waiting in a window's queue.
+     *
+     * @param hwnd The window.
+     * @return The number of queued messages.
+     */
+    public int getQueueDepth(final HWND hwnd) {
+        SimWindow window = requireWindow(hwnd);
+        synchronized (window) {
+            return window.posted.size() + window.sent.size();
+        }
+    }
+
+    /**
+     * Returns the number of messages that a window has processed.
+     *
+     * @param hwnd The window.
+     * @return The number of processed messages.
+     */
+    public long getProcessedMessageCount(final HWND hwnd) {
+        return requireWindow(hwnd).processed.get();
+    }
+
+    /**
+     * Returns the number of messages that could not be posted to a
+     * window because its queue was full.
+     *
+     * @param hwnd The window.
+     * @return The number of dropped messages.
+     */
+    public long getDroppedMessageCount(final HWND hwnd) {
+        return requireWindow(hwnd).dropped.get();
+    }
+
+    /**
+     * Returns the characters a window has received through WM_CHAR.
+     *
+     * @param hwnd The window.
+     * @return The characters received by the window.
+     */
+    public String getReceivedText(final HWND hwnd) {
+        SimWindow window = requireWindow(hwnd);
+        synchronized (window.received) {
+            return window.received.toString();
+        }
+    }
+
+    /**
+     * Adds a format to the clipboard contents.
+     *
+     * @param format The clipboard format.
+     * @param data The format's data.
+     */
+    public void addClipboardContents(final int format, final byte[] data) {
+        synchronized (lock) {
+            Memory memory = new Memory(Math.max(data.length, 1));
+            memory.write(0, data, 0, data.length);
+            Long previous = clipboardData.put(format, allocateGlobal(memory));
+            if (previous != null) {
+                globals.remove(previous);
+            }
+        }
+    }
+
+    /**
+     * Returns the data held on the clipboard in a format.
+     *
+     * @param format The clipboard format.
+     * @return The format's data; null if the clipboard does not hold
+     *  the format.
+     */
+    public byte[] getClipboardContents(final int format) {
+        synchronized (lock) {
+            Long value = clipboardData.get(format);
+            if (value == null) {
+                return null;
+            }
+
+            Memory memory = globals.get(value);
+            return memory.getByteArray(0, (int) memory.size());
+        }
+    }
+
+    /**
+     * Replaces the clipboard contents with text.
+     *
+     * @param text The text.
+     */
+    public void setClipboardText(final String text) {
+        synchronized (lock) {
+            freeClipboardData();
+            Memory memory
+                = new Memory((text.length() + 1) * Native.WCHAR_SIZE);
+            memory.setString(0, text, true);
+            clipboardData.put(CF_UNICODETEXT, allocateGlobal(memory));
+        }
+    }
+
+    /**
+     * Returns the text on the clipboard.
+     *
+     * @return The clipboard text; null if the clipboard does not hold
+     *  text.
+     */
+    public String getClipboardText() {
+        synchronized (lock) {
+            Long value = clipboardData.get(CF_UNICODETEXT);
+            return value == null
+                ? null : globals.get(value).getString(0, true);
+        }
+    }
+
+    /**
+     * Returns the number of live global memory blocks, including those
+     * owned by the clipboard.
+     *
+     * @return The number of global memory blocks.
+     */
+    public int getGlobalMemoryCount() {
+        synchronized (lock) {
+            return globals.size();
+        }
+    }
+
+    /**
+     * Returns the number of live message-only windows.
+     *
+     * @return The number of message-only windows.
+     */
+    public int getMessageWindowCount() {
+        synchronized (lock) {
+            return messageWindows.size();
+        }
+    }
+
+    /**
+     * Returns the number of open kernel handles.
+     *
+     * @return The number of open handles.
+     */
+    public int getOpenHandleCount() {
+        synchronized (lock) {
+            return handles.size();
+        }
+    }
+
+    /**
+     * Returns the number of open handles to a process.
+     *
+     * @param processId Process id of the process.
+     * @return The number of open handles to the process.
+     */
+    public int getOpenHandleCount(final int processId) {
+        synchronized (lock) {
+            int count = 0;
+            for (Object object : handles.values()) {
+                if (object instanceof SimProcess
+                        && ((SimProcess) object).processId == processId) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the number of times a simulated function has been called.
+     *
+     * @param function Name of the function, such as "PostMessageW".
+     * @return The number of calls.
+     */
+    public long getCallCount(final String function) {
+        AtomicLong count = callCounts.get(function);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * Resets every call count to zero.
+     */
+    public void resetCallCounts() {
+        callCounts.clear();
+    }
+
+    /**
+     * Destroys every window, stopping their consumer threads.
+     */
+    public void shutdown() {
+        List<SimWindow> destroyed;
+        synchronized (lock) {
+            destroyed = new ArrayList<SimWindow>(windows.values());
+            windows.clear();
+            for (SimWindow window : destroyed) {
+                fireWindowEvent(WinUser.EVENT_OBJECT_DESTROY, window.hwnd);
+            }
+        }
+
+        for (SimWindow window : destroyed) {
+            window.stop();
+        }
+    }
+
+    /* -----------------------------------------------------------------
+     * User32Input
+     */
+
+    /** {@inheritDoc} */
+    public boolean PostMessageW(
+            final HWND hWnd, final int msg,
+            final WPARAM wParam, final LPARAM lParam) {
+        count("PostMessageW");
+        SimWindow window = findWindow(hWnd);
+        if (window == null) {
+            setLastError(ERROR_INVALID_WINDOW_HANDLE);
+            return false;
+        }
+
+        if (!window.post(new Message(
+                msg, wParam.longValue(), lParam.longValue(), null))) {
+            setLastError(ERROR_NOT_ENOUGH_QUOTA);
+            return false;
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public LRESULT SendMessageTimeout(
+            final HWND hWnd, final int Msg,
+            final WPARAM wParam, final LPARAM lParam,
+            final int fuFlags, final int uTimeout,
+            final Pointer lpdwResult) {
+        count("SendMessageTimeout");
+        SimWindow window = findWindow(hWnd);
+        if (window == null) {
+            setLastError(ERROR_INVALID_WINDOW_HANDLE);
+            return new LRESULT(0);
+        }
+
+        /* Explicitly-pumped windows process sent messages on the
+         * caller's thread.  Messages that time out stay queued, as on
+         * Windows. */
+        Message message = new Message(Msg, wParam.longValue(),
+                lParam.longValue(), new CountDownLatch(1));
+        if (window.consumer == null) {
+            window.dispatch(message);
+            return new LRESULT(1);
+        }
+
+        window.send(message);
+        try {
+            if (!message.processed.await(uTimeout, TimeUnit.MILLISECONDS)) {
+                setLastError(WinError.ERROR_TIMEOUT);
+                return new LRESULT(0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new LRESULT(0);
+        }
+        return new LRESULT(1);
+    }
+
+    /** {@inheritDoc} */
+    public int MapVirtualKey(final int uCode, final int uMapType) {
+        count("MapVirtualKey");
+        return keyboardLayout.mapVirtualKey(uCode, uMapType);
+    }
+
+    /** {@inheritDoc} */
+    public short VkKeyScan(final char ch) {
+        count("VkKeyScan");
+        return keyboardLayout.vkKeyScan(ch);
+    }
+
+    /* -----------------------------------------------------------------
+     * User32Window
+     */
+
+    /** {@inheritDoc} */
+    public boolean EnumWindows(
+            final com.sun.jna.platform.win32.WinUser.WNDENUMPROC lpEnumFunc,
+            final Pointer data) {
+        count("EnumWindows");
+        HWND[] hwnds;
+        synchronized (lock) {
+            hwnds = new HWND[windows.size()];
+            int i = 0;
+            for (SimWindow window : windows.values()) {
+                hwnds[i++] = window.hwnd;
+            }
+        }
+
+        setLastError(0);
+        for (HWND hwnd : hwnds) {
+            if (!lpEnumFunc.callback(hwnd, data)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public int GetWindowThreadProcessId(
+            final HWND hWnd, final IntByReference lpdwProcessId) {
+        count("GetWindowThreadProcessId");
+        SimWindow window = findWindow(hWnd);
+        if (window == null) {
+            setLastError(ERROR_INVALID_WINDOW_HANDLE);
+            return 0;
+        }
+
+        if (lpdwProcessId != null) {
+            lpdwProcessId.setValue(window.processId);
+        }
+        return window.threadId;
+    }
+
+    /** {@inheritDoc} */
+    public int GetWindowText(
+            final HWND hWnd, final char[] lpString, final int nMaxCount) {
+        count("GetWindowText");
+        SimWindow window = findWindow(hWnd);
+        if (window == null) {
+            setLastError(ERROR_INVALID_WINDOW_HANDLE);
+            return 0;
+        }
+
+        /* Truncate the title to fit, leaving room for the
+         * terminator. */
+        String title = window.title;
+        int length = Math.min(title.length(), nMaxCount - 1);
+        if (length < 0) {
+            return 0;
+        }
+        title.getChars(0, length, lpString, 0);
+        lpString[length] = '\0';
+        return length;
+    }
+
+    /* -----------------------------------------------------------------
+     * User32Clipboard
+     */
+
+    /** {@inheritDoc} */
+    public boolean OpenClipboard(final HWND hWndNewOwner) {
+        count("OpenClipboard");
+        synchronized (lock) {
+            if (clipboardOwner != null) {
+                setLastError(ERROR_ACCESS_DENIED);
+                return false;
+            }
+
+            clipboardOwner = Thread.currentThread();
+            clipboardOpenWindow
+                = hWndNewOwner == null ? 0 : valueOf(hWndNewOwner);
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean CloseClipboard() {
+        count("CloseClipboard");
+        synchronized (lock) {
+            if (!ownsClipboard()) {
+                return false;
+            }
+
+            clipboardOwner = null;
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean EmptyClipboard() {
+        count("EmptyClipboard");
+        synchronized (lock) {
+            if (!ownsClipboard()) {
+                return false;
+            }
+
+            freeClipboardData();
+            clipboardOwnerWindow = clipboardOpenWindow;
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int EnumClipboardFormats(final int format) {
+        count("EnumClipboardFormats");
+        synchronized (lock) {
+            if (!ownsClipboard()) {
+                return 0;
+            }
+
+            boolean found = format == 0;
+            for (int next : clipboardData.keySet()) {
+                if (found) {
+                    return next;
+                }
+                found = next == format;
+            }
+            setLastError(0);
+            return 0;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Pointer GetClipboardData(final int uFormat) {
+        count("GetClipboardData");
+        synchronized (lock) {
+            if (!ownsClipboard()) {
+                return null;
+            }
+
+            Long value = clipboardData.get(uFormat);
+            return value == null ? null : Pointer.createConstant(value);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Pointer SetClipboardData(final int uFormat, final Pointer hMem) {
+        count("SetClipboardData");
+        synchronized (lock) {
+            if (!ownsClipboard()) {
+                return null;
+            }
+
+            if (clipboardOwnerWindow == 0) {
+                setLastError(ERROR_CLIPBOARD_NOT_OPEN);
+                return null;
+            }
+
+            long value = Pointer.nativeValue(hMem);
+            if (!globals.containsKey(value)) {
+                setLastError(ERROR_INVALID_HANDLE);
+                return null;
+            }
+
+            Long previous = clipboardData.put(uFormat, value);
+            if (previous != null && previous != value) {
+                globals.remove(previous);
+            }
+            return hMem;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public HWND CreateWindowEx(final int dwExStyle,
+            final WString lpClassName, final String lpWindowName,
+            final int dwStyle, final int x, final int y, final int nWidth,
+            final int nHeight, final HWND hWndParent, final HMENU hMenu,
+            final HINSTANCE hInstance, final User32.LPVOID lpParam) {
+        count("CreateWindowEx");
+        if (hWndParent == null || valueOf(hWndParent)
+                != valueOf(WinUser.HWND_MESSAGE)) {
+            /* Only message-only windows are simulated. */
+            setLastError(ERROR_INVALID_PARAMETER);
+            return null;
+        }
+
+        synchronized (lock) {
+            long value = nextHwnd;
+            nextHwnd += 2;
+            messageWindows.add(value);
+            return new HWND(Pointer.createConstant(value));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean DestroyWindow(final HWND hWnd) {
+        count("DestroyWindow");
+        synchronized (lock) {
+            if (hWnd == null || !messageWindows.remove(valueOf(hWnd))) {
+                setLastError(ERROR_INVALID_WINDOW_HANDLE);
+                return false;
+            }
+
+            /* The clipboard keeps its contents when its owner is
+             * destroyed. */
+            if (clipboardOwnerWindow == valueOf(hWnd)) {
+                clipboardOwnerWindow = 0;
+            }
+            return true;
+        }
+    }
+
+    /* -----------------------------------------------------------------
+     * Kernel32Memory
+     */
+
+    /** {@inheritDoc} */
+    public Pointer GlobalAlloc(final int uFlags, final SIZE_T dwBytes) {
+        count("GlobalAlloc");
+        synchronized (lock) {
+            return Pointer.createConstant(allocateGlobal(
+                        new Memory(Math.max(dwBytes.longValue(), 1))));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public Pointer GlobalLock(final Pointer hMem) {
+        count("GlobalLock");
+        return findGlobal(hMem);
+    }
+
+    /** {@inheritDoc} */
+    public boolean GlobalUnlock(final Pointer hMem) {
+        count("GlobalUnlock");
+        findGlobal(hMem);
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    public SIZE_T GlobalSize(final Pointer hMem) {
+        count("GlobalSize");
+        Memory memory = findGlobal(hMem);
+        return new SIZE_T(memory == null ? 0 : memory.size());
+    }
+
+    /** {@inheritDoc} */
+    public Pointer GlobalFree(final Pointer hMem) {
+        count("GlobalFree");
+        synchronized (lock) {
+            if (hMem == null
+                    || globals.remove(Pointer.nativeValue(hMem)) == null) {
+                setLastError(ERROR_INVALID_HANDLE);
+                return hMem;
+            }
+            return null;
+        }
+    }
+
+    /* -----------------------------------------------------------------
+     * Kernel32Process
+     */
+
+    /** {@inheritDoc} */
+    public HANDLE CreateToolhelp32Snapshot(
+            final DWORD dwFlags, final DWORD th32ProcessID) {
+        count("CreateToolhelp32Snapshot");
+        CountDownLatch gate = snapshotGate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (lock) {
+            List<SimProcess> live = new ArrayList<SimProcess>();
+            for (SimProcess process : processes.values()) {
+                if (process.exitCode == null) {
+                    live.add(process);
+                }
+            }
+            return openHandle(new ProcessSnapshotState(live));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean Process32First(final HANDLE hSnapshot,
+            final Tlhelp32.PROCESSENTRY32.ByReference lppe) {
+        count("Process32First");
+        return nextProcessEntry(hSnapshot, lppe, true);
+    }
+
+    /** {@inheritDoc} */
+    public boolean Process32Next(final HANDLE hSnapshot,
+            final Tlhelp32.PROCESSENTRY32.ByReference lppe) {
+        count("Process32Next");
+        return nextProcessEntry(hSnapshot, lppe, false);
+    }
+
+    /** {@inheritDoc} */
+    public HANDLE OpenProcess(final int fdwAccess,
+            final boolean fInherit, final int IDProcess) {
+        count("OpenProcess");
+        synchronized (lock) {
+            SimProcess process = processes.get(IDProcess);
+            if (process == null || process.exitCode != null) {
+                setLastError(ERROR_INVALID_PARAMETER);
+                return null;
+            }
+            return openHandle(process);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean QueryFullProcessImageName(final HANDLE hProcess,
+            final DWORD dwFlags, final char[] lpExeName,
+            final IntByReference lpdwSize) {
+        count("QueryFullProcessImageName");
+        SimProcess process = findHandle(hProcess, SimProcess.class);
+        if (process == null) {
+            return false;
+        }
+
+        String name = process.imageName;
+        if (name.length() >= lpdwSize.getValue()
+                || name.length() >= lpExeName.length) {
+            setLastError(ERROR_INSUFFICIENT_BUFFER);
+            return false;
+        }
+
+        name.getChars(0, name.length(), lpExeName, 0);
+        lpExeName[name.length()] = 0;
+        lpdwSize.setValue(name.length());
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean GetProcessTimes(final HANDLE hProcess,
+            final FILETIME lpCreationTime, final FILETIME lpExitTime,
+            final FILETIME lpKernelTime, final FILETIME lpUserTime) {
+        count("GetProcessTimes");
+        SimProcess process = findHandle(hProcess, SimProcess.class);
+        if (process == null) {
+            return false;
+        }
+
+        lpCreationTime.dwHighDateTime = (int) (process.creationTime >>> 32);
+        lpCreationTime.dwLowDateTime = (int) process.creationTime;
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean GetExitCodeProcess(
+            final HANDLE hProcess, final IntByReference lpExitCode) {
+        count("GetExitCodeProcess");
+        SimProcess process = findHandle(hProcess, SimProcess.class);
+        if (process == null) {
+            return false;
+        }
+
+        synchronized (lock) {
+            lpExitCode.setValue(process.exitCode == null
+                    ? WinBase.STILL_ACTIVE : process.exitCode);
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public boolean CloseHandle(final HANDLE hObject) {
+        count("CloseHandle");
+        synchronized (lock) {
+            if (hObject == null
+                    || handles.remove(valueOf(hObject)) == null) {
+                setLastError(ERROR_INVALID_HANDLE);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public int GetCurrentProcessId() {
+        count("GetCurrentProcessId");
+        return currentProcessId;
+    }
+
+    /** {@inheritDoc} */
+    public int GetLastError() {
+        return lastError.get()[0];
+    }
+
+    /* -----------------------------------------------------------------
+     * Kernel32Wait
+     */
+
+    /** {@inheritDoc} */
+    public HANDLE CreateEvent(final SECURITY_ATTRIBUTES lpEventAttributes,
+            final boolean bManualReset, final boolean bInitialState,
+            final String lpName) {
+        count("CreateEvent");
+        synchronized (lock) {
+            return openHandle(new SimEvent(bManualReset, bInitialState));
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean SetEvent(final HANDLE hEvent) {
+        count("SetEvent");
+        SimEvent event = findHandle(hEvent, SimEvent.class);
+        if (event == null) {
+            return false;
+        }
+
+        synchronized (lock) {
+            event.signaled = true;
+            lock.notifyAll();
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public int WaitForSingleObject(
+            final HANDLE hHandle, final int dwMilliseconds) {
+        return WaitForMultipleObjects(
+                1, new HANDLE[] {hHandle}, false, dwMilliseconds);
+    }
+
+    /** {@inheritDoc} */
+    public int WaitForMultipleObjects(final int nCount,
+            final HANDLE[] hHandle, final boolean bWaitAll,
+            final int dwMilliseconds) {
+        count("WaitForMultipleObjects");
+        if (nCount < 1 || nCount > MAXIMUM_WAIT_OBJECTS || bWaitAll) {
+            setLastError(ERROR_INVALID_PARAMETER);
+            return WinBase.WAIT_FAILED;
+        }
+
+        if (dwMilliseconds == WinBase.INFINITE
+                && failingWaits.get() > 0
+                && failingWaits.getAndDecrement() > 0) {
+            setLastError(ERROR_INVALID_HANDLE);
+            return WinBase.WAIT_FAILED;
+        }
+
+        long deadline = System.currentTimeMillis()
+            + (dwMilliseconds & 0xffffffffL);
+        synchronized (lock) {
+            while (true) {
+                for (int i = 0; i < nCount; i++) {
+                    Object object = hHandle[i] == null
+                        ? null : handles.get(valueOf(hHandle[i]));
+                    if (object instanceof SimProcess) {
+                        if (((SimProcess) object).exitCode != null) {
+                            return WinBase.WAIT_OBJECT_0 + i;
+                        }
+                    } else if (object instanceof SimEvent) {
+                        SimEvent event = (SimEvent) object;
+                        if (event.signaled) {
+                            event.signaled = event.manualReset;
+                            return WinBase.WAIT_OBJECT_0 + i;
+                        }
+                    } else {
+                        setLastError(ERROR_INVALID_HANDLE);
+                        return WinBase.WAIT_FAILED;
+                    }
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (dwMilliseconds != WinBase.INFINITE && remaining <= 0) {
+                    return WinError.WAIT_TIMEOUT;
+                }
+
+                try {
+                    lock.wait(dwMilliseconds == WinBase.INFINITE
+                            ? 0 : remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    setLastError(ERROR_INVALID_PARAMETER);
+                    return WinBase.WAIT_FAILED;
+                }
+            }
+        }
+    }
+
+    /* -----------------------------------------------------------------
+     * Implementation
+     */
+
+    /**
+     * Increments the call count for a function.
+     *
+     * @param function Name of the function.
+     */
+    private void count(final String function) {
+        AtomicLong count = callCounts.get(function);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = callCounts.putIfAbsent(function, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Sets the calling thread's last-error code.
+     *
+     * @param error The error code.
+     */
+    private void setLastError(final int error) {
+        lastError.get()[0] = error;
+    }
+
+    /**
+     * Returns the numeric value of a handle.
+     *
+     * @param handle The handle.
+     * @return The handle's value.
+     */
+    private static long valueOf(final HANDLE handle) {
+        return Pointer.nativeValue(handle.getPointer());
+    }
+
+    /**
+     * Allocates a kernel handle for an object.  Must be called with the
+     * lock held.
+     *
+     * @param object The object.
+     * @return The new handle.
+     */
+    private HANDLE openHandle(final Object object) {
+        long value = nextHandle;
+        nextHandle += 4;
+        handles.put(value, object);
+        return new HANDLE(Pointer.createConstant(value));
+    }
+
+    /**
+     * Returns the object referred to by a kernel handle.
+     *
+     * @param <T> Type of the object.
+     * @param handle The handle.
+     * @param type Type of the object.
+     * @return The object; null (with the last error set) if the handle
+     *  is not an open handle of the given type.
+     */
+    private <T> T findHandle(final HANDLE handle, final Class<T> type) {
+        Object object;
+        synchronized (lock) {
+            object = handle == null ? null : handles.get(valueOf(handle));
+        }
+
+        if (!type.isInstance(object)) {
+            setLastError(ERROR_INVALID_HANDLE);
+            return null;
+        }
+        return type.cast(object);
+    }
+
+    /**
+     * Returns true if the calling thread has the clipboard open, setting
+     * the last error otherwise.  Must be called with the lock held.
+     *
+     * @return true if the calling thread has the clipboard open.
+     */
+    private boolean ownsClipboard() {
+        if (clipboardOwner != Thread.currentThread()) {
+            setLastError(ERROR_CLIPBOARD_NOT_OPEN);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Frees every block owned by the clipboard.  Must be called with
+     * the lock held.
+     */
+    private void freeClipboardData() {
+        for (Long value : clipboardData.values()) {
+            globals.remove(value);
+        }
+        clipboardData.clear();
+    }
+
+    /**
+     * Allocates a global memory handle for a block.  Must be called
+     * with the lock held.
+     *
+     * @param memory The block.
+     * @return The new handle's value.
+     */
+    private long allocateGlobal(final Memory memory) {
+        long value = nextGlobal;
+        nextGlobal += 8;
+        globals.put(value, memory);
+        return value;
+    }
+
+    /**
+     * Returns the block referred to by a global memory handle.
+     *
+     * @param hMem The handle.
+     * @return The block; null (with the last error set) if the handle
+     *  is not a live global memory handle.
+     */
+    private Memory findGlobal(final Pointer hMem) {
+        Memory memory;
+        synchronized (lock) {
+            memory = hMem == null
+                ? null : globals.get(Pointer.nativeValue(hMem));
+        }
+
+        if (memory == null) {
+            setLastError(ERROR_INVALID_HANDLE);
+        }
+        return memory;
+    }
+
+    /**
+     * Returns a window.
+     *
+     * @param hwnd The window handle.
+     * @return The window; null if there is no such window.
+     */
+    private SimWindow findWindow(final HWND hwnd) {
+        if (hwnd == null) {
+            return null;
+        }
+
+        synchronized (lock) {
+            return windows.get(valueOf(hwnd));
+        }
+    }
+
+    /**
+     * Queues a window event to every started window event source.  The
+     * caller must hold the lock.
+     *
+     * @param event The event.
+     * @param hwnd The window that generated the event.
+     */
+    private void fireWindowEvent(final int event, final HWND hwnd) {
+        for (BlockingQueue<WindowEvent> queue : windowEventQueues) {
+            queue.add(new WindowEvent(event, hwnd));
+        }
+    }
+
+    /**
+     * Returns a window, throwing if it does not exist.
+     *
+     * @param hwnd The window handle.
+     * @return The window.
+     */
+    private SimWindow requireWindow(final HWND hwnd) {
+        SimWindow window = findWindow(hwnd);
+        if (window == null) {
+            throw new IllegalArgumentException("No such window: " + hwnd);
+        }
+        return window;
+    }
+
+    /**
+     * Copies the next entry of a process snapshot.
+     *
+     * @param hSnapshot The snapshot handle.
+     * @param lppe Receives the entry.
+     * @param first true to restart at the first entry.
+     * @return true if an entry was copied, false otherwise.
+     */
+    private boolean nextProcessEntry(final HANDLE hSnapshot,
+            final Tlhelp32.PROCESSENTRY32.ByReference lppe,
+            final boolean first) {
+        ProcessSnapshotState state
+            = findHandle(hSnapshot, ProcessSnapshotState.class);
+        if (state == null) {
+            return false;
+        }
+
+        if (first) {
+            state.next = 0;
+        }
+        if (state.next >= state.processes.size()) {
+            setLastError(18); /* ERROR_NO_MORE_FILES */
+            return false;
+        }
+
+        SimProcess process = state.processes.get(state.next++);
+        lppe.th32ProcessID = new DWORD(process.processId);
+        lppe.th32ParentProcessID = new DWORD(process.parentProcessId);
+        String exeFile = process.imageName.substring(
+                process.imageName.lastIndexOf('\\') + 1);
+        Arrays.fill(lppe.szExeFile, (char) 0);
+        exeFile.getChars(0, Math.min(exeFile.length(),
+                    lppe.szExeFile.length - 1), lppe.szExeFile, 0);
+        return true;
+    }
+
+    /**
+     * A simulated process.
+     */
+    private static final class SimProcess {
+        /** Process id. */
+        private final int processId;
+
+        /** Parent process id. */
+        private final int parentProcessId;
+
+        /** Full path to the process's image. */
+        private final String imageName;
+
+        /** Creation time, in logical clock ticks. */
+        private final long creationTime;
+
+        /** Exit code; null while the process is running. */
+        private Integer exitCode;
+
+        /**
+         * Constructs a new SimProcess.
+         *
+         * @param processId Process id.
+         * @param parentProcessId Parent process id.
+         * @param imageName Full path to the process's image.
+         * @param creationTime Creation time.
+         */
+        SimProcess(final int processId, final int parentProcessId,
+                final String imageName, final long creationTime) {
+            this.processId = processId;
+            this.parentProcessId = parentProcessId;
+            this.imageName = imageName;
+            this.creationTime = creationTime;
+        }
+    }
+
+    /**
+     * A simulated event.  The fields are guarded by the lock.
+     */
+    private static final class SimEvent {
+        /** true for a manual-reset event. */
+        private final boolean manualReset;
+
+        /** true while the event is signaled. */
+        private boolean signaled;
+
+        /**
+         * Constructs a new SimEvent.
+         *
+         * @param manualReset true for a manual-reset event.
+         * @param signaled true if the event is initially signaled.
+         */
+        SimEvent(final boolean manualReset, final boolean signaled) {
+            this.manualReset = manualReset;
+            this.signaled = signaled;
+        }
+    }
+
+    /**
+     * The state of an open process snapshot handle.
+     */
+    private static final class ProcessSnapshotState {
+        /** Processes that were running when the snapshot was taken. */
+        private final List<SimProcess> processes;
+
+        /** Index of the next entry. */
+        private int next;
+
+        /**
+         * Constructs a new ProcessSnapshotState.
+         *
+         * @param processes Processes in the snapshot.
+         */
+        ProcessSnapshotState(final List<SimProcess> processes) {
+            this.processes = processes;
+        }
+    }
+
+    /**
+     * A window message.
+     */
+    private static final class Message {
+        /** The message. */
+        private final int msg;
+
+        /** The message's wParam. */
+        private final long wParam;
+
+        /** The message's lParam. */
+        private final long lParam;
+
+        /** Released once a sent message has been processed; null for
+         * posted messages. */
+        private final CountDownLatch processed;
+
+        /**
+         * Constructs a new Message.
+         *
+         * @param msg The message.
+         * @param wParam The message's wParam.
+         * @param lParam The message's lParam.
+         * @param processed Latch for sent messages; null otherwise.
+         */
+        Message(final int msg, final long wParam, final long lParam,
+                final CountDownLatch processed) {
+            this.msg = msg;
+            this.wParam = wParam;
+            this.lParam = lParam;
+            this.processed = processed;
+        }
+    }
+
+    /**
+     * A queued window event.
+     */
+    private static final class WindowEvent {
+        /** The event; zero asks the pump thread to exit. */
+        private final int event;
+
+        /** The window that generated the event. */
+        private final HWND hwnd;
+
+        /**
+         * Constructs a new WindowEvent.
+         *
+         * @param event The event.
+         * @param hwnd The window that generated the event.
+         */
+        WindowEvent(final int event, final HWND hwnd) {
+            this.event = event;
+            this.hwnd = hwnd;
+        }
+    }
+
+    /**
+     * A window event source that delivers the simulation's window
+     * events on its own pump thread.
+     */
+    private final class SimWindowEventSource implements WindowEventSource {
+        /** Events that have not yet been delivered. */
+        private final BlockingQueue<WindowEvent> queue
+            = new LinkedBlockingQueue<WindowEvent>();
+
+        /** The pump thread; null until the source is started. */
+        private Thread thread;
+
+        /** {@inheritDoc} */
+        public synchronized void start(
+                final WindowEventSource.Handler handler) {
+            if (this.thread != null) {
+                throw new IllegalStateException("Already started.");
+            }
+
+            /* Subscribe before starting the handler, so that changes
+             * made while it runs are delivered after it returns. */
+            synchronized (lock) {
+                windowEventQueues.add(this.queue);
+            }
+
+            final CountDownLatch started = new CountDownLatch(1);
+            this.thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        handler.started();
+                    } finally {
+                        started.countDown();
+                    }
+                    pump(handler);
+                }
+            }, "jnaplatext-simulated-winevent-pump");
+            this.thread.setDaemon(true);
+            this.thread.start();
+
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /** {@inheritDoc} */
+        public synchronized void stop() {
+            if (this.thread == null) {
+                return;
+            }
+
+            synchronized (lock) {
+                windowEventQueues.remove(this.queue);
+            }
+            this.queue.clear();
+            this.queue.add(new WindowEvent(0, null));
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Delivers events until the source is stopped.
+         *
+         * @param handler Receives the events.
+         */
+        private void pump(final WindowEventSource.Handler handler) {
+            try {
+                for (;;) {
+                    WindowEvent event = this.queue.take();
+                    switch (event.event) {
+                    case WinUser.EVENT_OBJECT_CREATE:
+                        handler.windowCreated(event.hwnd);
+                        break;
+                    case WinUser.EVENT_OBJECT_DESTROY:
+                        handler.windowDestroyed(event.hwnd);
+                        break;
+                    case WinUser.EVENT_OBJECT_NAMECHANGE:
+                        handler.windowNameChanged(event.hwnd);
+                        break;
+                    default:
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * A simulated top-level window and its message queue.  The queues
+     * are guarded by the window's monitor.
+     */
+    private final class SimWindow implements Runnable {
+        /** Numeric value of the window handle. */
+        private final long value;
+
+        /** The window handle. */
+        private final HWND hwnd;
+
+        /** Process id of the window's owner. */
+        private final int processId;
+
+        /** Thread id of the window's thread. */
+        private final int threadId;
+
+        /** Maximum number of queued posted messages. */
+        private final int capacity;
+
+        /** Time spent on each message by the consumer thread. */
+        private final long nanosPerMessage;
+
+        /** Posted messages. */
+        private final ArrayDeque<Message> posted = new ArrayDeque<Message>();
+
+        /** Sent messages, which are processed before posted ones. */
+        private final ArrayDeque<Message> sent = new ArrayDeque<Message>();
+
+        /** Characters received through WM_CHAR. */
+        private final StringBuilder received = new StringBuilder();
+
+        /** Number of messages processed. */
+        private final AtomicLong processed = new AtomicLong();
+
+        /** Number of messages dropped because the queue was full. */
+        private final AtomicLong dropped = new AtomicLong();
+
+        /** The consumer thread; null if the queue is pumped
+         * explicitly. */
+        private volatile Thread consumer;
+
+        /** The window's title. */
+        private volatile String title = "";
+
+        /** Set once the window has been destroyed. */
+        private boolean stopped;
+
+        /**
+         * Constructs a new SimWindow.
+         *
+         * @param value Numeric value of the window handle.
+         * @param processId Process id of the window's owner.
+         * @param threadId Thread id of the window's thread.
+         * @param capacity Maximum number of queued posted messages.
+         * @param nanosPerMessage Time spent on each message.
+         */
+        SimWindow(final long value, final int processId,
+                final int threadId, final int capacity,
+                final long nanosPerMessage) {
+            this.value = value;
+            this.hwnd = new HWND(Pointer.createConstant(value));
+            this.processId = processId;
+            this.threadId = threadId;
+            this.capacity = capacity;
+            this.nanosPerMessage = nanosPerMessage;
+        }
+
+        /**
+         * Starts the consumer thread.
+         */
+        void start() {
+            consumer = new Thread(this, "SimulatedWin32-window-"
+                    + Long.toHexString(value));
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+
+        /**
+         * Destroys the window: stops the consumer thread, discards
+         * queued messages and releases senders.
+         */
+        void stop() {
+            List<Message> abandoned;
+            synchronized (this) {
+                stopped = true;
+                abandoned = new ArrayList<Message>(sent);
+                sent.clear();
+                posted.clear();
+                notifyAll();
+            }
+
+            for (Message message : abandoned) {
+                message.processed.countDown();
+            }
+        }
+
+        /**
+         * Adds a posted message to the queue.
+         *
+         * @param message The message.
+         * @return false if the queue was full.
+         */
+        synchronized boolean post(final Message message) {
+            if (stopped || posted.size() >= capacity) {
+                dropped.incrementAndGet();
+                return false;
+            }
+
+            posted.add(message);
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Adds a sent message to the queue.
+         *
+         * @param message The message.
+         */
+        synchronized void send(final Message message) {
+            if (stopped) {
+                message.processed.countDown();
+                return;
+            }
+
+            sent.add(message);
+            notifyAll();
+        }
+
+        /**
+         * Removes the next message from the queue.
+         *
+         * @return The next message; null if the queue is empty.
+         */
+        synchronized Message poll() {
+            Message message = sent.poll();
+            return message != null ? message : posted.poll();
+        }
+
+        /**
+         * Processes a message.
+         *
+         * @param message The message.
+         */
+        void dispatch(final Message message) {
+            if (message.msg == WinUser.WM_CHAR) {
+                synchronized (received) {
+                    received.append((char) message.wParam);
+                }
+            } else if (message.msg == WinUser.WM_COMMAND
+                    && message.wParam == ClipboardPaster.ID_CONSOLE_PASTE) {
+                String text = getClipboardText();
+                if (text != null) {
+                    synchronized (received) {
+                        received.append(text);
+                    }
+                }
+            }
+
+            if (nanosPerMessage > 0) {
+                long until = System.nanoTime() + nanosPerMessage;
+                while (System.nanoTime() - until < 0) {
+                    Thread.yield();
+                }
+            }
+
+            processed.incrementAndGet();
+            if (message.processed != null) {
+                message.processed.countDown();
+            }
+        }
+
+        /**
+         * Services the queue until the window is destroyed.
+         */
+        public void run() {
+            while (true) {
+                Message message;
+                synchronized (this) {
+                    while (!stopped && sent.isEmpty() && posted.isEmpty()) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (stopped) {
+                        return;
+                    }
+                    message = poll();
+                }
+
+                dispatch(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.LPARAM;
+import com.sun.jna.platform.win32.WinDef.WPARAM;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for SimulatedWin32.
+ */
+public class SimulatedWin32Test extends Assert {
+    /**
+     * Window enumeration makes one EnumWindows call and one lookup per
+     * window, even with thousands of windows.
+     */
+    @Test
+    public void testProcessWindowsWithManyWindows() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int shell = win32.createProcess(0, "C:\\Windows\\explorer.exe");
+        int cmd = win32.createProcess(shell, "C:\\Windows\\System32\\cmd.exe");
+        HWND cmdHwnd = null;
+        for (int i = 0; i < 10000; i++) {
+            HWND hwnd = win32.createWindow(i % 100 == 0 ? cmd : shell);
+            if (cmdHwnd == null && i % 100 == 0) {
+                cmdHwnd = hwnd;
+            }
+        }
+
+        List<HWND> windows
+            = ProcessUtils.getProcessWindows(win32, win32, cmd);
+        assertEquals(100, windows.size());
+        assertEquals(cmdHwnd, windows.get(0));
+        assertEquals(1, win32.getCallCount("EnumWindows"));
+        assertEquals(10000, win32.getCallCount("GetWindowThreadProcessId"));
+    }
+
+    /**
+     * Keystrokes are translated through the keyboard layout and
+     * delivered to the window's queue.
+     */
+    @Test
+    public void testTypedText() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int cmd = win32.createProcess(0, "C:\\Windows\\System32\\cmd.exe");
+        HWND hwnd = win32.createWindow(cmd);
+
+        new CmdExeTyper(hwnd, win32).write("dir C:\\\r");
+        assertEquals(16, win32.getQueueDepth(hwnd));
+        assertEquals(8, win32.getCallCount("VkKeyScan"));
+        assertEquals(16, win32.pump(hwnd));
+        assertEquals("dir C:\\\r", win32.getReceivedText(hwnd));
+        assertEquals(0, win32.getDroppedMessageCount(hwnd));
+    }
+
+    /**
+     * A full queue rejects messages with ERROR_NOT_ENOUGH_QUOTA, and
+     * CmdExeTyper reports the failed post instead of dropping the rest
+     * of the write.
+     */
+    @Test
+    public void testQueueSaturation() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int cmd = win32.createProcess(0, "C:\\Windows\\System32\\cmd.exe");
+        HWND hwnd = win32.createWindow(cmd, 10, -1);
+
+        try {
+            new CmdExeTyper(hwnd, win32).write("abcdefghijklmnopqrst");
+            fail("Expected the full queue to fail the write.");
+        } catch (UncheckedIOException e) {
+            assertEquals(10, win32.getQueueDepth(hwnd));
+            assertEquals(1, win32.getDroppedMessageCount(hwnd));
+            assertEquals(SimulatedWin32.ERROR_NOT_ENOUGH_QUOTA,
+                    win32.GetLastError());
+        }
+
+        win32.pump(hwnd);
+        assertEquals("abcde", win32.getReceivedText(hwnd));
+    }
+
+    /**
+     * Sent messages are processed by the window's consumer thread, and
+     * posted messages are processed in order.
+     */
+    @Test
+    public void testRoundTripWithConsumerThread() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int cmd = win32.createProcess(0, "C:\\Windows\\System32\\cmd.exe");
+        HWND hwnd = win32.createWindow(cmd, 1000, 1000);
+        try {
+            new CmdExeTyper(hwnd, win32).write("echo hello\r");
+            assertTrue(win32.SendMessageTimeout(hwnd, WinUser.WM_COMMAND,
+                        new WPARAM(0), new LPARAM(0),
+                        WinUser.SMTO_ABORTIFHUNG, 10000, null)
+                    .longValue() != 0);
+
+            /* The sent message jumps ahead of the posted ones, so the
+             * queue may not yet be empty. */
+            long deadline = System.currentTimeMillis() + 10000;
+            while (win32.getProcessedMessageCount(hwnd) < 23
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(23, win32.getProcessedMessageCount(hwnd));
+            assertEquals("echo hello\r", win32.getReceivedText(hwnd));
+        } finally {
+            win32.shutdown();
+        }
+    }
+
+    /**
+     * The process list is built from the simulated process table, and
+     * cached handles are released when their processes exit.
+     */
+    @Test
+    public void testProcessListWithHandleCache() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int shell = win32.createProcess(0, "C:\\Windows\\explorer.exe");
+        int cmd = win32.createProcess(shell, "C:\\Windows\\System32\\cmd.exe");
+        win32.setCurrentProcessId(cmd);
+        win32.createWindow(cmd);
+
+        ProcessHandleCache cache = new ProcessHandleCache(win32, 16);
+        List<ProcessUtils.ProcessInfo> processes
+            = ProcessUtils.getProcessList(win32, cache);
+        assertEquals(2, processes.size());
+        assertEquals(cmd, processes.get(1).getProcessId());
+        assertEquals(shell, processes.get(1).getParentProcessId());
+        assertEquals("C:\\Windows\\System32\\cmd.exe",
+                processes.get(1).getImageName());
+        assertEquals(2, win32.getOpenHandleCount());
+
+        win32.exitProcess(cmd, 0);
+        assertEquals(1, ProcessUtils.getProcessList(win32, cache).size());
+        assertEquals(1, win32.getOpenHandleCount());
+        assertTrue(ProcessUtils.getProcessWindows(win32, win32, cmd)
+                .isEmpty());
+
+        cache.close();
+        assertEquals(0, win32.getOpenHandleCount());
+    }
+}
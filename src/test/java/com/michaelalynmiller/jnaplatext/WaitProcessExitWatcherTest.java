@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/* JNA platform extension imports. */
+import com.michaelalynmiller.jnaplatext.ProcessExitWatcher;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for WaitProcessExitWatcher.
+ */
+public class WaitProcessExitWatcherTest extends Assert {
+    /** Runs listeners on the waiter thread. */
+    private static final Executor DIRECT = new Executor() {
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Rejects its first task and runs the rest on the calling thread.
+     */
+    private static final class RejectFirstExecutor implements Executor {
+        /** true once a task has been rejected. */
+        private final AtomicBoolean rejected = new AtomicBoolean();
+
+        /** {@inheritDoc} */
+        public void execute(final Runnable command) {
+            if (rejected.compareAndSet(false, true)) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        }
+    }
+
+    /**
+     * Records exit notifications.
+     */
+    private static final class RecordingListener
+            implements ProcessExitWatcher.Listener {
+        /** Exit codes by process id. */
+        private final Map<Integer, Integer> exitCodes
+            = new ConcurrentHashMap<Integer, Integer>();
+
+        /** Counts down once per notification. */
+        private final CountDownLatch latch;
+
+        /**
+         * Constructs a new RecordingListener.
+         *
+         * @param expected Number of expected notifications.
+         */
+        RecordingListener(final int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        /** {@inheritDoc} */
+        public void processExited(final int processId, final int exitCode) {
+            exitCodes.put(processId, exitCode);
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Waits for a condition that is updated by the waiter threads.
+     *
+     * @param win32 The simulator.
+     * @param watcher The watcher.
+     */
+    private static void awaitIdle(final SimulatedWin32 win32,
+            final WaitProcessExitWatcher watcher) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((watcher.getWaiterCount() > 0
+                    || win32.getOpenHandleCount() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Processes are spread across waiters of 63 handles, exits are
+     * reported with their exit codes, and waiters retire once their
+     * processes have exited.
+     */
+    @Test
+    public void testManyProcesses() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int[] processIds = new int[200];
+        for (int i = 0; i < processIds.length; i++) {
+            processIds[i] = win32.createProcess(0, "C:\\worker.exe");
+        }
+
+        WaitProcessExitWatcher watcher
+            = new WaitProcessExitWatcher(win32, win32, DIRECT);
+        RecordingListener listener = new RecordingListener(200);
+        for (int processId : processIds) {
+            assertTrue(watcher.watch(processId, listener));
+        }
+        assertEquals(200, watcher.getWatchedCount());
+        assertEquals(4, watcher.getWaiterCount());
+
+        for (int i = processIds.length - 1; i >= 0; i--) {
+            win32.exitProcess(processIds[i], i);
+        }
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < processIds.length; i++) {
+            assertEquals(i, (int) listener.exitCodes.get(processIds[i]));
+        }
+
+        awaitIdle(win32, watcher);
+        assertEquals(0, watcher.getWatchedCount());
+        assertEquals(0, watcher.getWaiterCount());
+        assertEquals(0, win32.getOpenHandleCount());
+    }
+
+    /**
+     * Unwatched processes are not reported, and processes that have
+     * already exited cannot be watched.
+     */
+    @Test
+    public void testUnwatch() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int first = win32.createProcess(0, "C:\\first.exe");
+        int second = win32.createProcess(0, "C:\\second.exe");
+        int exited = win32.createProcess(0, "C:\\exited.exe");
+        win32.exitProcess(exited, 0);
+
+        WaitProcessExitWatcher watcher
+            = new WaitProcessExitWatcher(win32, win32, DIRECT);
+        RecordingListener listener = new RecordingListener(1);
+        assertFalse(watcher.watch(exited, listener));
+        assertTrue(watcher.watch(first, listener));
+        assertTrue(watcher.watch(second, listener));
+        assertTrue(watcher.unwatch(first));
+        assertFalse(watcher.unwatch(first));
+
+        win32.exitProcess(first, 1);
+        win32.exitProcess(second, 2);
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, listener.exitCodes.size());
+        assertEquals(2, (int) listener.exitCodes.get(second));
+
+        awaitIdle(win32, watcher);
+        assertEquals(0, win32.getOpenHandleCount());
+    }
+
+    /**
+     * A wait that fails while every process is still running keeps the
+     * watches instead of reporting the processes as exited.
+     */
+    @Test
+    public void testFailedWaitKeepsWatches() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int first = win32.createProcess(0, "C:\\first.exe");
+        int second = win32.createProcess(0, "C:\\second.exe");
+
+        WaitProcessExitWatcher watcher
+            = new WaitProcessExitWatcher(win32, win32, DIRECT);
+        RecordingListener listener = new RecordingListener(2);
+        win32.failInfiniteWaits(2);
+        assertTrue(watcher.watch(first, listener));
+        assertTrue(watcher.watch(second, listener));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (win32.getCallCount("CreateEvent") < 3
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(3, win32.getCallCount("CreateEvent"));
+        assertEquals(2, watcher.getWatchedCount());
+        assertEquals(2, listener.latch.getCount());
+
+        win32.exitProcess(first, 1);
+        win32.exitProcess(second, 2);
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, (int) listener.exitCodes.get(first));
+        assertEquals(2, (int) listener.exitCodes.get(second));
+
+        awaitIdle(win32, watcher);
+        assertEquals(0, win32.getOpenHandleCount());
+    }
+
+    /**
+     * A listener that the executor rejects does not stop the remaining
+     * listeners from being notified.
+     */
+    @Test
+    public void testRejectedListener() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int processId = win32.createProcess(0, "C:\\worker.exe");
+
+        WaitProcessExitWatcher watcher = new WaitProcessExitWatcher(
+                win32, win32, new RejectFirstExecutor());
+        RecordingListener rejected = new RecordingListener(1);
+        RecordingListener notified = new RecordingListener(1);
+        assertTrue(watcher.watch(processId, rejected));
+        assertTrue(watcher.watch(processId, notified));
+
+        win32.exitProcess(processId, 3);
+        assertTrue(notified.latch.await(10, TimeUnit.SECONDS));
+        assertEquals(3, (int) notified.exitCodes.get(processId));
+        assertEquals(1, rejected.latch.getCount());
+
+        awaitIdle(win32, watcher);
+        assertEquals(0, win32.getOpenHandleCount());
+    }
+
+    /**
+     * Closing the watcher releases every handle without notifying
+     * anyone.
+     */
+    @Test
+    public void testClose() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        WaitProcessExitWatcher watcher
+            = new WaitProcessExitWatcher(win32, win32, DIRECT);
+        RecordingListener listener = new RecordingListener(1);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(watcher.watch(
+                        win32.createProcess(0, "C:\\worker.exe"), listener));
+        }
+
+        watcher.close();
+        assertEquals(0, watcher.getWaiterCount());
+        assertEquals(0, win32.getOpenHandleCount());
+        assertEquals(1, listener.latch.getCount());
+        try {
+            watcher.watch(win32.createProcess(0, "C:\\late.exe"), listener);
+            fail("Expected IOException");
+        } catch (java.io.IOException e) {
+            assertEquals(0, win32.getOpenHandleCount());
+        }
+    }
+}
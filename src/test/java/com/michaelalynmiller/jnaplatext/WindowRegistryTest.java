@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2013, Michael Alyn Miller <malyn@strangeGizmo.com>
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice unmodified, this list of conditions, and the following
+ *    disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. Neither the name of Michael Alyn Miller nor the names of the
+ *    contributors to this software may be used to endorse or promote
+ *    products derived from this software without specific prior written
+ *    permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS
+ * OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ */
+
+package com.michaelalynmiller.jnaplatext.win32;
+
+/* Java imports. */
+import java.util.ArrayList;
+import java.util.List;
+
+/* JNA imports. */
+import com.sun.jna.platform.win32.WinDef.HWND;
+
+/* JUnit imports. */
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit test for WindowRegistry.
+ */
+public class WindowRegistryTest extends Assert {
+    /**
+     * Waits until the registry has handled every event that has already
+     * been generated, by creating a marker window and waiting for the
+     * registry to see it.  Events are delivered in order, so every
+     * earlier event has been handled once the marker appears.
+     *
+     * @param win32 The simulator.
+     * @param registry The registry.
+     */
+    private static void sync(final SimulatedWin32 win32,
+            final WindowRegistry registry) throws Exception {
+        int processId = win32.createProcess(0, "C:\\marker.exe");
+        HWND marker = win32.createWindow(processId);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (registry.getWindow(marker) == null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertNotNull(registry.getWindow(marker));
+        win32.exitProcess(processId, 0);
+        while (registry.getWindow(marker) != null
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertNull(registry.getWindow(marker));
+    }
+
+    /**
+     * The registry is seeded with a single enumeration, and lookups do
+     * not call into USER32.
+     */
+    @Test
+    public void testSeed() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int[] processIds = new int[10];
+        for (int i = 0; i < processIds.length; i++) {
+            processIds[i] = win32.createProcess(0, "C:\\app" + i + ".exe");
+        }
+        List<HWND> hwnds = new ArrayList<HWND>();
+        for (int i = 0; i < 1000; i++) {
+            HWND hwnd = win32.createWindow(processIds[i % 10]);
+            win32.setWindowText(hwnd, "Window " + i);
+            hwnds.add(hwnd);
+        }
+
+        WindowRegistry registry = WindowRegistry.open(
+                win32, win32.createWindowEventSource());
+        try {
+            assertEquals(1, win32.getCallCount("EnumWindows"));
+            assertEquals(1000, registry.size());
+
+            win32.resetCallCounts();
+            for (int i = 0; i < processIds.length; i++) {
+                List<HWND> processWindows
+                    = registry.getProcessWindows(processIds[i]);
+                assertEquals(100, processWindows.size());
+                assertEquals(hwnds.get(i), processWindows.get(0));
+            }
+            WindowRegistry.WindowInfo info = registry.getWindow(hwnds.get(7));
+            assertEquals(processIds[7], info.getProcessId());
+            assertEquals("Window 7", info.getTitle());
+            assertTrue(registry.getProcessWindows(12345).isEmpty());
+            assertEquals(0, win32.getCallCount("EnumWindows"));
+            assertEquals(0, win32.getCallCount("GetWindowThreadProcessId"));
+            assertEquals(0, win32.getCallCount("GetWindowText"));
+        } finally {
+            registry.close();
+            win32.shutdown();
+        }
+    }
+
+    /**
+     * Windows that are created, renamed and destroyed after the registry
+     * has been seeded are reflected without another enumeration.
+     */
+    @Test
+    public void testLiveUpdates() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int processId = win32.createProcess(0, "C:\\app.exe");
+        HWND first = win32.createWindow(processId);
+
+        WindowRegistry registry = WindowRegistry.open(
+                win32, win32.createWindowEventSource());
+        try {
+            HWND second = win32.createWindow(processId);
+            win32.setWindowText(second, "Second");
+            sync(win32, registry);
+            assertEquals(2, registry.getProcessWindows(processId).size());
+            assertEquals("Second", registry.getWindow(second).getTitle());
+
+            win32.setWindowText(first, "Renamed");
+            win32.destroyWindow(second);
+            sync(win32, registry);
+            assertEquals("Renamed", registry.getWindow(first).getTitle());
+            assertNull(registry.getWindow(second));
+            assertEquals(1, registry.getProcessWindows(processId).size());
+
+            win32.exitProcess(processId, 0);
+            sync(win32, registry);
+            assertTrue(registry.getProcessWindows(processId).isEmpty());
+            assertEquals(0, registry.size());
+            assertEquals(1, win32.getCallCount("EnumWindows"));
+        } finally {
+            registry.close();
+            win32.shutdown();
+        }
+    }
+
+    /**
+     * Lists returned by lookups are snapshots that later events do not
+     * change.
+     */
+    @Test
+    public void testSnapshotLists() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int processId = win32.createProcess(0, "C:\\app.exe");
+        HWND hwnd = win32.createWindow(processId);
+
+        WindowRegistry registry = WindowRegistry.open(
+                win32, win32.createWindowEventSource());
+        try {
+            List<HWND> before = registry.getProcessWindows(processId);
+            win32.createWindow(processId);
+            sync(win32, registry);
+            assertEquals(1, before.size());
+            assertEquals(hwnd, before.get(0));
+            assertEquals(2, registry.getProcessWindows(processId).size());
+        } finally {
+            registry.close();
+            win32.shutdown();
+        }
+    }
+
+    /**
+     * Closing the registry stops its pump thread and further updates.
+     */
+    @Test
+    public void testClose() throws Exception {
+        SimulatedWin32 win32 = new SimulatedWin32();
+        int processId = win32.createProcess(0, "C:\\app.exe");
+
+        WindowRegistry registry = WindowRegistry.open(
+                win32, win32.createWindowEventSource());
+        registry.close();
+        win32.createWindow(processId);
+        Thread.sleep(50);
+        assertEquals(0, registry.size());
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName().endsWith("winevent-pump"));
+        }
+        win32.shutdown();
+    }
+}